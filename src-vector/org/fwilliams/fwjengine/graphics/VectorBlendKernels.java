@@ -0,0 +1,83 @@
+package org.fwilliams.fwjengine.graphics;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * BlendKernels built on the jdk.incubator.vector API. Every kernel is the branch-free arithmetic of ScalarBlendKernels 
+ * applied to as many pixels at once as the CPU's widest vector registers hold, with the scalar kernels finishing 
+ * the pixels left over at the end of a row. Only loaded by BlendKernels if the module is available.
+ * <br>
+ * This class lives in the separate src-vector source root so that src compiles with a plain javac. Compile it after src, 
+ * with --add-modules jdk.incubator.vector and src's classes on the classpath, and put it on the classpath to enable it.
+ * @author Francis Williams
+ *
+ */
+class VectorBlendKernels extends BlendKernels {
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+	
+	@Override
+	public String getName() {
+		return "vector (" + SPECIES.length() + " pixels)";
+	}
+	
+	@Override
+	public void srcOver(int[] src, int srcIndex, int[] dst, int dstIndex, int length) {
+		int i = 0;
+		for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+			IntVector s = IntVector.fromArray(SPECIES, src, srcIndex + i);
+			IntVector d = IntVector.fromArray(SPECIES, dst, dstIndex + i);
+			IntVector inverseAlpha = s.lanewise(VectorOperators.LSHR, 24).neg().add(0xff);
+			s.add(scale(d, inverseAlpha)).intoArray(dst, dstIndex + i);
+		}
+		getScalar().srcOver(src, srcIndex + i, dst, dstIndex + i, length - i);
+	}
+	
+	@Override
+	public void add(int[] src, int srcIndex, int[] dst, int dstIndex, int length) {
+		int i = 0;
+		for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+			IntVector s = IntVector.fromArray(SPECIES, src, srcIndex + i);
+			IntVector d = IntVector.fromArray(SPECIES, dst, dstIndex + i);
+			IntVector rb = s.and(0x00ff00ff).add(d.and(0x00ff00ff));
+			IntVector ag = s.lanewise(VectorOperators.LSHR, 8).and(0x00ff00ff).add(d.lanewise(VectorOperators.LSHR, 8).and(0x00ff00ff));
+			rb = rb.or(rb.lanewise(VectorOperators.LSHR, 8).and(0x00010001).mul(0xff)).and(0x00ff00ff);
+			ag = ag.or(ag.lanewise(VectorOperators.LSHR, 8).and(0x00010001).mul(0xff)).and(0x00ff00ff);
+			rb.or(ag.lanewise(VectorOperators.LSHL, 8)).intoArray(dst, dstIndex + i);
+		}
+		getScalar().add(src, srcIndex + i, dst, dstIndex + i, length - i);
+	}
+	
+	@Override
+	public void multiply(int[] src, int srcIndex, int[] dst, int dstIndex, int length) {
+		int i = 0;
+		for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+			IntVector s = IntVector.fromArray(SPECIES, src, srcIndex + i);
+			IntVector d = IntVector.fromArray(SPECIES, dst, dstIndex + i);
+			IntVector inverseSrcAlpha = s.lanewise(VectorOperators.LSHR, 24).neg().add(0xff);
+			IntVector inverseDstAlpha = d.lanewise(VectorOperators.LSHR, 24).neg().add(0xff);
+			IntVector result = IntVector.zero(SPECIES);
+			for(int shift = 0; shift < 32; shift += 8) {
+				IntVector cs = s.lanewise(VectorOperators.LSHR, shift).and(0xff);
+				IntVector cd = d.lanewise(VectorOperators.LSHR, shift).and(0xff);
+				IntVector t = cs.mul(cd).add(cs.mul(inverseDstAlpha)).add(cd.mul(inverseSrcAlpha)).add(0x80);
+				t = t.add(t.lanewise(VectorOperators.LSHR, 8)).lanewise(VectorOperators.LSHR, 8);
+				result = result.or(t.lanewise(VectorOperators.LSHL, shift));
+			}
+			result.intoArray(dst, dstIndex + i);
+		}
+		getScalar().multiply(src, srcIndex + i, dst, dstIndex + i, length - i);
+	}
+	
+	/**
+	 * Multiplies all four channels of every pixel by factor / 255, rounding to nearest, like ScalarBlendKernels.scale().
+	 */
+	private static IntVector scale(IntVector pixels, IntVector factor) {
+		IntVector rb = pixels.and(0x00ff00ff).mul(factor).add(0x00800080);
+		IntVector ag = pixels.lanewise(VectorOperators.LSHR, 8).and(0x00ff00ff).mul(factor).add(0x00800080);
+		rb = rb.add(rb.lanewise(VectorOperators.LSHR, 8).and(0x00ff00ff)).lanewise(VectorOperators.LSHR, 8).and(0x00ff00ff);
+		ag = ag.add(ag.lanewise(VectorOperators.LSHR, 8).and(0x00ff00ff)).and(0xff00ff00);
+		return rb.or(ag);
+	}
+}
@@ -0,0 +1,234 @@
+package org.fwilliams.fwjengine.asset;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of decoded images keyed by the canonical path of the file they were loaded from, so every caller that loads 
+ * the same file gets the same image and the file is only decoded once. The cache keeps track of how many bytes each decoded 
+ * image takes up. When the total goes over the budget, the least recently used images are evicted until it fits again.
+ * <br>
+ * Hit, miss and eviction counts are kept for tuning the budget.
+ * @author Francis Williams
+ *
+ */
+public class AssetCache {
+	private static AssetCache sharedCache;
+	
+	private LinkedHashMap<String, Entry> entries;
+	private long budget;
+	private long size;
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+	
+	/**
+	 * Creates a new, empty AssetCache.
+	 * @param budget The maximum number of bytes of decoded images to keep.
+	 */
+	public AssetCache(long budget) {
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		setBudget(budget);
+	}
+	
+	/**
+	 * Gets the AssetCache shared by every AssetLoader that isn't given one. Its budget is a quarter of the maximum heap size.
+	 * @return The shared AssetCache.
+	 */
+	public static synchronized AssetCache getSharedCache() {
+		if(sharedCache == null) {
+			sharedCache = new AssetCache(Runtime.getRuntime().maxMemory() / 4);
+		}
+		return sharedCache;
+	}
+	
+	/**
+	 * Gets the key a file is cached under: its canonical path, so different paths to the same file share an entry.
+	 * @param fileName The file name.
+	 * @return The canonical path of the file, or its absolute path if the canonical path can't be determined.
+	 */
+	public static String getKey(String fileName) {
+		File file = new File(fileName);
+		try {
+			return file.getCanonicalPath();
+		} catch(IOException e) {
+			return file.getAbsolutePath();
+		}
+	}
+	
+	/**
+	 * Gets the number of bytes an image takes up once decoded.
+	 * @param image The image.
+	 * @return The size of the image's pixels in bytes. Images other than BufferedImages are assumed to use 4 bytes per pixel.
+	 */
+	public static long getByteSize(Image image) {
+		long pixels = (long) Math.max(image.getWidth(null), 0) * Math.max(image.getHeight(null), 0);
+		if(image instanceof BufferedImage) {
+			int bits = ((BufferedImage) image).getColorModel().getPixelSize();
+			return pixels * ((bits + 7) / 8);
+		}
+		return pixels * 4;
+	}
+	
+	/**
+	 * Gets the image cached for a file and marks it as most recently used.
+	 * @param fileName The file the image was loaded from.
+	 * @return The cached image, or null if the file isn't cached.
+	 */
+	public Image get(String fileName) {
+		return getByKey(getKey(fileName));
+	}
+	
+	/**
+	 * Gets the image cached under a key returned by getKey() and marks it as most recently used.
+	 * @param key The cache key.
+	 * @return The cached image, or null if nothing is cached under the key.
+	 */
+	public synchronized Image getByKey(String key) {
+		Entry entry = entries.get(key);
+		if(entry == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return entry.image;
+	}
+	
+	/**
+	 * Caches the image loaded from a file, evicting least recently used images if the cache goes over budget.
+	 * @param fileName The file the image was loaded from.
+	 * @param image The decoded image.
+	 */
+	public void put(String fileName, Image image) {
+		putByKey(getKey(fileName), image);
+	}
+	
+	/**
+	 * Caches an image under a key returned by getKey(), evicting least recently used images if the cache goes over budget.
+	 * The new image is never evicted by its own insertion, even if it is larger than the budget on its own.
+	 * @param key The cache key.
+	 * @param image The decoded image.
+	 */
+	public synchronized void putByKey(String key, Image image) {
+		Entry entry = new Entry(image, getByteSize(image));
+		Entry old = entries.put(key, entry);
+		if(old != null) {
+			size -= old.size;
+		}
+		size += entry.size;
+		evict(entry);
+	}
+	
+	/**
+	 * Removes the image cached for a file.
+	 * @param fileName The file the image was loaded from.
+	 */
+	public synchronized void remove(String fileName) {
+		Entry entry = entries.remove(getKey(fileName));
+		if(entry != null) {
+			size -= entry.size;
+		}
+	}
+	
+	/**
+	 * Removes every image from the cache. The counters are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+	
+	/**
+	 * Sets the maximum number of bytes of decoded images to keep, evicting images if the cache is now over budget.
+	 * @param budget The budget in bytes.
+	 */
+	public synchronized void setBudget(long budget) {
+		if(budget < 0) {
+			throw new IllegalArgumentException("Budget must not be negative");
+		}
+		this.budget = budget;
+		evict(null);
+	}
+	
+	/**
+	 * Gets the maximum number of bytes of decoded images to keep.
+	 * @return The budget in bytes.
+	 */
+	public synchronized long getBudget() {
+		return budget;
+	}
+	
+	/**
+	 * Gets the number of bytes taken up by the cached images.
+	 * @return The size of the cache in bytes.
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+	
+	/**
+	 * Gets the number of cached images.
+	 * @return The number of cached images.
+	 */
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+	
+	/**
+	 * Gets the number of lookups that found an image.
+	 * @return The number of cache hits.
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+	
+	/**
+	 * Gets the number of lookups that found nothing.
+	 * @return The number of cache misses.
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+	
+	/**
+	 * Gets the number of images evicted to stay within budget.
+	 * @return The number of evictions.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+	
+	/**
+	 * Evicts least recently used entries until the cache is within budget.
+	 * @param keep An entry that must not be evicted, or null.
+	 */
+	private void evict(Entry keep) {
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while(size > budget && iterator.hasNext()) {
+			Entry entry = iterator.next().getValue();
+			if(entry != keep) {
+				iterator.remove();
+				size -= entry.size;
+				evictionCount++;
+			}
+		}
+	}
+	
+	/**
+	 * A cached image and its size in bytes.
+	 */
+	private static class Entry {
+		Image image;
+		long size;
+		
+		Entry(Image image, long size) {
+			this.image = image;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package org.fwilliams.fwjengine.asset;
+
+import java.awt.Image;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+import org.fwilliams.fwjengine.core.ScreenManager;
+import org.fwilliams.fwjengine.util.ThreadPool;
+
+/**
+ * Loads images in the background. Every call to load() decodes its file on one of the loader's threads, converts it to the 
+ * screen's format and completes the returned future with the result, so many images decode in parallel. 
+ * Loaded images are kept in an AssetCache, and a file that is already cached or already loading is never decoded again.
+ * getProgress() reports how many of the requested images are done, for loading screens, and awaitAll() waits until every 
+ * requested image is done, e.g. before drawing the first frame.
+ * <br>
+ * Images are read from mounted bundles before the file system, see mount().
+ * <br>
+ * Decodes are submitted as FutureTasks. If the executor drops one without running it, e.g. a ThreadPool that is closed, 
+ * it must cancel the task, which fails the image's future instead of leaving it waiting forever.
+ * @author Francis Williams
+ *
+ */
+public class AssetLoader {
+	private ScreenManager screen;
+	private Executor executor;
+	private AtomicInteger requestedCount;
+	private AtomicInteger loadedCount;
+	private AtomicInteger failedCount;
+	private HashSet<CompletableFuture<Image>> pending;
+	private HashMap<String, CompletableFuture<Image>> loading;
+	private AssetCache cache;
+	private CopyOnWriteArrayList<BundleFileSystem> bundles;
+	
+	/**
+	 * Creates a new AssetLoader that decodes images on the threads of a ThreadPool and caches them in the shared AssetCache.
+	 * @param screen The screen loaded images are converted for. If null images are left in the format they were decoded in.
+	 * @param pool The ThreadPool to decode images on.
+	 */
+	public AssetLoader(ScreenManager screen, ThreadPool pool) {
+		this(screen, pool::runTask, AssetCache.getSharedCache());
+	}
+	
+	/**
+	 * Creates a new AssetLoader that decodes images with an Executor.
+	 * @param screen The screen loaded images are converted for. If null images are left in the format they were decoded in.
+	 * @param executor The Executor to decode images with. Must run or cancel every task it is given.
+	 * @param cache The cache to keep loaded images in.
+	 */
+	public AssetLoader(ScreenManager screen, Executor executor, AssetCache cache) {
+		this.screen = screen;
+		this.executor = executor;
+		this.cache = cache;
+		this.loading = new HashMap<String, CompletableFuture<Image>>();
+		this.requestedCount = new AtomicInteger();
+		this.loadedCount = new AtomicInteger();
+		this.failedCount = new AtomicInteger();
+		this.pending = new HashSet<CompletableFuture<Image>>();
+		this.bundles = new CopyOnWriteArrayList<BundleFileSystem>();
+	}
+	
+	/**
+	 * Mounts a bundle. Images in the bundle are read from it instead of from their files, and bundles mounted earlier take precedence.
+	 * @param bundle The bundle to mount.
+	 */
+	public void mount(BundleFileSystem bundle) {
+		bundles.addIfAbsent(bundle);
+	}
+	
+	/**
+	 * Unmounts a bundle mounted with mount(). Images already loaded from it stay cached.
+	 * @param bundle The bundle to unmount.
+	 */
+	public void unmount(BundleFileSystem bundle) {
+		bundles.remove(bundle);
+	}
+	
+	/**
+	 * Starts loading an image in the background. If the image is already cached the returned future is already complete, 
+	 * and if it is already loading the future of that load is returned.
+	 * @param fileName The image file to load.
+	 * @return A future that completes with the loaded image, or completes exceptionally if the file could not be read.
+	 */
+	public CompletableFuture<Image> load(final String fileName) {
+		requestedCount.incrementAndGet();
+		final String key = AssetCache.getKey(fileName);
+		
+		CompletableFuture<Image> future;
+		synchronized(loading) {
+			Image cached = cache.getByKey(key);
+			if(cached != null) {
+				loadedCount.incrementAndGet();
+				return CompletableFuture.completedFuture(cached);
+			}
+			future = loading.get(key);
+			if(future == null) {
+				future = submit(fileName).whenComplete((image, error) -> {
+					// cached and counted before anyone waiting on the future is woken
+					synchronized(loading) {
+						if(error == null) {
+							cache.putByKey(key, image);
+						}
+						loading.remove(key);
+					}
+				});
+				loading.put(key, future);
+			}
+		}
+		
+		CompletableFuture<Image> counted = future.whenComplete((image, error) -> {
+			if(error == null) {
+				loadedCount.incrementAndGet();
+			} else {
+				failedCount.incrementAndGet();
+			}
+		});
+		synchronized(pending) {
+			pending.add(counted);
+		}
+		counted.whenComplete((image, error) -> {
+			synchronized(pending) {
+				pending.remove(counted);
+			}
+		});
+		return counted;
+	}
+	
+	/**
+	 * Decodes and converts an image on the executor.
+	 * @return A future completed by the decode task, failed if the task throws, is cancelled or can't be submitted.
+	 */
+	private CompletableFuture<Image> submit(String fileName) {
+		CompletableFuture<Image> decoded = new CompletableFuture<Image>();
+		FutureTask<Image> task = new FutureTask<Image>(() -> convert(decode(fileName))) {
+			@Override
+			protected void done() {
+				try {
+					decoded.complete(get());
+				} catch(ExecutionException e) {
+					decoded.completeExceptionally(e.getCause());
+				} catch(CancellationException | InterruptedException e) {
+					decoded.completeExceptionally(e);
+				}
+			}
+		};
+		try {
+			executor.execute(task);
+		} catch(RuntimeException e) {
+			decoded.completeExceptionally(e);
+		}
+		return decoded;
+	}
+	
+	/**
+	 * Loads an image on the calling thread, or gets it from the cache. Files that cannot be decoded are handed to ImageIcon, 
+	 * like GameCore.loadImage() always did. Those images are not cached.
+	 * @param fileName The image file to load.
+	 * @return The loaded image.
+	 */
+	public Image loadImmediately(String fileName) {
+		String key = AssetCache.getKey(fileName);
+		Image image = cache.getByKey(key);
+		if(image != null) {
+			return image;
+		}
+		try {
+			image = convert(decode(fileName));
+			cache.putByKey(key, image);
+			return image;
+		} catch(IOException e) {
+			return convert(new ImageIcon(fileName).getImage());
+		}
+	}
+	
+	/**
+	 * Gets the cache loaded images are kept in.
+	 * @return The AssetCache of this loader.
+	 */
+	public AssetCache getCache() {
+		return cache;
+	}
+	
+	/**
+	 * Waits until every image requested so far has finished loading or failed. Failures don't end the wait early; 
+	 * check getFailedCount() or the individual futures. Images dropped by the executor count as failed.
+	 */
+	public void awaitAll() {
+		while(true) {
+			CompletableFuture<?>[] waiting;
+			synchronized(pending) {
+				if(pending.isEmpty()) {
+					return;
+				}
+				waiting = pending.toArray(new CompletableFuture<?>[pending.size()]);
+			}
+			try {
+				CompletableFuture.allOf(waiting).join();
+			} catch(CompletionException e) {/*Reported through the futures*/}
+			synchronized(pending) {
+				for(CompletableFuture<?> future : waiting) {
+					pending.remove(future);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Gets the fraction of requested images that have finished loading, including those that failed.
+	 * @return The progress from 0 to 1. 1 if nothing was requested.
+	 */
+	public float getProgress() {
+		int requested = requestedCount.get();
+		if(requested == 0) {
+			return 1.0f;
+		}
+		return (float) (loadedCount.get() + failedCount.get()) / requested;
+	}
+	
+	/**
+	 * Gets the number of images requested with load().
+	 * @return The number of requested images.
+	 */
+	public int getRequestedCount() {
+		return requestedCount.get();
+	}
+	
+	/**
+	 * Gets the number of requested images that loaded successfully.
+	 * @return The number of loaded images.
+	 */
+	public int getLoadedCount() {
+		return loadedCount.get();
+	}
+	
+	/**
+	 * Gets the number of requested images that could not be loaded.
+	 * @return The number of failed images.
+	 */
+	public int getFailedCount() {
+		return failedCount.get();
+	}
+	
+	/**
+	 * Decodes an image file. Called on a loader thread by load() and on the calling thread by loadImmediately().
+	 * Raw image files are memory-mapped instead of decoded, and a raw image compiled from the requested file is used in its place 
+	 * if it is at least as new. Mounted bundles are searched first, again preferring a compiled raw image.
+	 * @param fileName The image file to decode.
+	 * @return The decoded image.
+	 * @throws IOException if the file could not be read or is not an image.
+	 */
+	protected Image decode(String fileName) throws IOException {
+		if(!bundles.isEmpty()) {
+			String rawName = BundleFileSystem.normalize(RawImage.getRawFile(fileName).getPath());
+			for(BundleFileSystem bundle : bundles) {
+				if(bundle.contains(rawName)) {
+					return bundle.readImage(rawName);
+				}
+				if(bundle.contains(fileName)) {
+					return bundle.readImage(fileName);
+				}
+			}
+		}
+		
+		File file = new File(fileName);
+		if(fileName.endsWith(RawImage.EXTENSION)) {
+			return RawImage.read(file);
+		}
+		File rawFile = RawImage.getRawFile(fileName);
+		if(rawFile.isFile() && rawFile.lastModified() >= file.lastModified()) {
+			return RawImage.read(rawFile);
+		}
+		
+		Image image = ImageIO.read(file);
+		if(image == null) {
+			throw new IOException("Unsupported image format: " + fileName);
+		}
+		return image;
+	}
+	
+	private Image convert(Image image) {
+		if(screen != null) {
+			return screen.toCompatibleImage(image);
+		}
+		return image;
+	}
+}
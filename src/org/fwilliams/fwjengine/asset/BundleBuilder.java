@@ -0,0 +1,205 @@
+package org.fwilliams.fwjengine.asset;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Writes asset files into a single bundle file that BundleFileSystem can serve them from. 
+ * Assets are stored in the load order given to setLoadOrder(), so assets that are loaded together are read from neighbouring 
+ * pages of the bundle, followed by every other asset in name order.
+ * <br>
+ * Usage: java org.fwilliams.fwjengine.asset.BundleBuilder [-order &lt;load order file&gt;] &lt;bundle file&gt; &lt;file or directory&gt;...
+ * <br>
+ * The load order file lists one asset name per line.
+ * @author Francis Williams
+ *
+ */
+public class BundleBuilder {
+	private static final int ALIGNMENT = 8;
+	
+	private TreeMap<String, File> files;
+	private List<String> loadOrder;
+	
+	/**
+	 * Creates a new, empty BundleBuilder.
+	 */
+	public BundleBuilder() {
+		files = new TreeMap<String, File>();
+		loadOrder = Collections.emptyList();
+	}
+	
+	/**
+	 * Adds a file to the bundle under its own path, e.g. "assets/bg.png".
+	 * @param file The file to add.
+	 */
+	public void add(File file) {
+		add(file.getPath(), file);
+	}
+	
+	/**
+	 * Adds a file to the bundle.
+	 * @param name The name to store the file under.
+	 * @param file The file to add.
+	 */
+	public void add(String name, File file) {
+		files.put(BundleFileSystem.normalize(name), file);
+	}
+	
+	/**
+	 * Adds every file in a directory and its subdirectories under their own paths.
+	 * @param directory The directory to add.
+	 */
+	public void addDirectory(File directory) {
+		File[] children = directory.listFiles();
+		if(children == null) {
+			return;
+		}
+		for(File child : children) {
+			if(child.isDirectory()) {
+				addDirectory(child);
+			} else {
+				add(child);
+			}
+		}
+	}
+	
+	/**
+	 * Sets the order assets are stored in. Names that aren't in the bundle are ignored.
+	 * @param loadOrder The names of assets in the order they are loaded.
+	 */
+	public void setLoadOrder(List<String> loadOrder) {
+		this.loadOrder = new ArrayList<String>(loadOrder);
+	}
+	
+	/**
+	 * Writes the bundle.
+	 * @param bundle The bundle file to write.
+	 * @throws IOException if an asset could not be read or the bundle could not be written.
+	 */
+	public void write(File bundle) throws IOException {
+		ArrayList<String> order = new ArrayList<String>(files.size());
+		HashMap<String, Boolean> placed = new HashMap<String, Boolean>();
+		for(String name : loadOrder) {
+			name = BundleFileSystem.normalize(name);
+			if(files.containsKey(name) && placed.put(name, Boolean.TRUE) == null) {
+				order.add(name);
+			}
+		}
+		for(String name : files.keySet()) {
+			if(!placed.containsKey(name)) {
+				order.add(name);
+			}
+		}
+		
+		int indexSize = 12;
+		for(String name : order) {
+			indexSize += 4 + name.getBytes(StandardCharsets.UTF_8).length + 4 + 8 + 8;
+		}
+		ByteBuffer index = ByteBuffer.allocate(indexSize).order(ByteOrder.LITTLE_ENDIAN);
+		index.putInt(BundleFileSystem.MAGIC);
+		index.putShort((short) BundleFileSystem.VERSION);
+		index.putShort((short) 0);
+		index.putInt(order.size());
+		
+		long offset = align(indexSize);
+		for(String name : order) {
+			byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+			long length = files.get(name).length();
+			index.putInt(nameBytes.length);
+			index.put(nameBytes);
+			index.putInt(getFormat(name));
+			index.putLong(offset);
+			index.putLong(length);
+			offset = align(offset + length);
+		}
+		if(offset > Integer.MAX_VALUE) {
+			throw new IOException("Bundle larger than 2GB: " + bundle);
+		}
+		index.flip();
+		
+		RandomAccessFile out = new RandomAccessFile(bundle, "rw");
+		try {
+			out.setLength(0);
+			FileChannel channel = out.getChannel();
+			while(index.hasRemaining()) {
+				channel.write(index);
+			}
+			long position = align(indexSize);
+			for(String name : order) {
+				File file = files.get(name);
+				channel.position(position);
+				FileChannel in = FileChannel.open(file.toPath());
+				try {
+					long length = in.size();
+					long copied = 0;
+					while(copied < length) {
+						copied += in.transferTo(copied, length - copied, channel);
+					}
+					position = align(position + length);
+				} finally {
+					in.close();
+				}
+			}
+			out.setLength(position);
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Gets the format an asset is stored as from its file extension.
+	 */
+	private static int getFormat(String name) {
+		String lower = name.toLowerCase();
+		if(lower.endsWith(RawImage.EXTENSION)) {
+			return BundleFileSystem.FORMAT_RAW;
+		}
+		if(lower.endsWith(".png") || lower.endsWith(".jpg") || lower.endsWith(".jpeg") || lower.endsWith(".gif") || lower.endsWith(".bmp")) {
+			return BundleFileSystem.FORMAT_ENCODED;
+		}
+		return BundleFileSystem.FORMAT_DATA;
+	}
+	
+	private static long align(long offset) {
+		return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+	
+	public static void main(String[] args) {
+		BundleBuilder builder = new BundleBuilder();
+		int first = 0;
+		try {
+			if(args.length > 1 && args[0].equals("-order")) {
+				builder.setLoadOrder(Files.readAllLines(new File(args[1]).toPath(), StandardCharsets.UTF_8));
+				first = 2;
+			}
+			if(args.length - first < 2) {
+				System.err.println("Usage: java " + BundleBuilder.class.getName() + " [-order <load order file>] <bundle file> <file or directory>...");
+				System.exit(1);
+			}
+			for(int i = first + 1; i < args.length; i++) {
+				File file = new File(args[i]);
+				if(file.isDirectory()) {
+					builder.addDirectory(file);
+				} else {
+					builder.add(file);
+				}
+			}
+			builder.write(new File(args[first]));
+			System.out.println("Wrote " + builder.files.size() + " assets to " + args[first]);
+		} catch(IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package org.fwilliams.fwjengine.asset;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Serves assets by name out of a bundle file written by BundleBuilder. The bundle is opened and memory-mapped once, and every 
+ * asset is a slice of the mapping, so reading an asset costs no file system calls.
+ * <br>
+ * A bundle is a little-endian header (the magic number "FWJB", a 16 bit version, 16 unused bits and the number of entries), 
+ * an index of entries (name length, UTF-8 name, format, offset and length) and then the contents of every entry, each starting 
+ * on an 8 byte boundary.
+ * <br>
+ * Names use '/' as the separator and are the paths the assets had when they were bundled, e.g. "assets/bg.png", so mounting 
+ * a bundle on an AssetLoader doesn't change the names games load their images by.
+ * @author Francis Williams
+ *
+ */
+public class BundleFileSystem {
+	/**
+	 * The first four bytes of every bundle file: "FWJB".
+	 */
+	public static final int MAGIC = 0x424A5746;
+	
+	public static final int VERSION = 1;
+	
+	/**
+	 * An image in a format ImageIO can decode, e.g. PNG.
+	 */
+	public static final int FORMAT_ENCODED = 0;
+	
+	/**
+	 * A RawImage.
+	 */
+	public static final int FORMAT_RAW = 1;
+	
+	/**
+	 * Any other data.
+	 */
+	public static final int FORMAT_DATA = 2;
+	
+	private File file;
+	private MappedByteBuffer data;
+	private HashMap<String, Entry> entries;
+	private ArrayList<String> names;
+	
+	/**
+	 * Opens a bundle file and reads its index.
+	 * @param file The bundle file.
+	 * @throws IOException if the file could not be read or is not a bundle.
+	 */
+	public BundleFileSystem(File file) throws IOException {
+		this.file = file;
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			if(in.length() > Integer.MAX_VALUE) {
+				throw new IOException("Bundle larger than 2GB: " + file);
+			}
+			data = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+		} finally {
+			in.close();
+		}
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		readIndex();
+	}
+	
+	private void readIndex() throws IOException {
+		try {
+			if(data.getInt() != MAGIC) {
+				throw new IOException("Not a bundle: " + file);
+			}
+			short version = data.getShort();
+			if(version != VERSION) {
+				throw new IOException("Unsupported bundle version " + version + ": " + file);
+			}
+			data.getShort();
+			int count = data.getInt();
+			
+			entries = new HashMap<String, Entry>(count * 2);
+			names = new ArrayList<String>(count);
+			for(int i = 0; i < count; i++) {
+				byte[] nameBytes = new byte[data.getInt()];
+				data.get(nameBytes);
+				String name = new String(nameBytes, StandardCharsets.UTF_8);
+				int format = data.getInt();
+				long offset = data.getLong();
+				long length = data.getLong();
+				if(offset < 0 || length < 0 || offset + length > data.limit()) {
+					throw new IOException("Bad bundle entry " + name + ": " + file);
+				}
+				entries.put(name, new Entry(format, (int) offset, (int) length));
+				names.add(name);
+			}
+		} catch(RuntimeException e) {
+			throw new IOException("Corrupt bundle: " + file, e);
+		}
+	}
+	
+	/**
+	 * Converts a file name into the form names are stored in bundles: '/' separators and no leading "./".
+	 * @param fileName The file name.
+	 * @return The bundle name.
+	 */
+	public static String normalize(String fileName) {
+		String name = fileName.replace('\\', '/');
+		while(name.startsWith("./")) {
+			name = name.substring(2);
+		}
+		return name;
+	}
+	
+	/**
+	 * Gets the file the bundle was opened from.
+	 * @return The bundle file.
+	 */
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * Checks if the bundle contains an asset.
+	 * @param name The name of the asset.
+	 * @return True if the bundle contains the asset.
+	 */
+	public boolean contains(String name) {
+		return entries.containsKey(normalize(name));
+	}
+	
+	/**
+	 * Gets the names of every asset in the bundle, in the order they are stored.
+	 * @return The asset names.
+	 */
+	public List<String> getNames() {
+		return Collections.unmodifiableList(names);
+	}
+	
+	/**
+	 * Gets the format of an asset.
+	 * @param name The name of the asset.
+	 * @return One of the FORMAT constants, or -1 if the bundle doesn't contain the asset.
+	 */
+	public int getFormat(String name) {
+		Entry entry = entries.get(normalize(name));
+		return entry == null ? -1 : entry.format;
+	}
+	
+	/**
+	 * Gets the length of an asset in bytes.
+	 * @param name The name of the asset.
+	 * @return The length, or -1 if the bundle doesn't contain the asset.
+	 */
+	public int getLength(String name) {
+		Entry entry = entries.get(normalize(name));
+		return entry == null ? -1 : entry.length;
+	}
+	
+	/**
+	 * Gets the contents of an asset as a read-only slice of the bundle's mapping. Safe to call from many threads at once.
+	 * @param name The name of the asset.
+	 * @return The contents of the asset, or null if the bundle doesn't contain it.
+	 */
+	public ByteBuffer getBuffer(String name) {
+		Entry entry = entries.get(normalize(name));
+		if(entry == null) {
+			return null;
+		}
+		ByteBuffer buffer = data.asReadOnlyBuffer();
+		buffer.position(entry.offset);
+		buffer.limit(entry.offset + entry.length);
+		return buffer.slice();
+	}
+	
+	/**
+	 * Opens a stream over the contents of an asset.
+	 * @param name The name of the asset.
+	 * @return A stream of the asset's contents.
+	 * @throws IOException if the bundle doesn't contain the asset.
+	 */
+	public InputStream openStream(String name) throws IOException {
+		ByteBuffer buffer = getBuffer(name);
+		if(buffer == null) {
+			throw new IOException("Not in bundle " + file + ": " + name);
+		}
+		return new BufferInputStream(buffer);
+	}
+	
+	/**
+	 * Reads an image out of the bundle. Raw images are copied straight out of the mapping; other images are decoded with ImageIO.
+	 * @param name The name of the image.
+	 * @return The image.
+	 * @throws IOException if the bundle doesn't contain the image or it could not be decoded.
+	 */
+	public BufferedImage readImage(String name) throws IOException {
+		ByteBuffer buffer = getBuffer(name);
+		if(buffer == null) {
+			throw new IOException("Not in bundle " + file + ": " + name);
+		}
+		if(getFormat(name) == FORMAT_RAW) {
+			return RawImage.read(buffer, name);
+		}
+		BufferedImage image = ImageIO.read(new BufferInputStream(buffer));
+		if(image == null) {
+			throw new IOException("Unsupported image format: " + name);
+		}
+		return image;
+	}
+	
+	/**
+	 * The location of an asset in the bundle.
+	 */
+	private static class Entry {
+		int format;
+		int offset;
+		int length;
+		
+		Entry(int format, int offset, int length) {
+			this.format = format;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+	
+	/**
+	 * An InputStream reading the remaining bytes of a ByteBuffer.
+	 */
+	private static class BufferInputStream extends InputStream {
+		private ByteBuffer buffer;
+		
+		BufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+		
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if(len == 0) {
+				return 0;
+			}
+			if(!buffer.hasRemaining()) {
+				return -1;
+			}
+			len = Math.min(len, buffer.remaining());
+			buffer.get(b, off, len);
+			return len;
+		}
+		
+		@Override
+		public long skip(long n) {
+			int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + skipped);
+			return skipped;
+		}
+		
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package org.fwilliams.fwjengine.asset;
+
+import java.awt.image.DataBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A DataBuffer of ints that reads straight through to an IntBuffer, e.g. a read-only view of a memory-mapped file. The first
+ * write copies the elements into a buffer on the heap, so the source buffer is never written to.
+ * @author Francis Williams
+ *
+ */
+class MappedDataBuffer extends DataBuffer {
+	private IntBuffer buffer;
+	
+	/**
+	 * Creates a new DataBuffer over an IntBuffer.
+	 * @param buffer The buffer holding the elements, starting at its position 0.
+	 * @param size The number of elements.
+	 */
+	public MappedDataBuffer(IntBuffer buffer, int size) {
+		super(TYPE_INT, size);
+		this.buffer = buffer;
+	}
+	
+	@Override
+	public int getElem(int bank, int i) {
+		return buffer.get(i + offsets[bank]);
+	}
+	
+	@Override
+	public void setElem(int bank, int i, int val) {
+		if(buffer.isReadOnly()) {
+			IntBuffer copy = IntBuffer.allocate(buffer.capacity());
+			buffer.rewind();
+			copy.put(buffer);
+			buffer = copy;
+		}
+		buffer.put(i + offsets[bank], val);
+	}
+}
@@ -0,0 +1,259 @@
+package org.fwilliams.fwjengine.asset;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads and writes images in a raw, preprocessed format that needs no decoding. A raw image file is a 16 byte little-endian header 
+ * followed by the image's pixels as premultiplied ARGB ints, row by row, in the same layout as a TYPE_INT_ARGB_PRE BufferedImage.
+ * <br>
+ * The header is the magic number "FWJR", a 16 bit version, 16 bits of flags, the width and the height.
+ * <br>
+ * Files are read by memory-mapping them, so loading an image costs the page faults to bring the file into memory and nothing else.
+ * Images without FLAG_ALPHA are read as opaque TYPE_INT_RGB images, which Java2D draws without blending.
+ * Use RawImageCompiler to convert PNG files ahead of time.
+ * @author Francis Williams
+ *
+ */
+public class RawImage {
+	/**
+	 * The file extension of raw image files.
+	 */
+	public static final String EXTENSION = ".fwi";
+	
+	/**
+	 * The first four bytes of every raw image file: "FWJR".
+	 */
+	public static final int MAGIC = 0x524A5746;
+	
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 16;
+	
+	/**
+	 * Set in the flags if any pixel of the image is not fully opaque.
+	 */
+	public static final int FLAG_ALPHA = 1;
+	
+	private RawImage() {
+	}
+	
+	/**
+	 * Writes an image to a raw image file.
+	 * @param image A fully loaded image.
+	 * @param file The file to write.
+	 * @throws IOException if the file could not be written.
+	 */
+	public static void write(Image image, File file) throws IOException {
+		BufferedImage pixels = toIntArgbPre(image);
+		int width = pixels.getWidth();
+		int height = pixels.getHeight();
+		int[] data = ((DataBufferInt) pixels.getRaster().getDataBuffer()).getData();
+		
+		int flags = 0;
+		for(int pixel : data) {
+			if((pixel >>> 24) != 0xff) {
+				flags |= FLAG_ALPHA;
+				break;
+			}
+		}
+		
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + data.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC);
+		buffer.putShort((short) VERSION);
+		buffer.putShort((short) flags);
+		buffer.putInt(width);
+		buffer.putInt(height);
+		buffer.asIntBuffer().put(data);
+		buffer.rewind();
+		
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			out.setLength(0);
+			FileChannel channel = out.getChannel();
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Reads a raw image file into a TYPE_INT_ARGB_PRE BufferedImage, or a TYPE_INT_RGB one if FLAG_ALPHA isn't set. The file is 
+	 * memory-mapped read-only and its pixels copied into the image in one bulk copy. The result is a regular image that Java2D 
+	 * can accelerate.
+	 * @param file The raw image file.
+	 * @return The image.
+	 * @throws IOException if the file could not be read or is not a raw image.
+	 */
+	public static BufferedImage read(File file) throws IOException {
+		return read(mapFile(file));
+	}
+	
+	/**
+	 * Reads a raw image from a buffer holding a whole raw image file, e.g. a slice of an asset bundle.
+	 * @param buffer The buffer, starting at the header.
+	 * @param source The name of the image, for error messages.
+	 * @return The image.
+	 * @throws IOException if the buffer doesn't hold a raw image.
+	 */
+	static BufferedImage read(ByteBuffer buffer, String source) throws IOException {
+		buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		checkHeader(buffer, source);
+		return read(buffer);
+	}
+	
+	/**
+	 * Copies the pixels of a checked raw image into a new TYPE_INT_ARGB_PRE image, or TYPE_INT_RGB if it is opaque. Opaque 
+	 * premultiplied pixels have the same RGB bits, so both take the same copy.
+	 */
+	private static BufferedImage read(ByteBuffer buffer) {
+		int width = buffer.getInt(8);
+		int height = buffer.getInt(12);
+		int type = hasAlpha(buffer) ? BufferedImage.TYPE_INT_ARGB_PRE : BufferedImage.TYPE_INT_RGB;
+		
+		BufferedImage image = new BufferedImage(width, height, type);
+		int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		pixelBuffer(buffer).get(data);
+		return image;
+	}
+	
+	/**
+	 * Maps a raw image file and wraps the mapping as the DataBuffer of a BufferedImage, without copying the pixels. 
+	 * The file is mapped read-only, so it only needs read access; the first time the image is drawn into, its pixels are copied 
+	 * to the heap, so drawing into the image never changes the file. The image has no alpha channel if FLAG_ALPHA isn't set.
+	 * <br>
+	 * Java2D can't accelerate an image with a custom DataBuffer and draws it pixel by pixel, so use this for images that are read 
+	 * once, e.g. to copy into a TextureAtlas, and read() for images that are drawn every frame.
+	 * @param file The raw image file.
+	 * @return An image backed directly by the file's mapping.
+	 * @throws IOException if the file could not be read or is not a raw image.
+	 */
+	public static BufferedImage map(File file) throws IOException {
+		MappedByteBuffer mapped = mapFile(file);
+		int width = mapped.getInt(8);
+		int height = mapped.getInt(12);
+		
+		DirectColorModel colorModel;
+		int[] masks;
+		if(hasAlpha(mapped)) {
+			masks = new int[] {0x00ff0000, 0x0000ff00, 0x000000ff, 0xff000000};
+			colorModel = new DirectColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), 32, 
+				masks[0], masks[1], masks[2], masks[3], true, DataBuffer.TYPE_INT);
+		} else {
+			masks = new int[] {0x00ff0000, 0x0000ff00, 0x000000ff};
+			colorModel = new DirectColorModel(24, masks[0], masks[1], masks[2], 0);
+		}
+		SinglePixelPackedSampleModel sampleModel = new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, width, height, masks);
+		DataBuffer dataBuffer = new MappedDataBuffer(pixelBuffer(mapped), width * height);
+		WritableRaster raster = Raster.createWritableRaster(sampleModel, dataBuffer, new Point(0, 0));
+		return new BufferedImage(colorModel, raster, true, null);
+	}
+	
+	/**
+	 * Gets the transparency of a raw image file from its header.
+	 * @param file The raw image file.
+	 * @return Transparency.TRANSLUCENT if the image has any transparent pixels, otherwise Transparency.OPAQUE.
+	 * @throws IOException if the file could not be read or is not a raw image.
+	 */
+	public static int getTransparency(File file) throws IOException {
+		return hasAlpha(mapFile(file)) ? Transparency.TRANSLUCENT : Transparency.OPAQUE;
+	}
+	
+	/**
+	 * Gets the raw image file compiled from an image file: the same path with the extension replaced by EXTENSION.
+	 * @param fileName The name of the source image file.
+	 * @return The raw image file for the source.
+	 */
+	public static File getRawFile(String fileName) {
+		int dot = fileName.lastIndexOf('.');
+		int separator = Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf(File.separatorChar));
+		if(dot > separator) {
+			fileName = fileName.substring(0, dot);
+		}
+		return new File(fileName + EXTENSION);
+	}
+	
+	/**
+	 * Maps a whole raw image file read-only and checks its header.
+	 */
+	private static MappedByteBuffer mapFile(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		MappedByteBuffer mapped;
+		try {
+			// The mapping stays valid after the channel is closed.
+			mapped = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+		} finally {
+			in.close();
+		}
+		mapped.order(ByteOrder.LITTLE_ENDIAN);
+		checkHeader(mapped, file.getPath());
+		return mapped;
+	}
+	
+	/**
+	 * Checks that a little-endian buffer starts with a valid header and holds all the pixels it promises.
+	 */
+	private static void checkHeader(ByteBuffer buffer, String source) throws IOException {
+		if(buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a raw image: " + source);
+		}
+		if(buffer.getShort(4) != VERSION) {
+			throw new IOException("Unsupported raw image version " + buffer.getShort(4) + ": " + source);
+		}
+		long width = buffer.getInt(8);
+		long height = buffer.getInt(12);
+		if(width <= 0 || height <= 0 || HEADER_SIZE + width * height * 4 > buffer.limit()) {
+			throw new IOException("Truncated raw image: " + source);
+		}
+	}
+	
+	/**
+	 * Checks the FLAG_ALPHA bit in the header of a checked raw image.
+	 */
+	private static boolean hasAlpha(ByteBuffer buffer) {
+		return (buffer.getShort(6) & FLAG_ALPHA) != 0;
+	}
+	
+	/**
+	 * Gets an IntBuffer view of the pixels following the header.
+	 */
+	private static IntBuffer pixelBuffer(ByteBuffer buffer) {
+		buffer.position(HEADER_SIZE);
+		return buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+	}
+	
+	/**
+	 * Gets the image as a TYPE_INT_ARGB_PRE BufferedImage, copying it if it isn't one already.
+	 */
+	private static BufferedImage toIntArgbPre(Image image) {
+		if(image instanceof BufferedImage && ((BufferedImage) image).getType() == BufferedImage.TYPE_INT_ARGB_PRE) {
+			return (BufferedImage) image;
+		}
+		BufferedImage copy = new BufferedImage(image.getWidth(null), image.getHeight(null), BufferedImage.TYPE_INT_ARGB_PRE);
+		Graphics2D g = copy.createGraphics();
+		g.setComposite(AlphaComposite.Src);
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return copy;
+	}
+}
@@ -0,0 +1,65 @@
+package org.fwilliams.fwjengine.asset;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Converts PNG files into raw image files ahead of time so games can load them without decoding. 
+ * Every PNG given on the command line, or found in a directory given on the command line, is written next to itself as a 
+ * RawImage file. AssetLoader picks the raw file over the PNG automatically when it is at least as new.
+ * <br>
+ * Usage: java org.fwilliams.fwjengine.asset.RawImageCompiler &lt;file or directory&gt;...
+ * @author Francis Williams
+ *
+ */
+public class RawImageCompiler {
+	
+	public static void main(String[] args) {
+		if(args.length == 0) {
+			System.err.println("Usage: java " + RawImageCompiler.class.getName() + " <file or directory>...");
+			System.exit(1);
+		}
+		int failures = 0;
+		for(String arg : args) {
+			failures += compile(new File(arg));
+		}
+		System.exit(failures == 0 ? 0 : 1);
+	}
+	
+	/**
+	 * Compiles a PNG file, or every PNG file in a directory and its subdirectories.
+	 * @param file The file or directory.
+	 * @return The number of files that failed to compile.
+	 */
+	public static int compile(File file) {
+		if(file.isDirectory()) {
+			int failures = 0;
+			File[] children = file.listFiles();
+			if(children != null) {
+				for(File child : children) {
+					if(child.isDirectory() || child.getName().toLowerCase().endsWith(".png")) {
+						failures += compile(child);
+					}
+				}
+			}
+			return failures;
+		}
+		
+		File rawFile = RawImage.getRawFile(file.getPath());
+		try {
+			BufferedImage image = ImageIO.read(file);
+			if(image == null) {
+				throw new IOException("Unsupported image format");
+			}
+			RawImage.write(image, rawFile);
+			System.out.println(file + " -> " + rawFile + " (" + image.getWidth() + "x" + image.getHeight() + ")");
+			return 0;
+		} catch(IOException e) {
+			System.err.println(file + ": " + e.getMessage());
+			return 1;
+		}
+	}
+}
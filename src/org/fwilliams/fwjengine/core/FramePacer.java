@@ -0,0 +1,138 @@
+package org.fwilliams.fwjengine.core;
+
+import org.fwilliams.fwjengine.util.FrameTimeHistogram;
+
+/**
+ * Holds the game loop to a target frame rate. Call sync() once at the end of every frame. It measures how much of the 
+ * frame's time budget is left and waits it out, first by sleeping, then by yielding and finally by spinning, so the frame 
+ * ends as close to its deadline as possible without relying on the precision of Thread.sleep().
+ * The real duration of every frame is recorded in a FrameTimeHistogram.
+ * <br>
+ * Override waitUntil() to plug in a different waiting strategy.
+ * @author Francis Williams
+ *
+ */
+public class FramePacer {
+	private static final long NANOS_PER_SECOND = 1000000000L;
+	private static final long NANOS_PER_MILLI = 1000000L;
+	
+	/**
+	 * Below this much remaining time the pacer spins instead of yielding.
+	 */
+	private static final long SPIN_THRESHOLD = 100000L;
+	
+	private volatile long frameNanos;
+	private long deadline;
+	private long lastFrameTime;
+	private long sleepOvershoot;
+	private FrameTimeHistogram histogram;
+	
+	/**
+	 * Creates a new FramePacer.
+	 * @param targetFps The target frame rate. 0 means uncapped: frame times are recorded but sync() never waits.
+	 */
+	public FramePacer(int targetFps) {
+		this.histogram = new FrameTimeHistogram();
+		this.sleepOvershoot = 2 * NANOS_PER_MILLI;
+		setTargetFps(targetFps);
+	}
+	
+	/**
+	 * Sets the target frame rate.
+	 * @param targetFps The target frame rate. 0 means uncapped.
+	 */
+	public void setTargetFps(int targetFps) {
+		if(targetFps < 0) {
+			throw new IllegalArgumentException("Target FPS must not be negative");
+		}
+		this.frameNanos = targetFps == 0 ? 0 : NANOS_PER_SECOND / targetFps;
+	}
+	
+	/**
+	 * Gets the target frame rate.
+	 * @return The target frame rate, or 0 if uncapped.
+	 */
+	public int getTargetFps() {
+		return frameNanos == 0 ? 0 : (int) (NANOS_PER_SECOND / frameNanos);
+	}
+	
+	/**
+	 * Gets the time budget for a single frame.
+	 * @return The length of a frame in nanoseconds, or 0 if uncapped.
+	 */
+	public long getFrameTime() {
+		return frameNanos;
+	}
+	
+	/**
+	 * Gets the histogram of real frame durations in nanoseconds, measured from one return of sync() to the next.
+	 * @return The frame time histogram.
+	 */
+	public FrameTimeHistogram getHistogram() {
+		return histogram;
+	}
+	
+	/**
+	 * Waits until the current frame's deadline and records the frame's duration. Call this once at the end of every frame, always from the same thread.
+	 */
+	public void sync() {
+		long frameNanos = this.frameNanos;
+		long now = System.nanoTime();
+		if(deadline == 0) {
+			deadline = now;
+		}
+		if(frameNanos > 0) {
+			deadline += frameNanos;
+			if(now - deadline > frameNanos) {
+				// More than a frame late. Start counting from now instead of rushing to catch up.
+				deadline = now;
+			} else {
+				waitUntil(deadline);
+			}
+		}
+		
+		now = System.nanoTime();
+		if(lastFrameTime != 0) {
+			histogram.recordValue(now - lastFrameTime);
+		}
+		lastFrameTime = now;
+	}
+	
+	/**
+	 * Waits until System.nanoTime() reaches the deadline. Sleeps while the remaining time is longer than the expected sleep overshoot, 
+	 * then yields, then spins for the last few microseconds. The overshoot estimate adapts to how late each sleep actually wakes up.
+	 * @param deadline The System.nanoTime() value to wait for.
+	 */
+	protected void waitUntil(long deadline) {
+		long remaining = deadline - System.nanoTime();
+		
+		while(remaining > sleepOvershoot + SPIN_THRESHOLD) {
+			long sleepTime = remaining - sleepOvershoot;
+			long start = System.nanoTime();
+			try {
+				Thread.sleep(sleepTime / NANOS_PER_MILLI, (int) (sleepTime % NANOS_PER_MILLI));
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			long overshoot = (System.nanoTime() - start) - sleepTime;
+			// Rise quickly when sleeps wake up late, decay slowly when they are on time.
+			if(overshoot > sleepOvershoot) {
+				sleepOvershoot = overshoot;
+			} else {
+				sleepOvershoot = (sleepOvershoot * 15 + Math.max(overshoot, 0)) / 16;
+			}
+			remaining = deadline - System.nanoTime();
+		}
+		
+		while(remaining > SPIN_THRESHOLD) {
+			Thread.yield();
+			remaining = deadline - System.nanoTime();
+		}
+		
+		while(remaining > 0) {
+			Thread.onSpinWait();
+			remaining = deadline - System.nanoTime();
+		}
+	}
+}
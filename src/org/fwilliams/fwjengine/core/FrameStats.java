@@ -0,0 +1,258 @@
+package org.fwilliams.fwjengine.core;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.fwilliams.fwjengine.util.FrameTimeHistogram;
+
+/**
+ * Timing statistics for every phase of the game loop: update(), draw(), BufferStrategy.show() and Toolkit.sync(), 
+ * as well as the length of the whole frame. Times are recorded in nanoseconds from System.nanoTime() and published 
+ * in milliseconds through the FrameStatsMBean interface so they can be read over JMX.
+ * <br>
+ * Averages and maximums are taken over the last WINDOW_SIZE frames. Percentiles are taken over every frame since the last reset.
+ * @author Francis Williams
+ *
+ */
+public class FrameStats implements FrameStatsMBean {
+	public static final int PHASE_FRAME = 0;
+	public static final int PHASE_UPDATE = 1;
+	public static final int PHASE_DRAW = 2;
+	public static final int PHASE_SHOW = 3;
+	public static final int PHASE_SYNC = 4;
+	private static final int NUM_PHASES = 5;
+	
+	/**
+	 * The number of frames rolling averages and maximums are taken over.
+	 */
+	public static final int WINDOW_SIZE = 120;
+	
+	/**
+	 * The JMX domain FrameStats are registered under.
+	 */
+	public static final String JMX_DOMAIN = "org.fwilliams.fwjengine";
+	
+	private static final double NANOS_PER_MILLI = 1000000.0;
+	
+	private PhaseStats[] phases;
+	private volatile long targetFrameTime;
+	private volatile long droppedFrameCount;
+	private volatile long contentsLostCount;
+	private ObjectName objectName;
+	
+	/**
+	 * Creates new, empty FrameStats with a target frame time of 1/60th of a second.
+	 */
+	public FrameStats() {
+		phases = new PhaseStats[NUM_PHASES];
+		for(int i=0; i<NUM_PHASES; i++) {
+			phases[i] = new PhaseStats();
+		}
+		targetFrameTime = 1000000000L / 60;
+	}
+	
+	/**
+	 * Records how long one phase of a frame took.
+	 * @param phase One of PHASE_UPDATE, PHASE_DRAW, PHASE_SHOW or PHASE_SYNC.
+	 * @param nanos The time taken in nanoseconds.
+	 */
+	public void record(int phase, long nanos) {
+		phases[phase].record(nanos);
+	}
+	
+	/**
+	 * Records the length of a whole frame. A frame that takes 1.5 times the target frame time or longer counts as dropped.
+	 * @param nanos The time since the end of the previous frame in nanoseconds.
+	 */
+	public void recordFrame(long nanos) {
+		phases[PHASE_FRAME].record(nanos);
+		long target = targetFrameTime;
+		if(target > 0 && nanos * 2 >= target * 3) {
+			droppedFrameCount++;
+		}
+	}
+	
+	/**
+	 * Records that the contents of the screen buffer were lost and a frame could not be shown.
+	 */
+	public void recordContentsLost() {
+		contentsLostCount++;
+	}
+	
+	/**
+	 * Sets the target frame time in nanoseconds.
+	 * @param nanos The target length of a frame in nanoseconds. 0 means frames are never counted as dropped.
+	 */
+	public void setTargetFrameNanos(long nanos) {
+		this.targetFrameTime = nanos;
+	}
+	
+	/**
+	 * Registers these FrameStats with the platform MBean server as org.fwilliams.fwjengine:type=FrameStats,name=<i>name</i>.
+	 * @param name The name the stats are registered under, usually the name of the game.
+	 * @throws JMException if the MBean could not be registered, e.g. because the name is already taken.
+	 */
+	public synchronized void register(String name) throws JMException {
+		unregister();
+		ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=FrameStats,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		this.objectName = objectName;
+	}
+	
+	/**
+	 * Removes these FrameStats from the platform MBean server if they were registered.
+	 */
+	public synchronized void unregister() {
+		if(objectName != null) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			try {
+				server.unregisterMBean(objectName);
+			} catch(JMException e) {/*Fail Silently - Already gone*/}
+			objectName = null;
+		}
+	}
+	
+	@Override
+	public long getFrameCount() {
+		return phases[PHASE_FRAME].getCount();
+	}
+	
+	@Override
+	public long getDroppedFrameCount() {
+		return droppedFrameCount;
+	}
+	
+	@Override
+	public long getContentsLostCount() {
+		return contentsLostCount;
+	}
+	
+	@Override
+	public double getTargetFrameTime() {
+		return targetFrameTime / NANOS_PER_MILLI;
+	}
+	
+	@Override
+	public void setTargetFrameTime(double targetFrameTime) {
+		setTargetFrameNanos((long) (targetFrameTime * NANOS_PER_MILLI));
+	}
+	
+	/**
+	 * Gets the average time of a phase over the last WINDOW_SIZE frames.
+	 * @param phase One of the PHASE constants.
+	 * @return The average time in milliseconds.
+	 */
+	public double getAverageTime(int phase) {
+		return phases[phase].getAverage() / NANOS_PER_MILLI;
+	}
+	
+	/**
+	 * Gets the longest time of a phase over the last WINDOW_SIZE frames.
+	 * @param phase One of the PHASE constants.
+	 * @return The longest time in milliseconds.
+	 */
+	public double getMaxTime(int phase) {
+		return phases[phase].getMax() / NANOS_PER_MILLI;
+	}
+	
+	/**
+	 * Gets the time of a phase at a percentile over all frames since the last reset.
+	 * @param phase One of the PHASE constants.
+	 * @param percentile The percentile from 0 to 100.
+	 * @return The time at the percentile in milliseconds.
+	 */
+	public double getTimeAtPercentile(int phase, double percentile) {
+		return phases[phase].histogram.getValueAtPercentile(percentile) / NANOS_PER_MILLI;
+	}
+	
+	@Override public double getAverageFrameTime() { return getAverageTime(PHASE_FRAME); }
+	@Override public double getMaxFrameTime() { return getMaxTime(PHASE_FRAME); }
+	@Override public double getFrameTimeP50() { return getTimeAtPercentile(PHASE_FRAME, 50); }
+	@Override public double getFrameTimeP99() { return getTimeAtPercentile(PHASE_FRAME, 99); }
+	@Override public double getFrameTimeP999() { return getTimeAtPercentile(PHASE_FRAME, 99.9); }
+	
+	@Override public double getAverageUpdateTime() { return getAverageTime(PHASE_UPDATE); }
+	@Override public double getMaxUpdateTime() { return getMaxTime(PHASE_UPDATE); }
+	@Override public double getUpdateTimeP50() { return getTimeAtPercentile(PHASE_UPDATE, 50); }
+	@Override public double getUpdateTimeP99() { return getTimeAtPercentile(PHASE_UPDATE, 99); }
+	@Override public double getUpdateTimeP999() { return getTimeAtPercentile(PHASE_UPDATE, 99.9); }
+	
+	@Override public double getAverageDrawTime() { return getAverageTime(PHASE_DRAW); }
+	@Override public double getMaxDrawTime() { return getMaxTime(PHASE_DRAW); }
+	@Override public double getDrawTimeP50() { return getTimeAtPercentile(PHASE_DRAW, 50); }
+	@Override public double getDrawTimeP99() { return getTimeAtPercentile(PHASE_DRAW, 99); }
+	@Override public double getDrawTimeP999() { return getTimeAtPercentile(PHASE_DRAW, 99.9); }
+	
+	@Override public double getAverageShowTime() { return getAverageTime(PHASE_SHOW); }
+	@Override public double getMaxShowTime() { return getMaxTime(PHASE_SHOW); }
+	@Override public double getShowTimeP50() { return getTimeAtPercentile(PHASE_SHOW, 50); }
+	@Override public double getShowTimeP99() { return getTimeAtPercentile(PHASE_SHOW, 99); }
+	@Override public double getShowTimeP999() { return getTimeAtPercentile(PHASE_SHOW, 99.9); }
+	
+	@Override public double getAverageSyncTime() { return getAverageTime(PHASE_SYNC); }
+	@Override public double getMaxSyncTime() { return getMaxTime(PHASE_SYNC); }
+	@Override public double getSyncTimeP50() { return getTimeAtPercentile(PHASE_SYNC, 50); }
+	@Override public double getSyncTimeP99() { return getTimeAtPercentile(PHASE_SYNC, 99); }
+	@Override public double getSyncTimeP999() { return getTimeAtPercentile(PHASE_SYNC, 99.9); }
+	
+	@Override
+	public void reset() {
+		for(PhaseStats phase : phases) {
+			phase.reset();
+		}
+		droppedFrameCount = 0;
+		contentsLostCount = 0;
+	}
+	
+	/**
+	 * The recorded times of a single phase. Keeps the last WINDOW_SIZE times in a ring buffer for rolling averages and a histogram for percentiles.
+	 */
+	private static class PhaseStats {
+		private long[] window = new long[WINDOW_SIZE];
+		private int windowPosition;
+		private int windowCount;
+		private long windowSum;
+		private long count;
+		private FrameTimeHistogram histogram = new FrameTimeHistogram();
+		
+		public synchronized void record(long nanos) {
+			windowSum += nanos - window[windowPosition];
+			window[windowPosition] = nanos;
+			windowPosition = (windowPosition + 1) % WINDOW_SIZE;
+			if(windowCount < WINDOW_SIZE) {
+				windowCount++;
+			}
+			count++;
+			histogram.recordValue(nanos);
+		}
+		
+		public synchronized long getCount() {
+			return count;
+		}
+		
+		public synchronized double getAverage() {
+			return windowCount == 0 ? 0 : (double) windowSum / windowCount;
+		}
+		
+		public synchronized long getMax() {
+			long max = 0;
+			for(int i=0; i<windowCount; i++) {
+				max = Math.max(max, window[i]);
+			}
+			return max;
+		}
+		
+		public synchronized void reset() {
+			Arrays.fill(window, 0);
+			windowPosition = 0;
+			windowCount = 0;
+			windowSum = 0;
+			count = 0;
+			histogram.reset();
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package org.fwilliams.fwjengine.core;
+
+/**
+ * The JMX management interface of FrameStats. All times are in milliseconds. 
+ * Averages and maximums cover the most recent frames, percentiles cover every frame since the last reset.
+ * @author Francis Williams
+ *
+ */
+public interface FrameStatsMBean {
+	
+	public long getFrameCount();
+	public long getDroppedFrameCount();
+	public long getContentsLostCount();
+	
+	public double getTargetFrameTime();
+	public void setTargetFrameTime(double targetFrameTime);
+	
+	public double getAverageFrameTime();
+	public double getMaxFrameTime();
+	public double getFrameTimeP50();
+	public double getFrameTimeP99();
+	public double getFrameTimeP999();
+	
+	public double getAverageUpdateTime();
+	public double getMaxUpdateTime();
+	public double getUpdateTimeP50();
+	public double getUpdateTimeP99();
+	public double getUpdateTimeP999();
+	
+	public double getAverageDrawTime();
+	public double getMaxDrawTime();
+	public double getDrawTimeP50();
+	public double getDrawTimeP99();
+	public double getDrawTimeP999();
+	
+	public double getAverageShowTime();
+	public double getMaxShowTime();
+	public double getShowTimeP50();
+	public double getShowTimeP99();
+	public double getShowTimeP999();
+	
+	public double getAverageSyncTime();
+	public double getMaxSyncTime();
+	public double getSyncTimeP50();
+	public double getSyncTimeP99();
+	public double getSyncTimeP999();
+	
+	/**
+	 * Clears all recorded times and counts.
+	 */
+	public void reset();
+}
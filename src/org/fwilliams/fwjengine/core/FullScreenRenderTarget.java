@@ -0,0 +1,147 @@
+package org.fwilliams.fwjengine.core;
+
+import java.awt.BufferCapabilities;
+import java.awt.Color;
+import java.awt.DisplayMode;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.Toolkit;
+import java.awt.Window;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JFrame;
+
+/**
+ * A RenderTarget that draws to a full screen Window using a 2 buffer BufferStrategy.
+ * @author Francis Williams
+ *
+ */
+public class FullScreenRenderTarget implements RenderTarget {
+	private GraphicsDevice device;
+	
+	/**
+	 * Creates a new Window and makes it full screen. Sets up 2 buffers to blit or flip depending on the device.
+	 * @param device The screen device to take over.
+	 * @param dm The DisplayMode object to be used for the full screen Window. If null, the current display mode is kept.
+	 */
+	public FullScreenRenderTarget(GraphicsDevice device, DisplayMode dm) {
+		this.device = device;
+		
+		JFrame frame = new JFrame();
+		frame.setBackground(Color.black);
+		frame.setUndecorated(true);
+		frame.setIgnoreRepaint(true);
+		frame.setResizable(false);
+		
+		device.setFullScreenWindow(frame);
+		if(dm != null && device.isDisplayChangeSupported()) {
+			try {
+				device.setDisplayMode(dm);
+			} catch(IllegalArgumentException e) {/*Fail Silently - Illegal mode for this device*/}
+		}
+		frame.createBufferStrategy(2);
+	}
+	
+	/**
+	 * Gets the Window object filling the screen.
+	 * @return The Window object filling the screen.
+	 */
+	public Window getWindow() {
+		return device.getFullScreenWindow();
+	}
+	
+	/**
+	 * Returns true if the back buffer still holds an earlier frame after show(), so a frame can be presented by drawing only the parts 
+	 * that changed. This is the case for blitting and for flipping with prior or copied contents.
+	 * @return Whether or not the back buffer keeps its contents between frames.
+	 */
+	public boolean isBackBufferPreserved() {
+		Window window = device.getFullScreenWindow();
+		if(window != null) {
+			BufferCapabilities.FlipContents contents = window.getBufferStrategy().getCapabilities().getFlipContents();
+			return contents == null || contents == BufferCapabilities.FlipContents.PRIOR || contents == BufferCapabilities.FlipContents.COPIED;
+		}
+		return false;
+	}
+	
+	@Override
+	public Graphics2D getGraphics() {
+		Window window = device.getFullScreenWindow();
+		if(window != null) {
+			BufferStrategy strategy = window.getBufferStrategy();
+			return (Graphics2D) strategy.getDrawGraphics();
+		}
+		return null;
+	}
+	
+	@Override
+	public boolean show() {
+		Window window = device.getFullScreenWindow();
+		if(window != null) {
+			BufferStrategy strategy = window.getBufferStrategy();
+			if(!strategy.contentsLost()) {
+				strategy.show();
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	public void sync() {
+		if(device.getFullScreenWindow() != null) {
+			Toolkit.getDefaultToolkit().sync();
+		}
+	}
+	
+	@Override
+	public BufferedImage createCompatibleImage(int width, int height, int transparency) {
+		Window window = device.getFullScreenWindow();
+		if(window != null) {
+			GraphicsConfiguration gc = window.getGraphicsConfiguration();
+			return gc.createCompatibleImage(width, height, transparency);
+		}
+		return null;
+	}
+	
+	@Override
+	public GraphicsConfiguration getGraphicsConfiguration() {
+		Window window = device.getFullScreenWindow();
+		if(window != null) {
+			return window.getGraphicsConfiguration();
+		}
+		return null;
+	}
+	
+	@Override
+	public int getWidth() {
+		Window window = device.getFullScreenWindow();
+		if(window != null) {
+			return window.getWidth();
+		}
+		return 0;
+	}
+	
+	@Override
+	public int getHeight() {
+		Window window = device.getFullScreenWindow();
+		if(window != null) {
+			return window.getHeight();
+		}
+		return 0;
+	}
+	
+	/**
+	 * Frees the memory occupied by the full screen Window and restores the original screen resolution if changed.
+	 */
+	@Override
+	public void dispose() {
+		Window window = device.getFullScreenWindow();
+		if(window != null) {
+			window.dispose();
+		}
+		device.setFullScreenWindow(null);
+	}
+}
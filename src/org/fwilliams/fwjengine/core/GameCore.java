@@ -3,10 +3,21 @@ package org.fwilliams.fwjengine.core;
 import java.awt.DisplayMode;
 import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.Window;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
 
-import javax.swing.ImageIcon;
+import javax.management.JMException;
 
+import org.fwilliams.fwjengine.asset.AssetLoader;
+import org.fwilliams.fwjengine.asset.BundleFileSystem;
+import org.fwilliams.fwjengine.graphics.ParallelCompositor;
+import org.fwilliams.fwjengine.graphics.SoftwareRenderer;
 import org.fwilliams.fwjengine.input.InputManager;
+import org.fwilliams.fwjengine.util.ThreadPool;
+import org.fwilliams.fwjengine.util.TripleBuffer;
 
 /**
  * Inherit this class to create a game. This sets up the basic framework to run a game: Loads assets, creates a full screen Window and draws and updates game objects.
@@ -14,8 +25,74 @@ import org.fwilliams.fwjengine.input.InputManager;
  *
  */
 public abstract class GameCore {
+    /**
+     * The default loop mode. update() is called once per frame with the time elapsed since the last frame.
+     */
+    public static final int LOOP_VARIABLE_STEP = 0;
+    
+    /**
+     * update() is called with a fixed time step, as many times as needed to keep up with the clock. 
+     * draw() is passed the fraction of a step remaining so it can interpolate between steps.
+     */
+    public static final int LOOP_FIXED_STEP = 1;
+    
+    /**
+     * update() runs on its own thread, one frame ahead of drawing. After every update, snapshot() copies what needs to be drawn 
+     * into a WorldSnapshot, and the game thread draws the previous snapshot with draw(Graphics2D, WorldSnapshot) while the next frame is simulated.
+     */
+    public static final int LOOP_PIPELINED = 2;
+    
+    /**
+     * update() is called with the fixed time step as fast as possible, without sleeping, for a set number of frames. 
+     * Frames are only drawn every getSimulationDrawInterval() steps, or never. Used for accelerated soak and regression testing.
+     */
+    public static final int LOOP_SIMULATION = 3;
+    
+    /**
+     * Set this system property to a number of frames to run any game in LOOP_SIMULATION mode for that many frames.
+     */
+    public static final String SIMULATE_PROPERTY = "fwjengine.simulate";
+    
+    /**
+     * Overrides the step time in milliseconds used in LOOP_SIMULATION mode.
+     */
+    public static final String SIMULATE_STEP_PROPERTY = "fwjengine.simulate.step";
+    
+    /**
+     * Overrides the draw interval used in LOOP_SIMULATION mode.
+     */
+    public static final String SIMULATE_DRAW_PROPERTY = "fwjengine.simulate.draw";
+    
+    /**
+     * Set this system property to seed the Random returned by getRandom().
+     */
+    public static final String SEED_PROPERTY = "fwjengine.seed";
+    
+    /**
+     * Set this system property to the path of an asset bundle to mount it on the AssetLoader of any game.
+     */
+    public static final String BUNDLE_PROPERTY = "fwjengine.bundle";
+    
+    private static final long NANOS_PER_MILLI = 1000000L;
+    
+    private int loopMode = LOOP_VARIABLE_STEP;
+    private long fixedStepTime = 10;
+    private int maxStepsPerFrame = 5;
+    private FramePacer framePacer;
+    private FrameStats frameStats = new FrameStats();
+    private long lastFrameTime;
+    private long simulationLength = 100000;
+    private int simulationDrawInterval = 0;
+    private long simulatedFrames;
+    private long simulationTime;
+    private Random random;
+    private boolean softwareRendering;
+    private ParallelCompositor compositor;
+    
     protected ScreenManager screen;
     protected InputManager inputManager;
+    private AssetLoader assetLoader;
+    private ThreadPool threadPool;
     
     /**
      * Initializes the Game and runs it.
@@ -25,25 +102,55 @@ public abstract class GameCore {
         	init();
         }
         finally {
+             frameStats.unregister();
+             closeThreadPool();
              screen.restoreScreen();
         }
     }
 
     /**
      * Initializes the game by setting up the screen with the appropriate resolution selected from the available resolutions and loading any assets set in the loadAssets() method.
+     * Returns once every image requested from the AssetLoader in loadAssets() has loaded.
+     * Without a display the screen is drawn offscreen, there is no InputManager and the game loop runs without sleeping.
      */
     public void init() {
     	screen = new ScreenManager();
         DisplayMode displayMode = new DisplayMode(1440, 900, 32, 60);
         screen.setFullScreen(displayMode);
-        inputManager = new InputManager(screen.getFullScreenWindow());
+        screen.setFrameStats(frameStats);
+        screen.setSoftwareRendering(softwareRendering);
+        Window window = screen.getFullScreenWindow();
+        if(window != null) {
+            inputManager = new InputManager(window);
+        }
+        try {
+            frameStats.register(getClass().getSimpleName());
+        } catch(JMException e) {/*Fail Silently - Stats are still available from getFrameStats()*/}
+        getAssetLoader();
         loadAssets();
+        assetLoader.awaitAll();
     }
     
     /**
-     * The game loop. Starts the drawing loop for the game.
+     * The game loop. Starts the drawing loop for the game using the loop mode set by setLoopMode(). 
+     * If the fwjengine.simulate system property is set, the game runs in LOOP_SIMULATION mode instead.
      */
     public void gameLoop() {
+        if(loopMode == LOOP_SIMULATION || System.getProperty(SIMULATE_PROPERTY) != null) {
+            simulationLoop();
+        } else if(loopMode == LOOP_FIXED_STEP) {
+            fixedStepLoop();
+        } else if(loopMode == LOOP_PIPELINED) {
+            pipelinedLoop();
+        } else {
+            variableStepLoop();
+        }
+    }
+    
+    /**
+     * Runs the game with a variable time step. update() is called once per frame with the time elapsed since the previous frame.
+     */
+    private void variableStepLoop() {
         long startTime = System.currentTimeMillis();
         long currTime = startTime;
 
@@ -53,38 +160,456 @@ public abstract class GameCore {
             currTime += elapsedTime;
 
             // update sprite
+            long updateStart = System.nanoTime();
             update(elapsedTime);
+            frameStats.record(FrameStats.PHASE_UPDATE, System.nanoTime() - updateStart);
 
             // draw and update screen
-            Graphics2D g = screen.getGraphics();
-            draw(g);
-            g.dispose();
-            screen.update();
+            renderFrame(1.0f);
 
             // take a nap
+            nap(20 * NANOS_PER_MILLI);
+        }
+    }
+    
+    /**
+     * Runs the game with a fixed time step. The time elapsed on the System.nanoTime() clock is accumulated and update() is called 
+     * with exactly the fixed step time for every whole step in the accumulator, up to getMaxStepsPerFrame() steps per frame. 
+     * The fraction of a step left in the accumulator is passed to draw() as the interpolation alpha.
+     */
+    private void fixedStepLoop() {
+        long stepNanos = fixedStepTime * NANOS_PER_MILLI;
+        long accumulator = 0;
+        long currTime = System.nanoTime();
+
+        while (true) {
+            long now = System.nanoTime();
+            accumulator += now - currTime;
+            currTime = now;
+
+            // catch up on any missed steps
+            int steps = 0;
+            while(accumulator >= stepNanos && steps < maxStepsPerFrame) {
+                update(fixedStepTime);
+                accumulator -= stepNanos;
+                steps++;
+            }
+            frameStats.record(FrameStats.PHASE_UPDATE, System.nanoTime() - now);
+            if(accumulator >= stepNanos) {
+                // Too far behind to catch up. Drop the backlog rather than spiral.
+                accumulator %= stepNanos;
+            }
+
+            // draw and update screen
+            renderFrame((float) accumulator / stepNanos);
+
+            // take a nap until the next step is due
+            nap(stepNanos - accumulator);
+        }
+    }
+    
+    /**
+     * Runs update() on a separate thread and draws on this one. The threads hand WorldSnapshots to each other through a TripleBuffer, 
+     * so neither ever takes a lock. The update thread waits for each snapshot to be picked up before simulating the next frame, 
+     * so it is never more than one frame ahead of drawing.
+     * <br>
+     * Without a FramePacer the render thread only sleeps whatever is left of a 20 ms frame once the frame is drawn, 
+     * so the time spent waiting for and drawing a snapshot counts towards the frame instead of adding to a fixed nap.
+     */
+    private void pipelinedLoop() {
+        TripleBuffer<WorldSnapshot> snapshots = 
+            new TripleBuffer<WorldSnapshot>(new WorldSnapshot(), new WorldSnapshot(), new WorldSnapshot());
+        UpdateThread updateThread = new UpdateThread(snapshots, Thread.currentThread());
+        updateThread.start();
+
+        try {
+            while (true) {
+                long frameStart = System.nanoTime();
+                
+                // wait for the next frame to be simulated
+                while(!snapshots.isFresh()) {
+                    updateThread.checkError();
+                    LockSupport.park(this);
+                }
+                WorldSnapshot snapshot = snapshots.acquire();
+                LockSupport.unpark(updateThread);
+
+                // draw and update screen
+                long drawStart = System.nanoTime();
+                if(softwareRendering) {
+                    drawSoftware(snapshot);
+                } else {
+                    Graphics2D g = screen.getGraphics();
+                    draw(g, snapshot);
+                    g.dispose();
+                }
+                frameStats.record(FrameStats.PHASE_DRAW, System.nanoTime() - drawStart);
+                screen.update();
+
+                // take a nap for the rest of the frame
+                nap(frameStart + 20 * NANOS_PER_MILLI - System.nanoTime());
+            }
+        }
+        finally {
+            updateThread.finish();
+        }
+    }
+    
+    /**
+     * Steps the game as fast as possible with a fixed, synthetic time step and returns when done. Nothing depends on the clock, 
+     * so a game that only takes its randomness from getRandom() ends up in exactly the same state every run.
+     */
+    private void simulationLoop() {
+        boolean fromProperty = System.getProperty(SIMULATE_PROPERTY) != null;
+        long frames = Long.getLong(SIMULATE_PROPERTY, simulationLength);
+        long stepTime = Long.getLong(SIMULATE_STEP_PROPERTY, fixedStepTime);
+        int drawInterval = Integer.getInteger(SIMULATE_DRAW_PROPERTY, simulationDrawInterval);
+        
+        long startTime = System.nanoTime();
+        long frame = 0;
+        while (frame < frames) {
+            update(stepTime);
+            frame++;
+            
+            if(drawInterval > 0 && frame % drawInterval == 0) {
+                renderFrame(1.0f);
+            }
+        }
+        simulationTime = System.nanoTime() - startTime;
+        simulatedFrames = frame;
+        
+        if(fromProperty) {
+            System.out.println(getClass().getSimpleName() + ": simulated " + frame + " frames (" + (frame * stepTime) + " ms of game time) in " 
+                + (simulationTime / NANOS_PER_MILLI) + " ms, " + Math.round(getSimulatedFrameRate()) + " frames per second");
+        }
+    }
+    
+    /**
+     * Ends a frame. If a FramePacer is set it waits out the rest of the frame's time budget. 
+     * Otherwise the thread sleeps for the given time, unless the screen is offscreen. The length of the frame is recorded in the FrameStats.
+     * @param sleepNanos The time to sleep in nanoseconds when there is no FramePacer.
+     */
+    private void nap(long sleepNanos) {
+        if(framePacer != null) {
+            framePacer.sync();
+        } else if(sleepNanos >= NANOS_PER_MILLI && !screen.isOffscreen()) {
             try {
-                Thread.sleep(20);
+                Thread.sleep(sleepNanos / NANOS_PER_MILLI);
             }
             catch (InterruptedException ex) { }
         }
+        
+        long now = System.nanoTime();
+        if(lastFrameTime != 0) {
+            frameStats.recordFrame(now - lastFrameTime);
+        }
+        lastFrameTime = now;
+    }
+    
+    /**
+     * Draws a single frame to the screen and shows it.
+     * @param alpha The interpolation alpha passed to draw().
+     */
+    private void renderFrame(float alpha) {
+        long drawStart = System.nanoTime();
+        if(softwareRendering) {
+            drawSoftware(alpha);
+        } else {
+            Graphics2D g = screen.getGraphics();
+            draw(g, alpha);
+            g.dispose();
+        }
+        frameStats.record(FrameStats.PHASE_DRAW, System.nanoTime() - drawStart);
+        screen.update();
+    }
+    
+    /**
+     * Sets whether frames are drawn with a SoftwareRenderer, which writes sprites straight into the frame's pixels, 
+     * instead of Graphics2D. When enabled the game loop calls the draw() methods taking a SoftwareRenderer.
+     * @param softwareRendering True to draw with a SoftwareRenderer.
+     */
+    public void setSoftwareRendering(boolean softwareRendering) {
+        this.softwareRendering = softwareRendering;
+        if(screen != null) {
+            screen.setSoftwareRendering(softwareRendering);
+        }
+    }
+    
+    /**
+     * Gets whether frames are drawn with a SoftwareRenderer.
+     * @return True if frames are drawn with a SoftwareRenderer.
+     */
+    public boolean isSoftwareRendering() {
+        return softwareRendering;
+    }
+    
+    /**
+     * Draws a frame with the screen's SoftwareRenderer, in parallel bands if a ParallelCompositor is set.
+     * @param alpha The interpolation alpha passed to draw().
+     */
+    private void drawSoftware(final float alpha) {
+        SoftwareRenderer renderer = screen.getSoftwareRenderer();
+        if(compositor == null) {
+            draw(renderer, alpha);
+        } else {
+            compositor.composite(renderer.getTarget(), new ParallelCompositor.Painter() {
+                @Override
+                public void paint(SoftwareRenderer band) {
+                    draw(band, alpha);
+                }
+            });
+        }
+    }
+    
+    /**
+     * Draws a snapshot with the screen's SoftwareRenderer, in parallel bands if a ParallelCompositor is set.
+     * @param snapshot The snapshot passed to draw().
+     */
+    private void drawSoftware(final WorldSnapshot snapshot) {
+        SoftwareRenderer renderer = screen.getSoftwareRenderer();
+        if(compositor == null) {
+            draw(renderer, snapshot);
+        } else {
+            compositor.composite(renderer.getTarget(), new ParallelCompositor.Painter() {
+                @Override
+                public void paint(SoftwareRenderer band) {
+                    draw(band, snapshot);
+                }
+            });
+        }
+    }
+    
+    /**
+     * Sets a ParallelCompositor to draw frames in parallel bands when software rendering is enabled. The draw() methods taking 
+     * a SoftwareRenderer are then called once per band, on several threads at once, and must not change any game state. 
+     * draw(SoftwareRenderer, float) must be overridden, since by default it would call draw(Graphics2D, float) from every band at once.
+     * @param compositor The compositor to draw with, or null to draw every frame on the game thread.
+     */
+    public void setParallelCompositor(ParallelCompositor compositor) {
+        this.compositor = compositor;
+    }
+    
+    /**
+     * Gets the ParallelCompositor frames are drawn with when software rendering is enabled.
+     * @return The compositor, or null if frames are drawn on the game thread.
+     */
+    public ParallelCompositor getParallelCompositor() {
+        return compositor;
+    }
+    
+    /**
+     * Sets how long LOOP_SIMULATION mode runs for.
+     * @param frames The number of calls to update() before gameLoop() returns.
+     */
+    public void setSimulationLength(long frames) {
+        if(frames < 0) {
+            throw new IllegalArgumentException("Simulation length must not be negative");
+        }
+        this.simulationLength = frames;
+    }
+    
+    /**
+     * Gets how long LOOP_SIMULATION mode runs for.
+     * @return The number of calls to update() before gameLoop() returns.
+     */
+    public long getSimulationLength() {
+        return simulationLength;
+    }
+    
+    /**
+     * Sets how often a frame is drawn in LOOP_SIMULATION mode.
+     * @param interval The number of steps between drawn frames, or 0 (the default) to never draw.
+     */
+    public void setSimulationDrawInterval(int interval) {
+        if(interval < 0) {
+            throw new IllegalArgumentException("Draw interval must not be negative");
+        }
+        this.simulationDrawInterval = interval;
+    }
+    
+    /**
+     * Gets how often a frame is drawn in LOOP_SIMULATION mode.
+     * @return The number of steps between drawn frames, or 0 if frames are never drawn.
+     */
+    public int getSimulationDrawInterval() {
+        return simulationDrawInterval;
+    }
+    
+    /**
+     * Gets the number of frames simulated by the last run in LOOP_SIMULATION mode.
+     * @return The number of simulated frames.
+     */
+    public long getSimulatedFrames() {
+        return simulatedFrames;
+    }
+    
+    /**
+     * Gets the throughput of the last run in LOOP_SIMULATION mode.
+     * @return The number of simulated frames per second of real time.
+     */
+    public double getSimulatedFrameRate() {
+        if(simulationTime == 0) {
+            return 0;
+        }
+        return simulatedFrames * 1000000000.0 / simulationTime;
+    }
+    
+    /**
+     * Gets the game's random number generator. Games that take all of their randomness from it behave identically from run to run 
+     * in LOOP_SIMULATION mode when the fwjengine.seed system property is set.
+     * @return The game's random number generator.
+     */
+    public synchronized Random getRandom() {
+        if(random == null) {
+            random = new Random(Long.getLong(SEED_PROPERTY, System.nanoTime()));
+        }
+        return random;
+    }
+    
+    /**
+     * Sets the FramePacer that ends every frame of the game loop. Without one the loop sleeps a fixed amount of time per frame.
+     * @param pacer The FramePacer to use, or null to go back to sleeping.
+     */
+    public void setFramePacer(FramePacer pacer) {
+        this.framePacer = pacer;
+        if(pacer != null && pacer.getFrameTime() > 0) {
+            frameStats.setTargetFrameNanos(pacer.getFrameTime());
+        }
+    }
+    
+    /**
+     * Gets the FramePacer that ends every frame of the game loop.
+     * @return The FramePacer, or null if none is set.
+     */
+    public FramePacer getFramePacer() {
+        return framePacer;
+    }
+    
+    /**
+     * Sets the mode used by gameLoop(). One of LOOP_VARIABLE_STEP (the default), LOOP_FIXED_STEP, LOOP_PIPELINED or LOOP_SIMULATION.
+     * @param mode The loop mode.
+     */
+    public void setLoopMode(int mode) {
+        if(mode < LOOP_VARIABLE_STEP || mode > LOOP_SIMULATION) {
+            throw new IllegalArgumentException("Unknown loop mode " + mode);
+        }
+        this.loopMode = mode;
+    }
+    
+    /**
+     * Gets the mode used by gameLoop().
+     * @return One of LOOP_VARIABLE_STEP, LOOP_FIXED_STEP, LOOP_PIPELINED or LOOP_SIMULATION.
+     */
+    public int getLoopMode() {
+        return loopMode;
+    }
+    
+    /**
+     * Sets the simulation time step used in LOOP_FIXED_STEP and LOOP_SIMULATION mode.
+     * @param stepTime The time in milliseconds passed to every call to update().
+     */
+    public void setFixedStepTime(long stepTime) {
+        if(stepTime <= 0) {
+            throw new IllegalArgumentException("Step time must be positive");
+        }
+        this.fixedStepTime = stepTime;
+    }
+    
+    /**
+     * Gets the simulation time step used in LOOP_FIXED_STEP and LOOP_SIMULATION mode.
+     * @return The time in milliseconds passed to every call to update().
+     */
+    public long getFixedStepTime() {
+        return fixedStepTime;
+    }
+    
+    /**
+     * Sets the maximum number of steps LOOP_FIXED_STEP mode will run to catch up before drawing a frame. 
+     * Any time beyond that is dropped so a slow machine doesn't fall further and further behind.
+     * @param maxSteps The maximum number of calls to update() per frame.
+     */
+    public void setMaxStepsPerFrame(int maxSteps) {
+        if(maxSteps <= 0) {
+            throw new IllegalArgumentException("Max steps must be positive");
+        }
+        this.maxStepsPerFrame = maxSteps;
+    }
+    
+    /**
+     * Gets the maximum number of steps LOOP_FIXED_STEP mode will run to catch up before drawing a frame.
+     * @return The maximum number of calls to update() per frame.
+     */
+    public int getMaxStepsPerFrame() {
+        return maxStepsPerFrame;
     }
    
     /**
-     * Loads an image from a file specified in the argument.
+     * Loads an image from a file specified in the argument on the calling thread. Once the screen is set up, the image is converted to the screen's format 
+     * with the transparency of the file, so drawing it needs no conversion.
      * @param fileName The image file to load.
      * @return The loaded image.
      */
     public Image loadImage(String fileName) {
-        return new ImageIcon(fileName).getImage();
+        return getAssetLoader().loadImmediately(fileName);
+    }
+    
+    /**
+     * Gets the AssetLoader of the game. Use it in loadAssets() to load images in parallel; init() waits for all of them 
+     * before the game loop starts.
+     * @return The AssetLoader of the game.
+     */
+    public synchronized AssetLoader getAssetLoader() {
+        if(assetLoader == null) {
+            threadPool = new ThreadPool(Runtime.getRuntime().availableProcessors());
+            assetLoader = new AssetLoader(screen, threadPool);
+            String bundle = System.getProperty(BUNDLE_PROPERTY);
+            if(bundle != null) {
+                try {
+                    mountBundle(bundle);
+                } catch(IOException e) {/*Fail Silently - Assets are loaded from their files instead*/}
+            }
+        }
+        return assetLoader;
+    }
+    
+    /**
+     * Opens an asset bundle written by BundleBuilder and mounts it on the AssetLoader, so loadImage() and the AssetLoader read 
+     * images out of the bundle instead of from loose files. Call it in loadAssets() before loading anything.
+     * @param fileName The bundle file.
+     * @throws IOException if the bundle could not be opened.
+     */
+    public void mountBundle(String fileName) throws IOException {
+        getAssetLoader().mount(new BundleFileSystem(new File(fileName)));
     }
 
     /**
      * Exits the game.
      */
     public void exit() {
+        frameStats.unregister();
+        closeThreadPool();
     	screen.restoreScreen();
     }
     
+    /**
+     * Stops the threads used to load assets.
+     */
+    private synchronized void closeThreadPool() {
+        if(threadPool != null) {
+            threadPool.close();
+            threadPool = null;
+            assetLoader = null;
+        }
+    }
+    
+    /**
+     * Gets the timing statistics of the game loop. They are also published over JMX as org.fwilliams.fwjengine:type=FrameStats.
+     * @return The FrameStats of the game loop.
+     */
+    public FrameStats getFrameStats() {
+        return frameStats;
+    }
+    
     /**
      * Gets the screen manager object for the game.
      * @return The screen manager object for the game.
@@ -94,7 +619,7 @@ public abstract class GameCore {
     }
     
     /**
-     * Override this method to preload any assets into the game.
+     * Override this method to preload any assets into the game. Images can be loaded in parallel with getAssetLoader().load().
      */
     public void loadAssets() {
     }
@@ -106,12 +631,140 @@ public abstract class GameCore {
     public void draw(Graphics2D g) {
     }
     
+    /**
+     * This method gets called once per frame. In LOOP_FIXED_STEP mode alpha is the fraction of a step (0 to 1) that has 
+     * elapsed since the last call to update(). Override it to interpolate game objects between steps. 
+     * By default it calls draw(Graphics2D).
+     * @param g The graphics object used to draw objects to the screen.
+     * @param alpha The interpolation alpha between the previous and the next update. Always 1 in LOOP_VARIABLE_STEP mode.
+     */
+    public void draw(Graphics2D g, float alpha) {
+        draw(g);
+    }
+    
+    /**
+     * In LOOP_PIPELINED mode this method gets called once per frame on the render thread. It must only read from the snapshot, 
+     * never from game objects, which are being updated at the same time. By default it draws every image in the snapshot.
+     * @param g The graphics object used to draw objects to the screen.
+     * @param snapshot The snapshot of the frame to draw.
+     */
+    public void draw(Graphics2D g, WorldSnapshot snapshot) {
+        snapshot.draw(g);
+    }
+    
+    /**
+     * This method gets called once per frame instead of draw(Graphics2D, float) when software rendering is enabled. 
+     * Override it to draw sprites with the renderer. By default it calls draw(Graphics2D, float) with a Graphics2D drawing into the same frame.
+     * <br>
+     * Games using a ParallelCompositor must override this method, since it is then called once per band on several threads at once 
+     * and draw(Graphics2D, float) isn't written for that.
+     * @param renderer The renderer used to draw objects to the screen.
+     * @param alpha The interpolation alpha between the previous and the next update. Always 1 in LOOP_VARIABLE_STEP mode.
+     * @throws IllegalStateException if a ParallelCompositor is set and this method isn't overridden.
+     */
+    public void draw(SoftwareRenderer renderer, float alpha) {
+        if(compositor != null) {
+            throw new IllegalStateException("Override draw(SoftwareRenderer, float) to draw with a ParallelCompositor");
+        }
+        Graphics2D g = renderer.createGraphics();
+        draw(g, alpha);
+        g.dispose();
+    }
+    
+    /**
+     * In LOOP_PIPELINED mode this method gets called instead of draw(Graphics2D, WorldSnapshot) when software rendering is enabled. 
+     * By default it draws every image in the snapshot with the renderer.
+     * @param renderer The renderer used to draw objects to the screen.
+     * @param snapshot The snapshot of the frame to draw.
+     */
+    public void draw(SoftwareRenderer renderer, WorldSnapshot snapshot) {
+        snapshot.draw(renderer);
+    }
+    
     /**
      * This method is called once per frame. Override it to update any game objects.
      * @param elapsedTime The amount of time since this method was last called.
      */
     public void update(long elapsedTime) {
     }
+    
+    /**
+     * In LOOP_PIPELINED mode this method gets called on the update thread right after update(). 
+     * Override it to add everything that needs to be drawn this frame to the snapshot, e.g. snapshot.add(sprite). 
+     * Text, fills and other draws can be recorded into snapshot.getCommands(); never draw with AWT here.
+     * @param snapshot An empty snapshot to fill.
+     */
+    public void snapshot(WorldSnapshot snapshot) {
+    }
+    
+    /**
+     * The thread that runs update() in LOOP_PIPELINED mode.
+     */
+    private class UpdateThread extends Thread {
+        private TripleBuffer<WorldSnapshot> snapshots;
+        private Thread renderThread;
+        private volatile boolean running;
+        private volatile Throwable error;
+        
+        public UpdateThread(TripleBuffer<WorldSnapshot> snapshots, Thread renderThread) {
+            super("GameCore-Update");
+            this.snapshots = snapshots;
+            this.renderThread = renderThread;
+            this.running = true;
+            setDaemon(true);
+        }
+        
+        @Override
+        public void run() {
+            try {
+                long currTime = System.nanoTime();
+                long remainder = 0;
+                
+                while(running) {
+                    long now = System.nanoTime();
+                    long elapsedNanos = now - currTime + remainder;
+                    currTime = now;
+                    long elapsedTime = elapsedNanos / NANOS_PER_MILLI;
+                    remainder = elapsedNanos % NANOS_PER_MILLI;
+                    
+                    long updateStart = System.nanoTime();
+                    update(elapsedTime);
+                    frameStats.record(FrameStats.PHASE_UPDATE, System.nanoTime() - updateStart);
+                    
+                    WorldSnapshot snapshot = snapshots.getBack();
+                    snapshot.clear();
+                    snapshot(snapshot);
+                    snapshots.publish();
+                    LockSupport.unpark(renderThread);
+                    
+                    // don't get more than a frame ahead of the render thread
+                    while(running && snapshots.isFresh()) {
+                        LockSupport.park(this);
+                    }
+                }
+            } catch(Throwable t) {
+                error = t;
+                LockSupport.unpark(renderThread);
+            }
+        }
+        
+        /**
+         * Rethrows any exception thrown by update() or snapshot() on the render thread.
+         */
+        public void checkError() {
+            if(error != null) {
+                throw new IllegalStateException("The update thread failed", error);
+            }
+        }
+        
+        /**
+         * Stops the thread after the current frame.
+         */
+        public void finish() {
+            running = false;
+            LockSupport.unpark(this);
+        }
+    }
 
 }
 
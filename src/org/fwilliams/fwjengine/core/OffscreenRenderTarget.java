@@ -0,0 +1,93 @@
+package org.fwilliams.fwjengine.core;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.image.BufferedImage;
+
+/**
+ * A RenderTarget that draws to a BufferedImage in memory. It needs no display, so it works with java.awt.headless=true.
+ * Frames are drawn into a single TYPE_INT_ARGB_PRE image and show() does nothing, so a game drawing to this target 
+ * runs as fast as it can draw.
+ * @author Francis Williams
+ *
+ */
+public class OffscreenRenderTarget implements RenderTarget {
+	private BufferedImage image;
+	
+	/**
+	 * Creates a new offscreen target of the specified size.
+	 * @param width The width of the target in pixels.
+	 * @param height The height of the target in pixels.
+	 */
+	public OffscreenRenderTarget(int width, int height) {
+		this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+	}
+	
+	/**
+	 * Gets the image frames are drawn into. The image holds the last frame drawn.
+	 * @return The image frames are drawn into.
+	 */
+	public BufferedImage getImage() {
+		return image;
+	}
+	
+	@Override
+	public Graphics2D getGraphics() {
+		if(image != null) {
+			return image.createGraphics();
+		}
+		return null;
+	}
+	
+	@Override
+	public boolean show() {
+		// Nothing to show.
+		return image != null;
+	}
+	
+	@Override
+	public void sync() {
+		// Nothing to sync.
+	}
+	
+	/**
+	 * Creates a TYPE_INT_ARGB_PRE image, which draws onto the target without any format conversion.
+	 * The transparency argument is ignored.
+	 */
+	@Override
+	public BufferedImage createCompatibleImage(int width, int height, int transparency) {
+		return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+	}
+	
+	/**
+	 * Offscreen targets have no display, so this always returns null.
+	 */
+	@Override
+	public GraphicsConfiguration getGraphicsConfiguration() {
+		return null;
+	}
+	
+	@Override
+	public int getWidth() {
+		if(image != null) {
+			return image.getWidth();
+		}
+		return 0;
+	}
+	
+	@Override
+	public int getHeight() {
+		if(image != null) {
+			return image.getHeight();
+		}
+		return 0;
+	}
+	
+	@Override
+	public void dispose() {
+		if(image != null) {
+			image.flush();
+			image = null;
+		}
+	}
+}
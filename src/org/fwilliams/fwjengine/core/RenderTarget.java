@@ -0,0 +1,65 @@
+package org.fwilliams.fwjengine.core;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.image.BufferedImage;
+
+/**
+ * A surface the game draws its frames to. The ScreenManager delegates all of its drawing to a RenderTarget, 
+ * which may be a full screen Window or an image in memory.
+ * @author Francis Williams
+ *
+ */
+public interface RenderTarget {
+	
+	/**
+	 * Gets a Graphics2D object that draws to the buffer for the next frame. The caller must dispose of it when done drawing.
+	 * @return The Graphics2D object for the next frame.
+	 */
+	public Graphics2D getGraphics();
+	
+	/**
+	 * Shows the frame that was drawn since the last call to this method.
+	 * @return false if the contents of the buffer were lost and the frame could not be shown.
+	 */
+	public boolean show();
+	
+	/**
+	 * Makes sure the frame that was shown has actually reached the display.
+	 */
+	public void sync();
+	
+	/**
+	 * Creates an image in the format that draws fastest onto this target.
+	 * @param width The width of the image.
+	 * @param height The height of the image.
+	 * @param transparency The transparency state of the image.
+	 * @return An image compatible with this target.
+	 */
+	public BufferedImage createCompatibleImage(int width, int height, int transparency);
+	
+	/**
+	 * Gets the GraphicsConfiguration of the display the target is shown on, used to create compatible managed images that 
+	 * Java2D can cache in video memory.
+	 * @return The target's GraphicsConfiguration, or null if the target has no display and createCompatibleImage() should be 
+	 * 		   used instead.
+	 */
+	public GraphicsConfiguration getGraphicsConfiguration();
+	
+	/**
+	 * Gets the horizontal resolution of the target.
+	 * @return The width of the target in pixels.
+	 */
+	public int getWidth();
+	
+	/**
+	 * Gets the vertical resolution of the target.
+	 * @return The height of the target in pixels.
+	 */
+	public int getHeight();
+	
+	/**
+	 * Frees any resources held by the target. The target cannot be drawn to once disposed.
+	 */
+	public void dispose();
+}
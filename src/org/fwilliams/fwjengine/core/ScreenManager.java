@@ -1,39 +1,59 @@
 package org.fwilliams.fwjengine.core;
 
-import java.awt.Color;
+import java.awt.AlphaComposite;
 import java.awt.DisplayMode;
 import java.awt.Graphics2D;
 import java.awt.GraphicsConfiguration;
 import java.awt.GraphicsDevice;
 import java.awt.GraphicsEnvironment;
-import java.awt.Toolkit;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.Transparency;
 import java.awt.Window;
-import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
 
-import javax.swing.JFrame;
+import org.fwilliams.fwjengine.graphics.DirtyRegionTracker;
+import org.fwilliams.fwjengine.graphics.SoftwareRenderer;
 
 /**
  * This class manages a full screen window. It has some automation to find the best fitting resolution for the device it runs on and can create images compatible with the device's settings.
+ * All drawing goes through a RenderTarget. When there is no display (java.awt.headless=true) or the fwjengine.offscreen system property 
+ * is set, the full screen Window is replaced with an OffscreenRenderTarget of the same size.
  * @author Francis Williams
  *
  */
 public class ScreenManager {
+	/**
+	 * Set this system property to true to draw to an offscreen image even when a display is available.
+	 */
+	public static final String OFFSCREEN_PROPERTY = "fwjengine.offscreen";
+	
 	private GraphicsDevice device;
+	private RenderTarget target;
+	private FrameStats frameStats;
+	private DirtyRegionTracker dirtyRegions;
+	private BufferedImage retainedBuffer;
+	private boolean softwareRendering;
+	private SoftwareRenderer softwareRenderer;
 	
 	/**
 	 * Creates a new screen manager object representing the local graphics environment.
 	 */
 	public ScreenManager() {
 		GraphicsEnvironment environment = GraphicsEnvironment.getLocalGraphicsEnvironment();
-		this.device = environment.getDefaultScreenDevice();
+		if(!GraphicsEnvironment.isHeadless()) {
+			this.device = environment.getDefaultScreenDevice();
+		}
 	}
 	
 	/**
 	 * Gets a list of the compatible display modes for the current system's screen device.
-	 * @return An array of all compatible display modes for the system's display device.
+	 * @return An array of all compatible display modes for the system's display device. Empty if there is no display.
 	 */
 	public DisplayMode[] getCompatibleModes() {
+		if(device == null) {
+			return new DisplayMode[0];
+		}
 		return device.getDisplayModes();
 	}
 	
@@ -85,22 +105,51 @@ public class ScreenManager {
 	
 	/**
 	 * Creates a new Window and makes it full screen. Sets up 2 buffers to blit or flip depending on the device.
+	 * If there is no display, or the fwjengine.offscreen property is set, an offscreen target with the size of the DisplayMode is used instead.
 	 * @param dm The DisplayMode object to be used for the full screen Window.
 	 */
 	public void setFullScreen(DisplayMode dm) {
-		JFrame frame = new JFrame();
-		frame.setBackground(Color.black);
-		frame.setUndecorated(true);
-		frame.setIgnoreRepaint(true);
-		frame.setResizable(false);
-		
-		device.setFullScreenWindow(frame);
-		if(dm != null && device.isDisplayChangeSupported()) {
-			try {
-				device.setDisplayMode(dm);
-			} catch(IllegalArgumentException e) {/*Fail Silently - Illegal mode for this device*/}
+		if(device == null || Boolean.getBoolean(OFFSCREEN_PROPERTY)) {
+			setOffscreen(dm.getWidth(), dm.getHeight());
+		} else {
+			setRenderTarget(new FullScreenRenderTarget(device, dm));
 		}
-		frame.createBufferStrategy(2);
+	}
+	
+	/**
+	 * Draws to an image in memory instead of the screen. This works without a display.
+	 * @param width The width of the offscreen image.
+	 * @param height The height of the offscreen image.
+	 */
+	public void setOffscreen(int width, int height) {
+		setRenderTarget(new OffscreenRenderTarget(width, height));
+	}
+	
+	/**
+	 * Replaces the current RenderTarget, disposing of the old one.
+	 * @param target The new target for drawing.
+	 */
+	public void setRenderTarget(RenderTarget target) {
+		if(this.target != null && this.target != target) {
+			this.target.dispose();
+		}
+		this.target = target;
+	}
+	
+	/**
+	 * Gets the RenderTarget the screen draws to.
+	 * @return The current RenderTarget, or null if none has been set.
+	 */
+	public RenderTarget getRenderTarget() {
+		return target;
+	}
+	
+	/**
+	 * Returns true if the screen is drawing to an offscreen image instead of a full screen Window.
+	 * @return Whether or not the screen is offscreen.
+	 */
+	public boolean isOffscreen() {
+		return target instanceof OffscreenRenderTarget;
 	}
 	
 	/**
@@ -108,44 +157,192 @@ public class ScreenManager {
 	 * @return The Graphics2D object associated with the current BufferStrategy.
 	 */
 	public Graphics2D getGraphics() {
-		Window window = device.getFullScreenWindow();
-		if(window != null) {
-			BufferStrategy strategy = window.getBufferStrategy();
-			return (Graphics2D) strategy.getDrawGraphics();
+		if(target != null) {
+			if(isRetained()) {
+				return getRetainedBuffer().createGraphics();
+			}
+			return target.getGraphics();
 		}
 		return null;
 	}
 	
+	/**
+	 * Sets the DirtyRegionTracker used to present frames. While a tracker is set on a full screen Window, frames are drawn to a 
+	 * retained image that keeps its contents between frames, and update() copies only the dirty regions of the current and previous 
+	 * frame to the screen. Offscreen targets keep their contents anyway and are only told the frame ended.
+	 * @param tracker The tracker to use, or null to draw and show the whole screen every frame.
+	 */
+	public void setDirtyRegionTracker(DirtyRegionTracker tracker) {
+		this.dirtyRegions = tracker;
+		if(tracker == null) {
+			if(!softwareRendering) {
+				retainedBuffer = null;
+			}
+		} else {
+			tracker.invalidateAll();
+		}
+	}
+	
+	/**
+	 * Gets the DirtyRegionTracker used to present frames.
+	 * @return The tracker, or null if the whole screen is shown every frame.
+	 */
+	public DirtyRegionTracker getDirtyRegionTracker() {
+		return dirtyRegions;
+	}
+	
+	/**
+	 * Sets whether frames are drawn into an image in memory that a SoftwareRenderer can draw into. 
+	 * On a full screen Window the image is copied to the screen by update(); offscreen targets are drawn into directly.
+	 * @param softwareRendering True to make getSoftwareRenderer() available.
+	 */
+	public void setSoftwareRendering(boolean softwareRendering) {
+		this.softwareRendering = softwareRendering;
+		if(softwareRendering) {
+			if(retainedBuffer != null && retainedBuffer.getType() != BufferedImage.TYPE_INT_RGB) {
+				retainedBuffer = null;
+			}
+		} else {
+			softwareRenderer = null;
+			if(dirtyRegions == null) {
+				retainedBuffer = null;
+			}
+		}
+	}
+	
+	/**
+	 * Gets whether frames are drawn into an image in memory for a SoftwareRenderer.
+	 * @return True if software rendering is enabled.
+	 */
+	public boolean isSoftwareRendering() {
+		return softwareRendering;
+	}
+	
+	/**
+	 * Gets a SoftwareRenderer drawing into the image frames are drawn to. Drawing with it and with getGraphics() in the same frame is fine.
+	 * @return The SoftwareRenderer, or null if software rendering is disabled or the screen is not set up.
+	 */
+	public SoftwareRenderer getSoftwareRenderer() {
+		if(!softwareRendering || target == null) {
+			return null;
+		}
+		BufferedImage image = isOffscreen() ? ((OffscreenRenderTarget) target).getImage() : getRetainedBuffer();
+		if(softwareRenderer == null || softwareRenderer.getTarget() != image) {
+			softwareRenderer = new SoftwareRenderer(image);
+		}
+		softwareRenderer.resetClip();
+		return softwareRenderer;
+	}
+	
+	/**
+	 * Checks if frames are drawn to the retained buffer instead of the target.
+	 */
+	private boolean isRetained() {
+		return (dirtyRegions != null || softwareRendering) && !isOffscreen();
+	}
+	
+	/**
+	 * Gets the image frames are drawn to while a DirtyRegionTracker is set or software rendering is enabled, creating it if needed.
+	 * Software rendering needs int pixels, so it falls back to TYPE_INT_RGB if the compatible image doesn't have them.
+	 */
+	private BufferedImage getRetainedBuffer() {
+		if(retainedBuffer == null || retainedBuffer.getWidth() != getWidth() || retainedBuffer.getHeight() != getHeight()) {
+			retainedBuffer = target.createCompatibleImage(getWidth(), getHeight(), Transparency.OPAQUE);
+			if(softwareRendering && (retainedBuffer == null || retainedBuffer.getType() != BufferedImage.TYPE_INT_RGB)) {
+				retainedBuffer = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
+			}
+			if(dirtyRegions != null) {
+				dirtyRegions.invalidateAll();
+			}
+		}
+		return retainedBuffer;
+	}
+	
+	/**
+	 * Copies the retained buffer to the screen's back buffer, only the dirty regions if a DirtyRegionTracker is set.
+	 */
+	private void presentRetainedBuffer() {
+		Graphics2D g = target.getGraphics();
+		if(g == null) {
+			return;
+		}
+		BufferedImage buffer = getRetainedBuffer();
+		boolean preserved = target instanceof FullScreenRenderTarget && ((FullScreenRenderTarget) target).isBackBufferPreserved();
+		if(dirtyRegions == null || !preserved || dirtyRegions.isFullRepaint()) {
+			g.drawImage(buffer, 0, 0, null);
+		} else {
+			// The back buffer is a frame behind, so it also needs last frame's changes.
+			for(Rectangle r : dirtyRegions.getPreviousRegions()) {
+				copyRegion(g, buffer, r);
+			}
+			for(Rectangle r : dirtyRegions.getRegions()) {
+				copyRegion(g, buffer, r);
+			}
+		}
+		g.dispose();
+	}
+	
+	private static void copyRegion(Graphics2D g, BufferedImage source, Rectangle r) {
+		int x2 = r.x + r.width;
+		int y2 = r.y + r.height;
+		g.drawImage(source, r.x, r.y, x2, y2, r.x, r.y, x2, y2, null);
+	}
+	
 	/**
 	 * Gets the Window object filling the screen.
-	 * @return The Window object filling the screen.
+	 * @return The Window object filling the screen, or null if the screen is offscreen.
 	 */
 	public Window getFullScreenWindow() {
-		return device.getFullScreenWindow();
+		if(device != null) {
+			return device.getFullScreenWindow();
+		}
+		return null;
 	}
 	
 	/**
 	 * Updates the screen with the appropriate buffer.
 	 */
 	public void update() {
-		Window window = device.getFullScreenWindow();
-		if(window != null) {
-			BufferStrategy strategy = window.getBufferStrategy();
-			if(!strategy.contentsLost()) {
-				strategy.show();
+		if(target != null) {
+			long startTime = System.nanoTime();
+			if(isRetained()) {
+				presentRetainedBuffer();
+			}
+			boolean shown = target.show();
+			long showTime = System.nanoTime();
+			target.sync();
+			
+			if(dirtyRegions != null) {
+				dirtyRegions.endFrame();
+				if(!shown) {
+					dirtyRegions.invalidateAll();
+				}
+			}
+			if(frameStats != null) {
+				if(!shown) {
+					frameStats.recordContentsLost();
+				}
+				frameStats.record(FrameStats.PHASE_SHOW, showTime - startTime);
+				frameStats.record(FrameStats.PHASE_SYNC, System.nanoTime() - showTime);
 			}
-			Toolkit.getDefaultToolkit().sync();
 		}
 	}
 	
+	/**
+	 * Sets the FrameStats that update() records the time taken to show and sync each frame in, along with lost buffer contents.
+	 * @param frameStats The FrameStats to record in, or null to stop recording.
+	 */
+	public void setFrameStats(FrameStats frameStats) {
+		this.frameStats = frameStats;
+	}
+	
 	/**
 	 * Gets the horizontal resolution of the Window. This method returns 0 if the Window is null;
 	 * @return The horizontal resolution of the window.
 	 */
 	public int getWidth() {
-		Window window = device.getFullScreenWindow();
-		if(window != null) {
-			return window.getWidth();
+		if(target != null) {
+			return target.getWidth();
 		}
 		return 0;
 	}
@@ -155,9 +352,8 @@ public class ScreenManager {
 	 * @return The vertical resolution of the window.
 	 */
 	public int getHeight() {
-		Window window = device.getFullScreenWindow();
-		if(window != null) {
-			return window.getHeight();
+		if(target != null) {
+			return target.getHeight();
 		}
 		return 0;
 	}
@@ -166,11 +362,15 @@ public class ScreenManager {
 	 * Frees the memory occupied by the full screen Window and restores the original screen resolution if changed.
 	 */
 	public void restoreScreen() {
-		Window window = device.getFullScreenWindow();
-		if(window != null) {
-			window.dispose();
+		retainedBuffer = null;
+		softwareRenderer = null;
+		if(target != null) {
+			target.dispose();
+			target = null;
+		}
+		if(device != null) {
+			device.setFullScreenWindow(null);
 		}
-		device.setFullScreenWindow(null);
 	}
 	
 	/**
@@ -181,10 +381,59 @@ public class ScreenManager {
 	 * @return An image compatible with the current display.
 	 */
 	public BufferedImage createCompatibleImage(int width, int height, int transparency) {
-		Window window = device.getFullScreenWindow();
-		if(window != null) {
-			GraphicsConfiguration gc = window.getGraphicsConfiguration();
-			return gc.createCompatibleImage(width, height, transparency);
+		if(target != null) {
+			return target.createCompatibleImage(width, height, transparency);
+		}
+		return null;
+	}
+	
+	/**
+	 * Converts an image to the format of the current display so drawing it needs no format conversion. 
+	 * Images that were decoded into a BufferedImage keep their transparency, any other image is treated as translucent. 
+	 * On an offscreen target the result is a TYPE_INT_ARGB_PRE image.
+	 * <br>
+	 * The result is a managed image: Java2D caches it in video memory once it has been drawn a few times and unchanged, 
+	 * and restores that copy itself if the video memory is lost, so no VolatileImage handling is needed.
+	 * @param image A fully loaded image.
+	 * @return A compatible copy of the image, or the image itself if it is already compatible, 
+	 * 		   has not finished loading or there is no screen to be compatible with.
+	 */
+	public Image toCompatibleImage(Image image) {
+		int width = image.getWidth(null);
+		int height = image.getHeight(null);
+		if(target == null || width <= 0 || height <= 0) {
+			return image;
+		}
+		
+		int transparency = Transparency.TRANSLUCENT;
+		if(image instanceof BufferedImage) {
+			BufferedImage source = (BufferedImage) image;
+			transparency = source.getTransparency();
+			BufferedImage probe = target.createCompatibleImage(1, 1, transparency);
+			if(probe != null && probe.getColorModel().equals(source.getColorModel()) 
+			   && probe.getSampleModel().getClass() == source.getSampleModel().getClass()) {
+				return image;
+			}
+		}
+		
+		BufferedImage compatible = target.createCompatibleImage(width, height, transparency);
+		if(compatible == null) {
+			return image;
+		}
+		Graphics2D g = compatible.createGraphics();
+		g.setComposite(AlphaComposite.Src);
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return compatible;
+	}
+	
+	/**
+	 * Gets the GraphicsConfiguration of the current display.
+	 * @return The GraphicsConfiguration, or null if the screen is offscreen or not set up.
+	 */
+	public GraphicsConfiguration getGraphicsConfiguration() {
+		if(target != null) {
+			return target.getGraphicsConfiguration();
 		}
 		return null;
 	}
@@ -0,0 +1,147 @@
+package org.fwilliams.fwjengine.core;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.util.Arrays;
+
+import org.fwilliams.fwjengine.entity.Sprite;
+import org.fwilliams.fwjengine.graphics.RenderCommandBuffer;
+import org.fwilliams.fwjengine.graphics.SoftwareRenderer;
+
+/**
+ * A copy of everything needed to draw one frame: the image and position of every Sprite, in drawing order. 
+ * In LOOP_PIPELINED mode the update thread fills a snapshot while the render thread draws the previous one, 
+ * so the render thread never reads game objects that are being updated.
+ * <br>
+ * Anything other than sprites, like text, fills and transformed images, can be recorded into the snapshot's RenderCommandBuffer, 
+ * which is replayed after the images.
+ * @author Francis Williams
+ *
+ */
+public class WorldSnapshot {
+	private static final int INITIAL_CAPACITY = 64;
+	
+	private Image[] images;
+	private float[] xs;
+	private float[] ys;
+	private int size;
+	private RenderCommandBuffer commands;
+	
+	/**
+	 * Creates a new, empty snapshot.
+	 */
+	public WorldSnapshot() {
+		images = new Image[INITIAL_CAPACITY];
+		xs = new float[INITIAL_CAPACITY];
+		ys = new float[INITIAL_CAPACITY];
+		commands = new RenderCommandBuffer();
+	}
+	
+	/**
+	 * Gets the commands drawn after the images of the snapshot. They are cleared along with the images.
+	 * @return The RenderCommandBuffer of the snapshot.
+	 */
+	public RenderCommandBuffer getCommands() {
+		return commands;
+	}
+	
+	/**
+	 * Adds the Sprite's current image and position to the snapshot.
+	 * @param sprite The Sprite to add.
+	 */
+	public void add(Sprite sprite) {
+		add(sprite.getImage(), sprite.getX(), sprite.getY());
+	}
+	
+	/**
+	 * Adds an image to be drawn at the specified position.
+	 * @param image The image to draw.
+	 * @param x The horizontal position of the image's top left corner.
+	 * @param y The vertical position of the image's top left corner.
+	 */
+	public void add(Image image, float x, float y) {
+		if(size == images.length) {
+			int capacity = size * 2;
+			images = Arrays.copyOf(images, capacity);
+			xs = Arrays.copyOf(xs, capacity);
+			ys = Arrays.copyOf(ys, capacity);
+		}
+		images[size] = image;
+		xs[size] = x;
+		ys[size] = y;
+		size++;
+	}
+	
+	/**
+	 * Removes everything from the snapshot. The storage is kept to be reused by the next frame.
+	 */
+	public void clear() {
+		Arrays.fill(images, 0, size, null);
+		size = 0;
+		commands.clear();
+	}
+	
+	/**
+	 * Gets the number of images in the snapshot.
+	 * @return The number of images in the snapshot.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Gets the image at the specified zero-based index.
+	 * @param index The zero-based index in drawing order.
+	 * @return The image at the index.
+	 */
+	public Image getImage(int index) {
+		return images[index];
+	}
+	
+	/**
+	 * Gets the horizontal position of the image at the specified zero-based index.
+	 * @param index The zero-based index in drawing order.
+	 * @return The horizontal position of the image's top left corner.
+	 */
+	public float getX(int index) {
+		return xs[index];
+	}
+	
+	/**
+	 * Gets the vertical position of the image at the specified zero-based index.
+	 * @param index The zero-based index in drawing order.
+	 * @return The vertical position of the image's top left corner.
+	 */
+	public float getY(int index) {
+		return ys[index];
+	}
+	
+	/**
+	 * Draws every image in the snapshot in the order it was added, then replays the commands.
+	 * @param g The graphics object to draw with.
+	 */
+	public void draw(Graphics2D g) {
+		for(int i=0; i<size; i++) {
+			g.drawImage(images[i], Math.round(xs[i]), Math.round(ys[i]), null);
+		}
+		if(commands.size() > 0) {
+			commands.replay(g);
+		}
+	}
+	
+	/**
+	 * Draws every image in the snapshot at its position, in the order they were added, with a SoftwareRenderer, 
+	 * then replays the commands through a Graphics2D clipped like the renderer.
+	 * @param renderer The renderer to draw with.
+	 */
+	public void draw(SoftwareRenderer renderer) {
+		for(int i=0; i<size; i++) {
+			renderer.drawImage(images[i], Math.round(xs[i]), Math.round(ys[i]));
+		}
+		if(commands.size() > 0) {
+			Graphics2D g = renderer.createGraphics();
+			commands.replay(g);
+			g.dispose();
+		}
+	}
+}
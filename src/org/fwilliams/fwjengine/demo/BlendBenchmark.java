@@ -0,0 +1,103 @@
+package org.fwilliams.fwjengine.demo;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.fwilliams.fwjengine.graphics.BlendKernels;
+
+/**
+ * Measures how fast the scalar and vector BlendKernels blend rows of pixels in every mode, and checks that they agree.
+ * Compile src-vector and run with --add-modules jdk.incubator.vector to include the vector kernels.
+ * @author Francis Williams
+ *
+ */
+public class BlendBenchmark {
+	private static final int ROW_LENGTH = 1440;
+	private static final int ROWS = 900;
+	private static final int ITERATIONS = 20;
+	private static final String[] MODES = {"src-over", "add", "multiply"};
+	
+	public static void main(String[] args) {
+		int[] src = new int[ROW_LENGTH * ROWS];
+		int[] dst = new int[ROW_LENGTH * ROWS];
+		Random random = new Random(42);
+		for(int i = 0; i < src.length; i++) {
+			src[i] = randomPremultiplied(random);
+			dst[i] = randomPremultiplied(random);
+		}
+		
+		BlendKernels scalar = BlendKernels.getScalar();
+		BlendKernels vector = BlendKernels.getVector();
+		if(vector == null) {
+			System.out.println("Vector kernels not available, compile src-vector and run with --add-modules jdk.incubator.vector to compare.");
+		}
+		
+		for(int mode = 0; mode < MODES.length; mode++) {
+			double scalarRate = measure(scalar, mode, src, dst);
+			System.out.printf("%-9s %-20s %8.1f Mpixels/s%n", MODES[mode], scalar.getName(), scalarRate);
+			if(vector != null) {
+				double vectorRate = measure(vector, mode, src, dst);
+				boolean same = Arrays.equals(blendOnce(scalar, mode, src, dst), blendOnce(vector, mode, src, dst));
+				System.out.printf("%-9s %-20s %8.1f Mpixels/s  %.2fx %s%n", MODES[mode], vector.getName(), vectorRate, 
+					vectorRate / scalarRate, same ? "" : "MISMATCH");
+			}
+		}
+	}
+	
+	/**
+	 * Gets the blending rate of a kernel in millions of pixels per second, after warming it up.
+	 */
+	private static double measure(BlendKernels kernels, int mode, int[] src, int[] dst) {
+		int[] target = dst.clone();
+		for(int i = 0; i < ITERATIONS; i++) {
+			blend(kernels, mode, src, target);
+		}
+		long start = System.nanoTime();
+		for(int i = 0; i < ITERATIONS; i++) {
+			System.arraycopy(dst, 0, target, 0, dst.length);
+			blend(kernels, mode, src, target);
+		}
+		long time = System.nanoTime() - start;
+		return (double) src.length * ITERATIONS / time * 1000;
+	}
+	
+	private static int[] blendOnce(BlendKernels kernels, int mode, int[] src, int[] dst) {
+		int[] target = dst.clone();
+		blend(kernels, mode, src, target);
+		return target;
+	}
+	
+	private static void blend(BlendKernels kernels, int mode, int[] src, int[] dst) {
+		for(int row = 0; row < ROWS; row++) {
+			int index = row * ROW_LENGTH;
+			if(mode == 0) {
+				kernels.srcOver(src, index, dst, index, ROW_LENGTH);
+			} else if(mode == 1) {
+				kernels.add(src, index, dst, index, ROW_LENGTH);
+			} else {
+				kernels.multiply(src, index, dst, index, ROW_LENGTH);
+			}
+		}
+	}
+	
+	/**
+	 * Gets a random premultiplied pixel. A third are transparent, a third opaque and a third translucent, like typical sprites.
+	 */
+	private static int randomPremultiplied(Random random) {
+		int alpha;
+		switch(random.nextInt(3)) {
+		case 0:
+			alpha = 0;
+			break;
+		case 1:
+			alpha = 0xff;
+			break;
+		default:
+			alpha = random.nextInt(256);
+		}
+		int red = random.nextInt(alpha + 1);
+		int green = random.nextInt(alpha + 1);
+		int blue = random.nextInt(alpha + 1);
+		return (alpha << 24) | (red << 16) | (green << 8) | blue;
+	}
+}
@@ -4,13 +4,13 @@ import org.fwilliams.fwjengine.core.*;
 import org.fwilliams.fwjengine.entity.*;
 import org.fwilliams.fwjengine.graphics.*;
 import org.fwilliams.fwjengine.input.*;
+import org.fwilliams.fwjengine.scene.*;
 
 import java.awt.Color;
 import java.awt.DisplayMode;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
-import java.awt.geom.AffineTransform;
 
 import javax.swing.ImageIcon;
 
@@ -30,14 +30,24 @@ public class ImageTransform {
     private Animation anim;
     private Sprite cloud;
     private Sprite[] smileys;
+    private RotationCache rotations;
+    private Scene scene;
     
     public void loadImages() {
         // load images
         bgImage = loadImage("assets/bg.png");
-        Image player1 = loadImage("assets/cloud1.png");
-        Image player2 = loadImage("assets/cloud2.png");
-        Image player3 = loadImage("assets/cloud3.png");
-        Image smiley = loadImage("assets/smile.png");
+        
+        // pack the small images into one atlas page
+        TextureAtlas atlas = new TextureAtlas(screen);
+        atlas.add("cloud1", loadImage("assets/cloud1.png"));
+        atlas.add("cloud2", loadImage("assets/cloud2.png"));
+        atlas.add("cloud3", loadImage("assets/cloud3.png"));
+        atlas.add("smile", loadImage("assets/smile.png"));
+        atlas.pack();
+        AtlasRegion player1 = atlas.getRegion("cloud1");
+        AtlasRegion player2 = atlas.getRegion("cloud2");
+        AtlasRegion player3 = atlas.getRegion("cloud3");
+        AtlasRegion smiley = atlas.getRegion("smile");
         
         // create animation
         anim = new Animation();
@@ -54,6 +64,7 @@ public class ImageTransform {
         
         Animation happyAnimation = new Animation();
         happyAnimation.addFrame(smiley, 10);
+        rotations = new RotationCache(screen);
         
         smileys = new Sprite[NUMBER_OF_SPRITES];
         for(int i=0; i<smileys.length; i++) {
@@ -64,12 +75,37 @@ public class ImageTransform {
         	smileys[i].setYVelocity((float) Math.random()* 0.5f);
         }
         
+        // build the scene: a cached background, the cloud and the rotating smileys
+        Animation bgAnimation = new Animation();
+        bgAnimation.addFrame(bgImage, 1000);
+        Layer background = new Layer(true);
+        background.setOpaque(true);
+        background.add(new Sprite(bgAnimation));
+        
+        Layer clouds = new Layer();
+        clouds.add(cloud);
+        
+        Layer faces = new Layer() {
+        	@Override
+        	protected void draw(SpriteBatch batch, Sprite s, int x, int y, int layer) {
+        		RotationCache.Rotation rotation = rotations.get(s.getImage(), s.getVelocityDirection());
+        		batch.draw(rotation.getImage(), x + rotation.getOffsetX(), y + rotation.getOffsetY(), layer);
+        	}
+        };
+        for(Sprite s : smileys) {
+        	faces.add(s);
+        }
+        
+        scene = new Scene(screen);
+        scene.addLayer(background);
+        scene.addLayer(clouds);
+        scene.addLayer(faces);
     }
 
 
     
     private Image loadImage(String fileName) {
-        return new ImageIcon(fileName).getImage();
+        return screen.toCompatibleImage(new ImageIcon(fileName).getImage());
     }
 
 
@@ -136,9 +172,8 @@ public class ImageTransform {
     }
     
     private void update(long elapsedTime) {
-    	cloud.update(elapsedTime);
+    	scene.update(elapsedTime);
     	for(Sprite s : smileys) {
-    		s.update(elapsedTime);
     		if(s.getX() + s.getWidth() >= screen.getWidth()) {
         		s.setXVelocity(-Math.abs(s.getXVelocity()));
         	}
@@ -167,16 +202,6 @@ public class ImageTransform {
     }
 
     public void draw(Graphics g) {
-        // draw background
-        g.drawImage(bgImage, 0, 0, null);
-        // draw image
-        g.drawImage(cloud.getImage(), Math.round(cloud.getX()), Math.round(cloud.getY()), null);
-        
-        for(Sprite s : smileys) {
-        	AffineTransform transform = new AffineTransform();
-        	transform.setToTranslation(s.getX(), s.getY());
-        	transform.rotate(s.getVelocityDirection(), (double) s.getWidth()/2, (double) s.getHeight()/2);
-        	((Graphics2D)g).drawImage(s.getImage(), transform, null);
-        }
+        scene.draw((Graphics2D) g);
     }
 }
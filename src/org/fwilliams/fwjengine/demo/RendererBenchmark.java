@@ -0,0 +1,172 @@
+package org.fwilliams.fwjengine.demo;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+import org.fwilliams.fwjengine.graphics.SoftwareRenderer;
+
+/**
+ * Draws the same sprites into two images, one with Graphics2D and one with a SoftwareRenderer, then compares the pixels and
+ * measures how fast each draws them. Run it headless (-Djava.awt.headless=true) to compare against Java2D's software loops.
+ * <br>
+ * Sprites are drawn at random positions, partly off the edges, into TYPE_INT_ARGB_PRE and TYPE_INT_RGB targets, for every
+ * kind of source the renderer blits itself.
+ * @author Francis Williams
+ *
+ */
+public class RendererBenchmark {
+	private static final int WIDTH = 800;
+	private static final int HEIGHT = 600;
+	private static final int[] SIZES = {16, 64, 128};
+	private static final int SPRITES = 2000;
+	private static final int ITERATIONS = 20;
+	private static final String[] SOURCES = {"opaque rgb", "bitmask pre", "translucent pre", "translucent argb"};
+	
+	private static BufferedImage background = createBackground();
+	
+	public static void main(String[] args) {
+		System.out.printf("%-6s %-17s %-5s %10s %10s %7s %10s %8s%n",
+			"target", "source", "size", "g2d ms", "soft ms", "speedup", "different", "max diff");
+		int[] targetTypes = {BufferedImage.TYPE_INT_ARGB_PRE, BufferedImage.TYPE_INT_RGB};
+		for(int targetType : targetTypes) {
+			for(int source = 0; source < SOURCES.length; source++) {
+				for(int size : SIZES) {
+					run(targetType, source, size);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Compares and times one kind of source of one size on one kind of target.
+	 */
+	private static void run(int targetType, int source, int size) {
+		BufferedImage sprite = createSprite(source, size, new Random(size));
+		Random random = new Random(7);
+		int[] xs = new int[SPRITES];
+		int[] ys = new int[SPRITES];
+		for(int i = 0; i < SPRITES; i++) {
+			xs[i] = random.nextInt(WIDTH + size) - size;
+			ys[i] = random.nextInt(HEIGHT + size) - size;
+		}
+		
+		BufferedImage expected = createTarget(targetType);
+		BufferedImage actual = createTarget(targetType);
+		drawGraphics(expected, sprite, xs, ys);
+		drawSoftware(actual, sprite, xs, ys);
+		int[] expectedPixels = ((DataBufferInt) expected.getRaster().getDataBuffer()).getData();
+		int[] actualPixels = ((DataBufferInt) actual.getRaster().getDataBuffer()).getData();
+		// the top byte of a TYPE_INT_RGB pixel is unused, and the two don't fill it the same way
+		int mask = targetType == BufferedImage.TYPE_INT_RGB ? 0xffffff : 0xffffffff;
+		int different = 0;
+		int maxDifference = 0;
+		for(int i = 0; i < expectedPixels.length; i++) {
+			if(((expectedPixels[i] ^ actualPixels[i]) & mask) != 0) {
+				different++;
+				maxDifference = Math.max(maxDifference, channelDifference(expectedPixels[i] & mask, actualPixels[i] & mask));
+			}
+		}
+		
+		for(int i = 0; i < ITERATIONS; i++) {
+			drawGraphics(expected, sprite, xs, ys);
+			drawSoftware(actual, sprite, xs, ys);
+		}
+		long start = System.nanoTime();
+		for(int i = 0; i < ITERATIONS; i++) {
+			drawGraphics(expected, sprite, xs, ys);
+		}
+		double graphicsTime = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+		start = System.nanoTime();
+		for(int i = 0; i < ITERATIONS; i++) {
+			drawSoftware(actual, sprite, xs, ys);
+		}
+		double softwareTime = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+		
+		System.out.printf("%-6s %-17s %-5d %10.2f %10.2f %6.2fx %10d %8d%n",
+			targetType == BufferedImage.TYPE_INT_RGB ? "rgb" : "argb", SOURCES[source], size,
+			graphicsTime, softwareTime, graphicsTime / softwareTime, different, maxDifference);
+	}
+	
+	private static void drawGraphics(BufferedImage target, BufferedImage sprite, int[] xs, int[] ys) {
+		Graphics2D g = target.createGraphics();
+		g.setComposite(AlphaComposite.Src);
+		g.drawImage(background, 0, 0, null);
+		g.setComposite(AlphaComposite.SrcOver);
+		for(int i = 0; i < xs.length; i++) {
+			g.drawImage(sprite, xs[i], ys[i], null);
+		}
+		g.dispose();
+	}
+	
+	private static void drawSoftware(BufferedImage target, BufferedImage sprite, int[] xs, int[] ys) {
+		SoftwareRenderer renderer = new SoftwareRenderer(target);
+		renderer.drawImage(background, 0, 0);
+		for(int i = 0; i < xs.length; i++) {
+			renderer.drawImage(sprite, xs[i], ys[i]);
+		}
+	}
+	
+	/**
+	 * Creates an opaque gradient to draw the sprites over, so blending has something to blend with.
+	 */
+	private static BufferedImage createBackground() {
+		BufferedImage background = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		for(int y = 0; y < HEIGHT; y++) {
+			for(int x = 0; x < WIDTH; x++) {
+				background.setRGB(x, y, (x * 255 / WIDTH) << 16 | (y * 255 / HEIGHT) << 8 | ((x + y) & 0xff));
+			}
+		}
+		return background;
+	}
+	
+	private static BufferedImage createTarget(int targetType) {
+		return new BufferedImage(WIDTH, HEIGHT, targetType);
+	}
+	
+	/**
+	 * Creates a sprite of one of the SOURCES kinds with random pixels.
+	 */
+	private static BufferedImage createSprite(int source, int size, Random random) {
+		int type = source == 0 ? BufferedImage.TYPE_INT_RGB
+			: source == 3 ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_ARGB_PRE;
+		BufferedImage sprite = new BufferedImage(size, size, type);
+		int[] pixels = ((DataBufferInt) sprite.getRaster().getDataBuffer()).getData();
+		for(int i = 0; i < pixels.length; i++) {
+			int alpha;
+			if(source == 0) {
+				alpha = 0xff;
+			} else if(source == 1) {
+				alpha = random.nextBoolean() ? 0xff : 0;
+			} else {
+				alpha = random.nextInt(256);
+			}
+			int limit = type == BufferedImage.TYPE_INT_ARGB_PRE ? alpha : 0xff;
+			pixels[i] = alpha << 24 | random.nextInt(limit + 1) << 16 | random.nextInt(limit + 1) << 8 | random.nextInt(limit + 1);
+		}
+		if(source == 1) {
+			// wrap the pixels in an image that reports BITMASK, like a compatible image would
+			return new BufferedImage(sprite.getColorModel(), sprite.getRaster(), true, null) {
+				@Override
+				public int getTransparency() {
+					return Transparency.BITMASK;
+				}
+			};
+		}
+		return sprite;
+	}
+	
+	/**
+	 * Gets the largest difference between any channel of two pixels.
+	 */
+	private static int channelDifference(int a, int b) {
+		int max = 0;
+		for(int shift = 0; shift < 32; shift += 8) {
+			max = Math.max(max, Math.abs(((a >>> shift) & 0xff) - ((b >>> shift) & 0xff)));
+		}
+		return max;
+	}
+}
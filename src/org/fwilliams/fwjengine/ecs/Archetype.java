@@ -0,0 +1,154 @@
+package org.fwilliams.fwjengine.ecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The set of entities that have exactly the same component types. Their components are stored in Chunks of CHUNK_CAPACITY
+ * entities each. Every archetype remembers which archetype adding or removing each component leads to, so moving an entity
+ * between archetypes doesn't search for the target after the first time.
+ * @author Francis Williams
+ *
+ */
+public class Archetype {
+	public static final int CHUNK_CAPACITY = 1024;
+	
+	private World world;
+	private long mask;
+	private ComponentType[] types;
+	private int[] columnStart;
+	private int columnCount;
+	private ArrayList<Chunk> chunks;
+	private Chunk spare;
+	private int entityCount;
+	private Archetype[] addEdges;
+	private Archetype[] removeEdges;
+	
+	/**
+	 * Creates an archetype of a world for a set of component types, sorted by the world's ids.
+	 */
+	Archetype(World world, long mask, ComponentType[] types) {
+		this.world = world;
+		this.mask = mask;
+		this.types = types;
+		this.columnStart = new int[World.MAX_TYPES];
+		Arrays.fill(columnStart, -1);
+		for(int t = 0; t < types.length; t++) {
+			types[t].freeze();
+			columnStart[world.getId(types[t])] = columnCount;
+			columnCount += types[t].getFieldCount();
+		}
+		this.chunks = new ArrayList<Chunk>();
+		this.addEdges = new Archetype[World.MAX_TYPES];
+		this.removeEdges = new Archetype[World.MAX_TYPES];
+	}
+	
+	/**
+	 * Gets the bit mask of the archetype's component types, using the ids its world gave them.
+	 * @return The mask.
+	 */
+	public long getMask() {
+		return mask;
+	}
+	
+	/**
+	 * Gets the archetype's component types.
+	 * @return The types, sorted by the world's ids. Don't modify the array.
+	 */
+	public ComponentType[] getTypes() {
+		return types;
+	}
+	
+	/**
+	 * Checks if the archetype has a component type.
+	 * @param type The component type.
+	 * @return True if it has the type.
+	 */
+	public boolean has(ComponentType type) {
+		int id = world.getId(type);
+		return id >= 0 && (mask & (1L << id)) != 0;
+	}
+	
+	/**
+	 * Gets the number of entities in the archetype.
+	 * @return The number of entities.
+	 */
+	public int getEntityCount() {
+		return entityCount;
+	}
+	
+	/**
+	 * Gets the archetype's chunks. Every chunk but the last is full.
+	 * @return An unmodifiable list of the chunks.
+	 */
+	public List<Chunk> getChunks() {
+		return Collections.unmodifiableList(chunks);
+	}
+	
+	int getColumn(ComponentType type) {
+		int id = world.getId(type);
+		return id >= 0 ? columnStart[id] : -1;
+	}
+	
+	int getColumnCount() {
+		return columnCount;
+	}
+	
+	Archetype getAddEdge(ComponentType type) {
+		int id = world.getId(type);
+		return id >= 0 ? addEdges[id] : null;
+	}
+	
+	void setAddEdge(ComponentType type, Archetype archetype) {
+		addEdges[world.getId(type)] = archetype;
+	}
+	
+	Archetype getRemoveEdge(ComponentType type) {
+		int id = world.getId(type);
+		return id >= 0 ? removeEdges[id] : null;
+	}
+	
+	void setRemoveEdge(ComponentType type, Archetype archetype) {
+		removeEdges[world.getId(type)] = archetype;
+	}
+	
+	/**
+	 * Gets the chunk new entities are added to, adding a chunk if the last one is full.
+	 */
+	Chunk getFreeChunk() {
+		Chunk last = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+		if(last == null || last.isFull()) {
+			last = spare != null ? spare : new Chunk(this, CHUNK_CAPACITY);
+			spare = null;
+			chunks.add(last);
+		}
+		return last;
+	}
+	
+	Chunk getLastChunk() {
+		return chunks.get(chunks.size() - 1);
+	}
+	
+	void added() {
+		entityCount++;
+	}
+	
+	/**
+	 * Drops the last chunk once it is empty, keeping it as a spare so adding and removing around a chunk boundary doesn't
+	 * allocate every time.
+	 */
+	void removed() {
+		entityCount--;
+		Chunk last = getLastChunk();
+		if(last.size() == 0 && chunks.size() > 1) {
+			spare = chunks.remove(chunks.size() - 1);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return Arrays.toString(types);
+	}
+}
@@ -0,0 +1,205 @@
+package org.fwilliams.fwjengine.ecs;
+
+/**
+ * A fixed-size block of entities of one Archetype. Each field of each component is a primitive array holding that field for
+ * every entity of the chunk, at the entity's row. Rows 0 to size() - 1 are in use; removing an entity moves the archetype's
+ * last entity into its row, so chunks stay full except the last one.
+ * <br>
+ * Systems get the arrays once per chunk and loop over the rows:
+ * <pre>
+ * float[] x = chunk.getFloats(POSITION, 0);
+ * float[] dx = chunk.getFloats(VELOCITY, 0);
+ * for(int i = 0; i &lt; chunk.size(); i++) {
+ *     x[i] += dx[i] * elapsedTime;
+ * }
+ * </pre>
+ * @author Francis Williams
+ *
+ */
+public class Chunk {
+	private Archetype archetype;
+	private Object[] columns;
+	private int[] entities;
+	private int size;
+	
+	Chunk(Archetype archetype, int capacity) {
+		this.archetype = archetype;
+		this.entities = new int[capacity];
+		ComponentType[] types = archetype.getTypes();
+		this.columns = new Object[archetype.getColumnCount()];
+		for(int t = 0; t < types.length; t++) {
+			int start = archetype.getColumn(types[t]);
+			for(int f = 0; f < types[t].getFieldCount(); f++) {
+				switch(types[t].getFieldKind(f)) {
+				case ComponentType.FLOAT:
+					columns[start + f] = new float[capacity];
+					break;
+				case ComponentType.INT:
+					columns[start + f] = new int[capacity];
+					break;
+				case ComponentType.LONG:
+					columns[start + f] = new long[capacity];
+					break;
+				default:
+					columns[start + f] = new Object[capacity];
+					break;
+				}
+			}
+		}
+	}
+	
+	public Archetype getArchetype() {
+		return archetype;
+	}
+	
+	/**
+	 * Gets the number of entities in the chunk.
+	 * @return The number of rows in use.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Gets the entity at a row.
+	 * @param row The row.
+	 * @return The entity.
+	 */
+	public int getEntity(int row) {
+		return entities[row];
+	}
+	
+	/**
+	 * Checks if the chunk's entities have a component.
+	 * @param type The component type.
+	 * @return True if they have it.
+	 */
+	public boolean has(ComponentType type) {
+		return archetype.has(type);
+	}
+	
+	/**
+	 * Gets the array of a float field.
+	 * @param type The component type.
+	 * @param field The index of the field in the type.
+	 * @return The field's array, indexed by row. Only rows below size() are entities.
+	 */
+	public float[] getFloats(ComponentType type, int field) {
+		return (float[]) column(type, field);
+	}
+	
+	/**
+	 * Gets the array of an int field.
+	 * @param type The component type.
+	 * @param field The index of the field in the type.
+	 * @return The field's array, indexed by row. Only rows below size() are entities.
+	 */
+	public int[] getInts(ComponentType type, int field) {
+		return (int[]) column(type, field);
+	}
+	
+	/**
+	 * Gets the array of a long field.
+	 * @param type The component type.
+	 * @param field The index of the field in the type.
+	 * @return The field's array, indexed by row. Only rows below size() are entities.
+	 */
+	public long[] getLongs(ComponentType type, int field) {
+		return (long[]) column(type, field);
+	}
+	
+	/**
+	 * Gets the array of an Object field.
+	 * @param type The component type.
+	 * @param field The index of the field in the type.
+	 * @return The field's array, indexed by row. Only rows below size() are entities.
+	 */
+	public Object[] getObjects(ComponentType type, int field) {
+		return (Object[]) column(type, field);
+	}
+	
+	private Object column(ComponentType type, int field) {
+		int start = archetype.getColumn(type);
+		if(start < 0) {
+			throw new IllegalArgumentException("Chunk has no " + type + " component");
+		}
+		if(field < 0 || field >= type.getFieldCount()) {
+			throw new IllegalArgumentException("No field " + field + " in " + type);
+		}
+		return columns[start + field];
+	}
+	
+	boolean isFull() {
+		return size == entities.length;
+	}
+	
+	/**
+	 * Adds an entity at the end of the chunk, with every field zero or null.
+	 * @return The entity's row.
+	 */
+	int add(int entity) {
+		entities[size] = entity;
+		return size++;
+	}
+	
+	/**
+	 * Removes the last row, clearing it so it holds no references and is zero when reused.
+	 */
+	void removeLast() {
+		size--;
+		for(int c = 0; c < columns.length; c++) {
+			clear(columns[c], size);
+		}
+	}
+	
+	/**
+	 * Copies the fields of every component both chunks have from a row of another chunk to a row of this one.
+	 */
+	void copyRow(Chunk source, int sourceRow, int row) {
+		ComponentType[] types = archetype.getTypes();
+		for(int t = 0; t < types.length; t++) {
+			int from = source.archetype.getColumn(types[t]);
+			if(from < 0) {
+				continue;
+			}
+			int to = archetype.getColumn(types[t]);
+			for(int f = 0; f < types[t].getFieldCount(); f++) {
+				copy(source.columns[from + f], sourceRow, columns[to + f], row);
+			}
+		}
+	}
+	
+	/**
+	 * Moves the entity at a row of another chunk of the same archetype to a row of this one.
+	 */
+	void moveRow(Chunk source, int sourceRow, int row) {
+		for(int c = 0; c < columns.length; c++) {
+			copy(source.columns[c], sourceRow, columns[c], row);
+		}
+		entities[row] = source.entities[sourceRow];
+	}
+	
+	private static void copy(Object from, int fromRow, Object to, int toRow) {
+		if(from instanceof float[]) {
+			((float[]) to)[toRow] = ((float[]) from)[fromRow];
+		} else if(from instanceof int[]) {
+			((int[]) to)[toRow] = ((int[]) from)[fromRow];
+		} else if(from instanceof long[]) {
+			((long[]) to)[toRow] = ((long[]) from)[fromRow];
+		} else {
+			((Object[]) to)[toRow] = ((Object[]) from)[fromRow];
+		}
+	}
+	
+	private static void clear(Object column, int row) {
+		if(column instanceof float[]) {
+			((float[]) column)[row] = 0;
+		} else if(column instanceof int[]) {
+			((int[]) column)[row] = 0;
+		} else if(column instanceof long[]) {
+			((long[]) column)[row] = 0;
+		} else {
+			((Object[]) column)[row] = null;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package org.fwilliams.fwjengine.ecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Despawns and events recorded by an EntitySystem while it runs, applied by the SystemScheduler after the system is done with
+ * every entity. Each range of entities records into its own Commands and the scheduler merges them in entity order, so the
+ * result is the same as running the system on one thread, whichever thread finished first.
+ * @author Francis Williams
+ *
+ */
+public class Commands {
+	private int[] despawns;
+	private int despawnCount;
+	private ArrayList<Object> events;
+	
+	Commands() {
+		this.despawns = new int[16];
+		this.events = new ArrayList<Object>();
+	}
+	
+	/**
+	 * Destroys an entity once the system is done. Destroying an entity twice does it once.
+	 * @param entity The entity.
+	 */
+	public void despawn(int entity) {
+		if(despawnCount == despawns.length) {
+			despawns = Arrays.copyOf(despawns, despawnCount * 2);
+		}
+		despawns[despawnCount++] = entity;
+	}
+	
+	/**
+	 * Sends an event to the scheduler's listeners once the system is done.
+	 * @param event The event.
+	 */
+	public void emit(Object event) {
+		events.add(event);
+	}
+	
+	int getDespawnCount() {
+		return despawnCount;
+	}
+	
+	int getDespawn(int index) {
+		return despawns[index];
+	}
+	
+	ArrayList<Object> getEvents() {
+		return events;
+	}
+	
+	void clear() {
+		despawnCount = 0;
+		events.clear();
+	}
+}
@@ -0,0 +1,136 @@
+package org.fwilliams.fwjengine.ecs;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A kind of component, made of named fields. Each field is stored as its own primitive array in every Chunk that has the
+ * component, so a loop over one field of many entities reads contiguous memory. Fields are added when the type is created
+ * and can't change once an entity has the component.
+ * <br>
+ * Any number of types can exist. Each World numbers the types it uses itself, so one World can use up to World.MAX_TYPES of them.
+ * @author Francis Williams
+ *
+ */
+public class ComponentType {
+	public static final int FLOAT = 0;
+	public static final int INT = 1;
+	public static final int LONG = 2;
+	public static final int OBJECT = 3;
+	
+	private static final AtomicInteger nextIndex = new AtomicInteger();
+	
+	private String name;
+	private int index;
+	private ArrayList<String> fieldNames;
+	private ArrayList<Integer> fieldKinds;
+	private volatile boolean frozen;
+	
+	/**
+	 * Creates a new ComponentType with no fields. A type without fields is a tag, which only changes an entity's archetype.
+	 * @param name The name of the type, for debugging.
+	 */
+	public ComponentType(String name) {
+		this.index = nextIndex.getAndIncrement();
+		this.name = name;
+		this.fieldNames = new ArrayList<String>();
+		this.fieldKinds = new ArrayList<Integer>();
+	}
+	
+	/**
+	 * Adds a float field.
+	 * @param fieldName The name of the field.
+	 * @return This type.
+	 */
+	public ComponentType addFloat(String fieldName) {
+		return addField(fieldName, FLOAT);
+	}
+	
+	/**
+	 * Adds an int field.
+	 * @param fieldName The name of the field.
+	 * @return This type.
+	 */
+	public ComponentType addInt(String fieldName) {
+		return addField(fieldName, INT);
+	}
+	
+	/**
+	 * Adds a long field.
+	 * @param fieldName The name of the field.
+	 * @return This type.
+	 */
+	public ComponentType addLong(String fieldName) {
+		return addField(fieldName, LONG);
+	}
+	
+	/**
+	 * Adds an Object field, for references such as Animations. Object fields aren't contiguous in memory, so keep them out of hot loops.
+	 * @param fieldName The name of the field.
+	 * @return This type.
+	 */
+	public ComponentType addObject(String fieldName) {
+		return addField(fieldName, OBJECT);
+	}
+	
+	private synchronized ComponentType addField(String fieldName, int kind) {
+		if(frozen) {
+			throw new IllegalStateException("Can't add fields to " + name + " once it is in use");
+		}
+		if(fieldNames.contains(fieldName)) {
+			throw new IllegalArgumentException("Duplicate field " + fieldName + " in " + name);
+		}
+		fieldNames.add(fieldName);
+		fieldKinds.add(kind);
+		return this;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Gets a number unique to the type, which Worlds use to look up their own id for it in an array.
+	 */
+	int getIndex() {
+		return index;
+	}
+	
+	public int getFieldCount() {
+		return fieldNames.size();
+	}
+	
+	/**
+	 * Gets the index of a field, to pass to the Chunk and World accessors.
+	 * @param fieldName The name of the field.
+	 * @return The index of the field.
+	 */
+	public int getField(String fieldName) {
+		int index = fieldNames.indexOf(fieldName);
+		if(index < 0) {
+			throw new IllegalArgumentException("No field " + fieldName + " in " + name);
+		}
+		return index;
+	}
+	
+	/**
+	 * Gets the kind of a field.
+	 * @param field The index of the field.
+	 * @return FLOAT, INT, LONG or OBJECT.
+	 */
+	public int getFieldKind(int field) {
+		return fieldKinds.get(field);
+	}
+	
+	/**
+	 * Stops fields from being added, once an archetype has laid out its columns for this type.
+	 */
+	void freeze() {
+		frozen = true;
+	}
+	
+	@Override
+	public String toString() {
+		return name;
+	}
+}
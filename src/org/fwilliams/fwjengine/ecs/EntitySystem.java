@@ -0,0 +1,21 @@
+package org.fwilliams.fwjengine.ecs;
+
+/**
+ * Updates the entities matching a Query, a range of rows of one chunk at a time. Systems added to a SystemScheduler as
+ * parallel are called from several threads at once, so they must only change the fields of the rows they are given and read
+ * nothing other threads write. Anything else they want to happen, such as destroying an entity or telling the game something
+ * happened, goes through the Commands, which are applied in entity order once every range is done.
+ * @author Francis Williams
+ *
+ */
+public interface EntitySystem {
+	/**
+	 * Updates rows start to end - 1 of a chunk.
+	 * @param chunk The chunk.
+	 * @param start The first row.
+	 * @param end The row after the last one.
+	 * @param elapsedTime The time elapsed since the last update.
+	 * @param commands Where to record despawns and events.
+	 */
+	public void process(Chunk chunk, int start, int end, long elapsedTime, Commands commands);
+}
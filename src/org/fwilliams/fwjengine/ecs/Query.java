@@ -0,0 +1,114 @@
+package org.fwilliams.fwjengine.ecs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The entities of a World that have a set of components, and optionally lack others. A query keeps the list of matching
+ * archetypes and only checks archetypes created since it last ran, so iterating visits only the chunks of matching entities.
+ * @author Francis Williams
+ *
+ */
+public class Query {
+	private World world;
+	private long required;
+	private long excluded;
+	private ArrayList<Archetype> matches;
+	private int checked;
+	
+	Query(World world, long required) {
+		this.world = world;
+		this.required = required;
+		this.matches = new ArrayList<Archetype>();
+	}
+	
+	/**
+	 * Leaves out entities that have any of the given components.
+	 * @param types The excluded components.
+	 * @return This query.
+	 */
+	public Query without(ComponentType... types) {
+		for(ComponentType type : types) {
+			excluded |= world.register(type);
+		}
+		matches.clear();
+		checked = 0;
+		return this;
+	}
+	
+	/**
+	 * Calls an action for every non-empty chunk of matching entities. The world's entities can't change during the loop.
+	 * @param action The action.
+	 */
+	public void forEach(ChunkAction action) {
+		refresh();
+		world.beginIteration();
+		try {
+			for(int a = 0; a < matches.size(); a++) {
+				List<Chunk> chunks = matches.get(a).getChunks();
+				for(int c = 0; c < chunks.size(); c++) {
+					Chunk chunk = chunks.get(c);
+					if(chunk.size() > 0) {
+						action.process(chunk);
+					}
+				}
+			}
+		} finally {
+			world.endIteration();
+		}
+	}
+	
+	/**
+	 * Gets the non-empty chunks of matching entities, in the order forEach visits them.
+	 * @return A new list of the chunks.
+	 */
+	public List<Chunk> getChunks() {
+		refresh();
+		ArrayList<Chunk> result = new ArrayList<Chunk>();
+		for(int a = 0; a < matches.size(); a++) {
+			for(Chunk chunk : matches.get(a).getChunks()) {
+				if(chunk.size() > 0) {
+					result.add(chunk);
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Counts the matching entities.
+	 * @return The number of entities.
+	 */
+	public int count() {
+		refresh();
+		int count = 0;
+		for(int a = 0; a < matches.size(); a++) {
+			count += matches.get(a).getEntityCount();
+		}
+		return count;
+	}
+	
+	/**
+	 * Checks the archetypes created since the last call.
+	 */
+	private void refresh() {
+		List<Archetype> archetypes = world.getArchetypeList();
+		for(; checked < archetypes.size(); checked++) {
+			long mask = archetypes.get(checked).getMask();
+			if((mask & required) == required && (mask & excluded) == 0) {
+				matches.add(archetypes.get(checked));
+			}
+		}
+	}
+	
+	/**
+	 * Processes a chunk of entities matching a query.
+	 */
+	public interface ChunkAction {
+		/**
+		 * Processes the rows 0 to chunk.size() - 1 of a chunk.
+		 * @param chunk The chunk.
+		 */
+		public void process(Chunk chunk);
+	}
+}
@@ -0,0 +1,286 @@
+package org.fwilliams.fwjengine.ecs;
+
+import java.awt.Image;
+
+import org.fwilliams.fwjengine.entity.Sprite;
+import org.fwilliams.fwjengine.graphics.Animation;
+import org.fwilliams.fwjengine.graphics.AtlasRegion;
+import org.fwilliams.fwjengine.graphics.SpriteBatch;
+
+/**
+ * The components of a Sprite as an ECS archetype: a POSITION, a VELOCITY and an ANIMATION, which holds a shared Animation
+ * and the entity's own time in it. Games add their own components to sprite entities, and the sprite systems keep working
+ * on them because they query only the components they use: update moves everything with a position and a velocity, and draw
+ * draws everything with a position and an animation.
+ * <br>
+ * update runs the sprite systems on the calling thread; addSystems adds them to a SystemScheduler instead, to run in parallel.
+ * <br>
+ * getSprite returns a Sprite backed by the world, for code written against Sprite's getters and setters.
+ * @author Francis Williams
+ *
+ */
+public class SpriteArchetype {
+	public static final ComponentType POSITION = new ComponentType("Position").addFloat("x").addFloat("y");
+	public static final ComponentType VELOCITY = new ComponentType("Velocity").addFloat("dx").addFloat("dy");
+	public static final ComponentType ANIMATION = new ComponentType("Animation").addObject("animation").addLong("time");
+	
+	public static final int X = 0;
+	public static final int Y = 1;
+	public static final int DX = 0;
+	public static final int DY = 1;
+	public static final int ANIMATION_FIELD = 0;
+	public static final int TIME = 1;
+	
+	private World world;
+	private Query moving;
+	private Query animated;
+	private Query drawable;
+	
+	/**
+	 * Creates the sprite systems for a World.
+	 * @param world The world the sprites live in.
+	 */
+	public SpriteArchetype(World world) {
+		this.world = world;
+		this.moving = world.createQuery(POSITION, VELOCITY);
+		this.animated = world.createQuery(ANIMATION);
+		this.drawable = world.createQuery(POSITION, ANIMATION);
+	}
+	
+	/**
+	 * Creates a sprite entity.
+	 * @param animation The Animation of the sprite, which may be shared with other sprites.
+	 * @param x The horizontal position.
+	 * @param y The vertical position.
+	 * @param dx The horizontal velocity in pixels per millisecond.
+	 * @param dy The vertical velocity in pixels per millisecond.
+	 * @return The entity.
+	 */
+	public int spawn(Animation animation, float x, float y, float dx, float dy) {
+		int entity = world.createEntity(POSITION, VELOCITY, ANIMATION);
+		world.setFloat(entity, POSITION, X, x);
+		world.setFloat(entity, POSITION, Y, y);
+		world.setFloat(entity, VELOCITY, DX, dx);
+		world.setFloat(entity, VELOCITY, DY, dy);
+		world.setObject(entity, ANIMATION, ANIMATION_FIELD, animation);
+		return entity;
+	}
+	
+	/**
+	 * Creates a sprite entity with the position and velocity of an existing Sprite. The animation starts from the beginning.
+	 * @param sprite The Sprite to copy.
+	 * @param animation The Animation of the sprite, which may be shared with other sprites.
+	 * @return The entity.
+	 */
+	public int spawn(Sprite sprite, Animation animation) {
+		return spawn(animation, sprite.getX(), sprite.getY(), sprite.getXVelocity(), sprite.getYVelocity());
+	}
+	
+	/**
+	 * Moves every entity with a position and a velocity, and advances the time of every entity with an animation. Gives
+	 * exactly the same positions as Sprite.update.
+	 * @param elapsedTime The time elapsed since the last update.
+	 */
+	public void update(final long elapsedTime) {
+		moving.forEach(new Query.ChunkAction() {
+			public void process(Chunk chunk) {
+				move(chunk, 0, chunk.size(), elapsedTime);
+			}
+		});
+		animated.forEach(new Query.ChunkAction() {
+			public void process(Chunk chunk) {
+				animate(chunk, 0, chunk.size(), elapsedTime);
+			}
+		});
+	}
+	
+	/**
+	 * Adds the moving and animating systems of update() to a scheduler, as parallel systems.
+	 * @param scheduler A scheduler of the same world.
+	 */
+	public void addSystems(SystemScheduler scheduler) {
+		scheduler.add(moving, new EntitySystem() {
+			public void process(Chunk chunk, int start, int end, long elapsedTime, Commands commands) {
+				move(chunk, start, end, elapsedTime);
+			}
+		}, true);
+		scheduler.add(animated, new EntitySystem() {
+			public void process(Chunk chunk, int start, int end, long elapsedTime, Commands commands) {
+				animate(chunk, start, end, elapsedTime);
+			}
+		}, true);
+	}
+	
+	/**
+	 * Moves the rows from start to end of a chunk with a position and a velocity.
+	 */
+	static void move(Chunk chunk, int start, int end, long elapsedTime) {
+		float t = elapsedTime;
+		float[] x = chunk.getFloats(POSITION, X);
+		float[] y = chunk.getFloats(POSITION, Y);
+		float[] dx = chunk.getFloats(VELOCITY, DX);
+		float[] dy = chunk.getFloats(VELOCITY, DY);
+		for(int i = start; i < end; i++) {
+			x[i] += dx[i] * t;
+		}
+		for(int i = start; i < end; i++) {
+			y[i] += dy[i] * t;
+		}
+	}
+	
+	/**
+	 * Advances the animation time of the rows from start to end of a chunk with an animation.
+	 */
+	static void animate(Chunk chunk, int start, int end, long elapsedTime) {
+		long[] time = chunk.getLongs(ANIMATION, TIME);
+		for(int i = start; i < end; i++) {
+			time[i] += elapsedTime;
+		}
+	}
+	
+	/**
+	 * Draws every entity with a position and an animation at its rounded position.
+	 * @param batch The batch to draw with.
+	 * @param layer The batch layer to draw on.
+	 */
+	public void draw(final SpriteBatch batch, final int layer) {
+		drawable.forEach(new Query.ChunkAction() {
+			public void process(Chunk chunk) {
+				float[] x = chunk.getFloats(POSITION, X);
+				float[] y = chunk.getFloats(POSITION, Y);
+				Object[] animations = chunk.getObjects(ANIMATION, ANIMATION_FIELD);
+				long[] time = chunk.getLongs(ANIMATION, TIME);
+				for(int i = 0; i < chunk.size(); i++) {
+					Animation animation = (Animation) animations[i];
+					if(animation == null) {
+						continue;
+					}
+					AtlasRegion region = animation.getRegion(time[i]);
+					if(region != null) {
+						batch.draw(region, Math.round(x[i]), Math.round(y[i]), layer, null);
+					} else {
+						batch.draw(animation.getImage(time[i]), Math.round(x[i]), Math.round(y[i]), layer);
+					}
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Gets a Sprite that reads and writes a sprite entity. Once the entity is destroyed or loses its position or animation, 
+	 * its getters and setters throw IllegalArgumentException, even after a new entity reuses its index. An entity without a 
+	 * velocity reads as standing still, and setting a non-zero velocity adds a VELOCITY to it, which moves it to another 
+	 * archetype and so throws IllegalStateException while a query or scheduler is iterating.
+	 * @param entity The entity.
+	 * @return A Sprite backed by the world.
+	 */
+	public Sprite getSprite(int entity) {
+		return new EntitySprite(entity);
+	}
+	
+	/**
+	 * A Sprite whose state lives in the world.
+	 */
+	private class EntitySprite extends Sprite {
+		private int entity;
+		
+		private EntitySprite(int entity) {
+			super((Animation) world.getObject(entity, ANIMATION, ANIMATION_FIELD));
+			this.entity = entity;
+		}
+		
+		@Override
+		public void update(long elapsedTime, boolean animate) {
+			if(world.hasComponent(entity, VELOCITY)) {
+				setX(getX() + getXVelocity() * elapsedTime);
+				setY(getY() + getYVelocity() * elapsedTime);
+			}
+			world.setLong(entity, ANIMATION, TIME, world.getLong(entity, ANIMATION, TIME) + elapsedTime);
+		}
+		
+		@Override
+		public float getX() {
+			return world.getFloat(entity, POSITION, X);
+		}
+		
+		@Override
+		public float getY() {
+			return world.getFloat(entity, POSITION, Y);
+		}
+		
+		@Override
+		public void setX(float value) {
+			world.setFloat(entity, POSITION, X, value);
+		}
+		
+		@Override
+		public void setY(float value) {
+			world.setFloat(entity, POSITION, Y, value);
+		}
+		
+		@Override
+		public float getXVelocity() {
+			return world.hasComponent(entity, VELOCITY) ? world.getFloat(entity, VELOCITY, DX) : 0;
+		}
+		
+		@Override
+		public float getYVelocity() {
+			return world.hasComponent(entity, VELOCITY) ? world.getFloat(entity, VELOCITY, DY) : 0;
+		}
+		
+		@Override
+		public void setXVelocity(float value) {
+			setVelocity(DX, value);
+		}
+		
+		@Override
+		public void setYVelocity(float value) {
+			setVelocity(DY, value);
+		}
+		
+		/**
+		 * Sets a field of the velocity, only adding the component if the entity has to start moving.
+		 */
+		private void setVelocity(int field, float value) {
+			if(!world.hasComponent(entity, VELOCITY)) {
+				if(value == 0) {
+					return;
+				}
+				world.addComponent(entity, VELOCITY);
+			}
+			world.setFloat(entity, VELOCITY, field, value);
+		}
+		
+		@Override
+		public int getWidth() {
+			AtlasRegion region = getRegion();
+			if(region != null) {
+				return region.getWidth();
+			}
+			return getImage().getWidth(null);
+		}
+		
+		@Override
+		public int getHeight() {
+			AtlasRegion region = getRegion();
+			if(region != null) {
+				return region.getHeight();
+			}
+			return getImage().getHeight(null);
+		}
+		
+		@Override
+		public Image getImage() {
+			return animation().getImage(world.getLong(entity, ANIMATION, TIME));
+		}
+		
+		@Override
+		public AtlasRegion getRegion() {
+			return animation().getRegion(world.getLong(entity, ANIMATION, TIME));
+		}
+		
+		private Animation animation() {
+			return (Animation) world.getObject(entity, ANIMATION, ANIMATION_FIELD);
+		}
+	}
+}
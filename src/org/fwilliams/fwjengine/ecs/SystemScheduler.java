@@ -0,0 +1,262 @@
+package org.fwilliams.fwjengine.ecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs EntitySystems over a World, one after the other in the order they were added. The entities of a parallel system are
+ * split into ranges of at most the grain size, which are processed on a ForkJoinPool; serial systems run on the calling thread.
+ * <br>
+ * Each range records its despawns and events into its own Commands. Once every range of a system is done, the scheduler
+ * destroys the despawned entities and sends the events to its listeners, in the order of the entities that caused them. The
+ * outcome of an update doesn't depend on the number of threads, the grain size or which range finished first.
+ * @author Francis Williams
+ *
+ */
+public class SystemScheduler {
+	/**
+	 * The default number of entities per task. Small enough to balance the load between threads, large enough that a task
+	 * costs much more than forking it.
+	 */
+	public static final int DEFAULT_GRAIN_SIZE = 256;
+	
+	/**
+	 * Receives the events emitted by systems.
+	 */
+	public interface EventListener {
+		/**
+		 * Called on the thread calling update(), after the system that emitted the event is done.
+		 * @param event The event.
+		 */
+		public void event(Object event);
+	}
+	
+	private World world;
+	private ForkJoinPool pool;
+	private int grainSize;
+	private ArrayList<Entry> systems;
+	private CopyOnWriteArrayList<EventListener> listeners;
+	
+	private Chunk[] rangeChunks;
+	private int[] rangeStarts;
+	private int[] rangeEnds;
+	private ArrayList<Commands> commands;
+	
+	/**
+	 * Creates a new SystemScheduler running parallel systems on the common ForkJoinPool.
+	 * @param world The world whose entities the systems update.
+	 */
+	public SystemScheduler(World world) {
+		this(world, ForkJoinPool.commonPool(), DEFAULT_GRAIN_SIZE);
+	}
+	
+	/**
+	 * Creates a new SystemScheduler.
+	 * @param world The world whose entities the systems update.
+	 * @param pool The pool to run parallel systems on.
+	 * @param grainSize The largest number of entities processed by one task.
+	 */
+	public SystemScheduler(World world, ForkJoinPool pool, int grainSize) {
+		this.world = world;
+		this.pool = pool;
+		this.systems = new ArrayList<Entry>();
+		this.listeners = new CopyOnWriteArrayList<EventListener>();
+		this.rangeChunks = new Chunk[16];
+		this.rangeStarts = new int[16];
+		this.rangeEnds = new int[16];
+		this.commands = new ArrayList<Commands>();
+		setGrainSize(grainSize);
+	}
+	
+	/**
+	 * Sets the largest number of entities processed by one task of a parallel system.
+	 * @param grainSize The grain size.
+	 */
+	public synchronized void setGrainSize(int grainSize) {
+		if(grainSize <= 0) {
+			throw new IllegalArgumentException("Grain size must be positive");
+		}
+		this.grainSize = grainSize;
+	}
+	
+	public synchronized int getGrainSize() {
+		return grainSize;
+	}
+	
+	/**
+	 * Adds a system, run after every system added before it.
+	 * @param query The entities the system updates. Must be a query of the scheduler's world.
+	 * @param system The system.
+	 * @param parallel True if the system is free of side effects outside the rows it is given and its Commands, so its
+	 * ranges can run on several threads at once. False to run it on the thread calling update().
+	 */
+	public synchronized void add(Query query, EntitySystem system, boolean parallel) {
+		systems.add(new Entry(query, system, parallel));
+	}
+	
+	/**
+	 * Removes a system.
+	 * @param system The system.
+	 */
+	public synchronized void remove(EntitySystem system) {
+		for(int i = 0; i < systems.size(); i++) {
+			if(systems.get(i).system == system) {
+				systems.remove(i);
+				return;
+			}
+		}
+	}
+	
+	public void addEventListener(EventListener listener) {
+		listeners.add(listener);
+	}
+	
+	public void removeEventListener(EventListener listener) {
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * Runs every system once, applying each system's despawns and events before the next system runs. If a system throws, 
+	 * the commands it recorded are dropped and the exception is passed on.
+	 * @param elapsedTime The time elapsed since the last update.
+	 */
+	public synchronized void update(long elapsedTime) {
+		for(int i = 0; i < systems.size(); i++) {
+			Entry entry = systems.get(i);
+			int ranges = split(entry.query, entry.parallel ? grainSize : Integer.MAX_VALUE);
+			if(ranges == 0) {
+				continue;
+			}
+			try {
+				world.beginIteration();
+				try {
+					if(entry.parallel && ranges > 1) {
+						pool.invoke(new RangeTask(entry.system, elapsedTime, 0, ranges));
+					} else {
+						for(int r = 0; r < ranges; r++) {
+							process(entry.system, elapsedTime, r);
+						}
+					}
+				} finally {
+					world.endIteration();
+				}
+				merge(ranges);
+			} finally {
+				clear(ranges);
+			}
+		}
+	}
+	
+	/**
+	 * Splits the chunks of a query into ranges of at most grainSize rows, in entity order.
+	 * @return The number of ranges.
+	 */
+	private int split(Query query, int grainSize) {
+		List<Chunk> matching = query.getChunks();
+		int ranges = 0;
+		for(int c = 0; c < matching.size(); c++) {
+			Chunk chunk = matching.get(c);
+			for(int start = 0; start < chunk.size(); start += grainSize) {
+				if(ranges == rangeChunks.length) {
+					rangeChunks = Arrays.copyOf(rangeChunks, ranges * 2);
+					rangeStarts = Arrays.copyOf(rangeStarts, ranges * 2);
+					rangeEnds = Arrays.copyOf(rangeEnds, ranges * 2);
+				}
+				rangeChunks[ranges] = chunk;
+				rangeStarts[ranges] = start;
+				rangeEnds[ranges] = Math.min(chunk.size(), start + grainSize);
+				ranges++;
+			}
+		}
+		while(commands.size() < ranges) {
+			commands.add(new Commands());
+		}
+		return ranges;
+	}
+	
+	private void process(EntitySystem system, long elapsedTime, int range) {
+		system.process(rangeChunks[range], rangeStarts[range], rangeEnds[range], elapsedTime, commands.get(range));
+	}
+	
+	/**
+	 * Applies the commands of every range in range order, which is entity order.
+	 */
+	private void merge(int ranges) {
+		for(int r = 0; r < ranges; r++) {
+			Commands command = commands.get(r);
+			for(int d = 0; d < command.getDespawnCount(); d++) {
+				int entity = command.getDespawn(d);
+				if(world.isAlive(entity)) {
+					world.destroyEntity(entity);
+				}
+			}
+		}
+		for(int r = 0; r < ranges; r++) {
+			Commands command = commands.get(r);
+			ArrayList<Object> events = command.getEvents();
+			for(int e = 0; e < events.size(); e++) {
+				for(EventListener listener : listeners) {
+					listener.event(events.get(e));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Empties the commands of every range and lets go of the chunks, whether or not the system finished.
+	 */
+	private void clear(int ranges) {
+		for(int r = 0; r < ranges; r++) {
+			commands.get(r).clear();
+			rangeChunks[r] = null;
+		}
+	}
+	
+	/**
+	 * Processes a span of ranges, splitting it in half until a single range is left.
+	 */
+	private class RangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private EntitySystem system;
+		private long elapsedTime;
+		private int first;
+		private int last;
+		
+		RangeTask(EntitySystem system, long elapsedTime, int first, int last) {
+			this.system = system;
+			this.elapsedTime = elapsedTime;
+			this.first = first;
+			this.last = last;
+		}
+		
+		@Override
+		protected void compute() {
+			if(last - first == 1) {
+				process(system, elapsedTime, first);
+			} else {
+				int middle = (first + last) >>> 1;
+				invokeAll(new RangeTask(system, elapsedTime, first, middle), new RangeTask(system, elapsedTime, middle, last));
+			}
+		}
+	}
+	
+	/**
+	 * A system with its query.
+	 */
+	private static class Entry {
+		private Query query;
+		private EntitySystem system;
+		private boolean parallel;
+		
+		private Entry(Query query, EntitySystem system, boolean parallel) {
+			this.query = query;
+			this.system = system;
+			this.parallel = parallel;
+		}
+	}
+}
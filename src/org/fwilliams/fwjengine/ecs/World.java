@@ -0,0 +1,369 @@
+package org.fwilliams.fwjengine.ecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Holds entities and their components. An entity is an int id with a set of components; entities with the same set share an
+ * Archetype and are packed into its Chunks. Adding or removing a component moves the entity to the archetype with the new set:
+ * its fields are copied into the last chunk of that archetype, and the last entity of its old archetype fills the row it left,
+ * so both are O(1) apart from allocating a chunk every CHUNK_CAPACITY entities.
+ * <br>
+ * An entity id packs an index into the world's tables with a generation. Indices of destroyed entities are reused by entities 
+ * created later, but with the next generation, so an old id is no longer alive and using it throws IllegalArgumentException 
+ * instead of reaching the new entity. Generations wrap after 128 reuses of an index. Entities can't be created, destroyed or 
+ * change components while a Query is iterating, since that would move rows under the loop.
+ * <br>
+ * Archetypes are identified by a bit mask of their component types. Each world gives the types it uses their bits itself, 
+ * in the order it first sees them, so a world can use up to MAX_TYPES types however many exist in the program.
+ * @author Francis Williams
+ *
+ */
+public class World {
+	/**
+	 * The number of component types a world can use, one per bit of an archetype mask.
+	 */
+	public static final int MAX_TYPES = 64;
+	
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int INDEX_BITS = 24;
+	private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+	private static final int GENERATION_MASK = 0x7f;
+	
+	private HashMap<Long, Archetype> archetypes;
+	private ArrayList<Archetype> archetypeList;
+	private ComponentType[] types;
+	private int typeCount;
+	private int[] typeIds;
+	private Archetype empty;
+	
+	private Chunk[] chunkOf;
+	private int[] rowOf;
+	private int[] generations;
+	private int[] freeEntities;
+	private int freeCount;
+	private int entityLimit;
+	private int entityCount;
+	private int iterating;
+	
+	/**
+	 * Creates a new, empty World.
+	 */
+	public World() {
+		this.archetypes = new HashMap<Long, Archetype>();
+		this.archetypeList = new ArrayList<Archetype>();
+		this.types = new ComponentType[MAX_TYPES];
+		this.typeIds = new int[MAX_TYPES];
+		this.empty = getArchetype(0L);
+		this.chunkOf = new Chunk[INITIAL_CAPACITY];
+		this.rowOf = new int[INITIAL_CAPACITY];
+		this.generations = new int[INITIAL_CAPACITY];
+		this.freeEntities = new int[INITIAL_CAPACITY];
+	}
+	
+	/**
+	 * Creates an entity with components whose fields are all zero or null.
+	 * @param types The components of the entity.
+	 * @return The entity.
+	 */
+	public int createEntity(ComponentType... types) {
+		checkNotIterating();
+		long mask = 0;
+		for(ComponentType type : types) {
+			mask |= register(type);
+		}
+		int index;
+		if(freeCount > 0) {
+			index = freeEntities[--freeCount];
+		} else {
+			if(entityLimit > INDEX_MASK) {
+				throw new IllegalStateException("More than " + (INDEX_MASK + 1) + " entities");
+			}
+			if(entityLimit == chunkOf.length) {
+				chunkOf = Arrays.copyOf(chunkOf, chunkOf.length * 2);
+				rowOf = Arrays.copyOf(rowOf, rowOf.length * 2);
+				generations = Arrays.copyOf(generations, generations.length * 2);
+			}
+			index = entityLimit++;
+		}
+		int entity = generations[index] << INDEX_BITS | index;
+		Archetype archetype = mask == 0 ? empty : getArchetype(mask);
+		Chunk chunk = archetype.getFreeChunk();
+		rowOf[index] = chunk.add(entity);
+		chunkOf[index] = chunk;
+		archetype.added();
+		entityCount++;
+		return entity;
+	}
+	
+	/**
+	 * Destroys an entity and its components.
+	 * @param entity The entity.
+	 */
+	public void destroyEntity(int entity) {
+		checkNotIterating();
+		Chunk chunk = chunk(entity);
+		int index = entity & INDEX_MASK;
+		removeRow(chunk, rowOf[index]);
+		chunkOf[index] = null;
+		// the next entity with this index gets a new id, so this one stops being alive
+		generations[index] = (generations[index] + 1) & GENERATION_MASK;
+		if(freeCount == freeEntities.length) {
+			freeEntities = Arrays.copyOf(freeEntities, freeEntities.length * 2);
+		}
+		freeEntities[freeCount++] = index;
+		entityCount--;
+	}
+	
+	/**
+	 * Checks if an entity exists.
+	 * @param entity The entity.
+	 * @return True if the entity was created and not destroyed.
+	 */
+	public boolean isAlive(int entity) {
+		int index = entity & INDEX_MASK;
+		return entity >= 0 && index < entityLimit && chunkOf[index] != null && generations[index] == entity >>> INDEX_BITS;
+	}
+	
+	/**
+	 * Gets the number of entities.
+	 * @return The number of entities.
+	 */
+	public int getEntityCount() {
+		return entityCount;
+	}
+	
+	/**
+	 * Adds a component to an entity, with every field zero or null. Does nothing if the entity already has it.
+	 * @param entity The entity.
+	 * @param type The component type.
+	 */
+	public void addComponent(int entity, ComponentType type) {
+		checkNotIterating();
+		Archetype archetype = chunk(entity).getArchetype();
+		if(archetype.has(type)) {
+			return;
+		}
+		Archetype target = archetype.getAddEdge(type);
+		if(target == null) {
+			target = getArchetype(archetype.getMask() | register(type));
+			archetype.setAddEdge(type, target);
+			target.setRemoveEdge(type, archetype);
+		}
+		move(entity, target);
+	}
+	
+	/**
+	 * Removes a component from an entity. Does nothing if the entity doesn't have it.
+	 * @param entity The entity.
+	 * @param type The component type.
+	 */
+	public void removeComponent(int entity, ComponentType type) {
+		checkNotIterating();
+		Archetype archetype = chunk(entity).getArchetype();
+		if(!archetype.has(type)) {
+			return;
+		}
+		Archetype target = archetype.getRemoveEdge(type);
+		if(target == null) {
+			target = getArchetype(archetype.getMask() & ~(1L << getId(type)));
+			archetype.setRemoveEdge(type, target);
+			target.setAddEdge(type, archetype);
+		}
+		move(entity, target);
+	}
+	
+	/**
+	 * Checks if an entity has a component.
+	 * @param entity The entity.
+	 * @param type The component type.
+	 * @return True if the entity has the component.
+	 */
+	public boolean hasComponent(int entity, ComponentType type) {
+		return chunk(entity).has(type);
+	}
+	
+	/**
+	 * Gets the archetype of an entity.
+	 * @param entity The entity.
+	 * @return The entity's archetype.
+	 */
+	public Archetype getArchetype(int entity) {
+		return chunk(entity).getArchetype();
+	}
+	
+	/**
+	 * Gets every archetype that had an entity so far, in the order they were created.
+	 * @return An unmodifiable list of the archetypes.
+	 */
+	public List<Archetype> getArchetypes() {
+		return Collections.unmodifiableList(archetypeList);
+	}
+	
+	/**
+	 * Creates a query over the entities that have every one of the given components.
+	 * @param types The required components.
+	 * @return The query.
+	 */
+	public Query createQuery(ComponentType... types) {
+		long mask = 0;
+		for(ComponentType type : types) {
+			mask |= register(type);
+		}
+		return new Query(this, mask);
+	}
+	
+	public float getFloat(int entity, ComponentType type, int field) {
+		return chunk(entity).getFloats(type, field)[row(entity)];
+	}
+	
+	public void setFloat(int entity, ComponentType type, int field, float value) {
+		chunk(entity).getFloats(type, field)[row(entity)] = value;
+	}
+	
+	public int getInt(int entity, ComponentType type, int field) {
+		return chunk(entity).getInts(type, field)[row(entity)];
+	}
+	
+	public void setInt(int entity, ComponentType type, int field, int value) {
+		chunk(entity).getInts(type, field)[row(entity)] = value;
+	}
+	
+	public long getLong(int entity, ComponentType type, int field) {
+		return chunk(entity).getLongs(type, field)[row(entity)];
+	}
+	
+	public void setLong(int entity, ComponentType type, int field, long value) {
+		chunk(entity).getLongs(type, field)[row(entity)] = value;
+	}
+	
+	public Object getObject(int entity, ComponentType type, int field) {
+		return chunk(entity).getObjects(type, field)[row(entity)];
+	}
+	
+	public void setObject(int entity, ComponentType type, int field, Object value) {
+		chunk(entity).getObjects(type, field)[row(entity)] = value;
+	}
+	
+	/**
+	 * Gets the archetypes created so far, for queries to pick up new ones.
+	 */
+	List<Archetype> getArchetypeList() {
+		return archetypeList;
+	}
+	
+	void beginIteration() {
+		iterating++;
+	}
+	
+	void endIteration() {
+		iterating--;
+	}
+	
+	private void checkNotIterating() {
+		if(iterating > 0) {
+			throw new IllegalStateException("Entities can't change while a query is iterating");
+		}
+	}
+	
+	private Chunk chunk(int entity) {
+		if(!isAlive(entity)) {
+			throw new IllegalArgumentException("No entity " + entity);
+		}
+		return chunkOf[entity & INDEX_MASK];
+	}
+	
+	/**
+	 * Gets the row of an entity that chunk(entity) has checked.
+	 */
+	private int row(int entity) {
+		return rowOf[entity & INDEX_MASK];
+	}
+	
+	/**
+	 * Gets the id of a component type in this world.
+	 * @return The id, from 0 to MAX_TYPES - 1, or -1 if the world hasn't used the type yet.
+	 */
+	int getId(ComponentType type) {
+		int index = type.getIndex();
+		// ids are stored plus one, so the zeros of a new array mean unused
+		return index < typeIds.length ? typeIds[index] - 1 : -1;
+	}
+	
+	/**
+	 * Gives a type an id in this world the first time it is used, so archetypes can be built from masks.
+	 * @return The type's bit.
+	 */
+	long register(ComponentType type) {
+		int id = getId(type);
+		if(id < 0) {
+			if(typeCount == MAX_TYPES) {
+				throw new IllegalStateException("More than " + MAX_TYPES + " component types in one world");
+			}
+			int index = type.getIndex();
+			if(index >= typeIds.length) {
+				typeIds = Arrays.copyOf(typeIds, Math.max(typeIds.length * 2, index + 1));
+			}
+			id = typeCount++;
+			typeIds[index] = id + 1;
+			types[id] = type;
+		}
+		return 1L << id;
+	}
+	
+	/**
+	 * Gets the archetype for a mask of registered types, creating it the first time.
+	 */
+	private Archetype getArchetype(long mask) {
+		Archetype archetype = archetypes.get(mask);
+		if(archetype == null) {
+			ComponentType[] sorted = new ComponentType[Long.bitCount(mask)];
+			int count = 0;
+			for(int id = 0; id < typeCount; id++) {
+				if((mask & (1L << id)) != 0) {
+					sorted[count++] = types[id];
+				}
+			}
+			archetype = new Archetype(this, mask, sorted);
+			archetypes.put(mask, archetype);
+			archetypeList.add(archetype);
+		}
+		return archetype;
+	}
+	
+	/**
+	 * Moves an entity to another archetype, copying the components both have.
+	 */
+	private void move(int entity, Archetype target) {
+		int index = entity & INDEX_MASK;
+		Chunk source = chunkOf[index];
+		int sourceRow = rowOf[index];
+		Chunk chunk = target.getFreeChunk();
+		int row = chunk.add(entity);
+		chunk.copyRow(source, sourceRow, row);
+		target.added();
+		removeRow(source, sourceRow);
+		chunkOf[index] = chunk;
+		rowOf[index] = row;
+	}
+	
+	/**
+	 * Removes a row from its archetype by moving the archetype's last entity into it.
+	 */
+	private void removeRow(Chunk chunk, int row) {
+		Archetype archetype = chunk.getArchetype();
+		Chunk last = archetype.getLastChunk();
+		int lastRow = last.size() - 1;
+		if(last != chunk || lastRow != row) {
+			chunk.moveRow(last, lastRow, row);
+			int moved = chunk.getEntity(row) & INDEX_MASK;
+			chunkOf[moved] = chunk;
+			rowOf[moved] = row;
+		}
+		last.removeLast();
+		archetype.removed();
+	}
+}
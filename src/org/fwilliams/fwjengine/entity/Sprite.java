@@ -2,9 +2,11 @@ package org.fwilliams.fwjengine.entity;
 
 
 
+import java.awt.Graphics;
 import java.awt.Image;
 
 import org.fwilliams.fwjengine.graphics.Animation;
+import org.fwilliams.fwjengine.graphics.AtlasRegion;
 
 
 /**
@@ -19,6 +21,8 @@ public class Sprite {
 	private float dx;
 	private float dy;
 	
+	private long deferredTime;
+	
 	/**
 	 * Creates a new Sprite with the specified Animation.
 	 * @param animation The Animation representing the sprite.
@@ -32,7 +36,23 @@ public class Sprite {
 	 * @param elapsedTime The time elapsed since the last call to this method.
 	 */
 	public void update(long elapsedTime) {
-		animation.update(elapsedTime);
+		update(elapsedTime, true);
+	}
+	
+	/**
+	 * Updates the Sprite's position based on the velocity, and the Animation only if asked to. 
+	 * Animation time skipped while not animating is caught up in one step the next time the Sprite is animated, 
+	 * so off-screen sprites cost nothing to animate but are still on the right frame when they come into view.
+	 * @param elapsedTime The time elapsed since the last call to this method.
+	 * @param animate Whether to update the Animation, e.g. only while the Sprite is visible.
+	 */
+	public void update(long elapsedTime, boolean animate) {
+		if(animate) {
+			animation.update(deferredTime + elapsedTime);
+			deferredTime = 0;
+		} else {
+			deferredTime += elapsedTime;
+		}
 		
 		x += dx*elapsedTime;
 		y += dy*elapsedTime;
@@ -75,6 +95,8 @@ public class Sprite {
 	 * @return The angle of the Sprite's velocity.
 	 */
     public double getVelocityDirection() {
+    	float dx = getXVelocity();
+    	float dy = getYVelocity();
     	double theta = Math.abs(Math.atan((double)(dy/dx)));
     	if(dx >= 0 && dy >= 0) {
     		return theta;
@@ -93,6 +115,10 @@ public class Sprite {
 	 * @return The width of the Sprite's current image. 
 	 */
 	public int getWidth() {
+		AtlasRegion region = animation.getCurrentRegion();
+		if(region != null) {
+			return region.getWidth();
+		}
 		return animation.getCurrentImage().getWidth(null);
 	}
 	
@@ -101,6 +127,10 @@ public class Sprite {
 	 * @return The height of the Sprite's current image. 
 	 */
 	public int getHeight() {
+		AtlasRegion region = animation.getCurrentRegion();
+		if(region != null) {
+			return region.getHeight();
+		}
 		return animation.getCurrentImage().getHeight(null);
 	}
 	
@@ -112,6 +142,29 @@ public class Sprite {
 		return animation.getCurrentImage();
 	}
 	
+	/**
+	 * Gets the Sprite's current atlas region.
+	 * @return The Sprite's current region, or null if its current frame is a plain Image.
+	 */
+	public AtlasRegion getRegion() {
+		return animation.getCurrentRegion();
+	}
+	
+	/**
+	 * Draws the Sprite's current frame at its rounded position. Atlas regions are drawn straight from their page.
+	 * @param g The graphics object to draw with.
+	 */
+	public void draw(Graphics g) {
+		int drawX = Math.round(getX());
+		int drawY = Math.round(getY());
+		AtlasRegion region = getRegion();
+		if(region != null) {
+			region.draw(g, drawX, drawY);
+		} else {
+			g.drawImage(getImage(), drawX, drawY, null);
+		}
+	}
+	
 	/**
 	 * Sets the Sprite's horizontal position to the specified value.
 	 * @param value The new horizontal position for the sprite.
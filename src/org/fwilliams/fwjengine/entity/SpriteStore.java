@@ -0,0 +1,489 @@
+package org.fwilliams.fwjengine.entity;
+
+import java.awt.Graphics;
+import java.awt.Image;
+import java.util.Arrays;
+
+import org.fwilliams.fwjengine.graphics.Animation;
+import org.fwilliams.fwjengine.graphics.AtlasRegion;
+import org.fwilliams.fwjengine.graphics.SpriteBatch;
+
+/**
+ * Stores many sprites as parallel arrays of positions, velocities and animation times instead of one object each, so updating
+ * them walks a few contiguous arrays. The update loops are simple enough for the JIT to vectorize.
+ * <br>
+ * Sprites are referred to by int handles, which stay the same while other sprites are added and removed. A handle holds the
+ * index of its entry in the handle table in its low 24 bits and a generation above them. The entry of a removed sprite is
+ * reused by sprites added later with the next generation, so a removed sprite's handle stays invalid until its entry has been
+ * reused 128 times. The stored sprites share their Animations, which only serve as frame
+ * tables: each sprite keeps its own animation time, and its frame is looked up only when it is drawn.
+ * <br>
+ * getSprite returns a Sprite backed by the store, for code written against Sprite's getters and setters.
+ * @author Francis Williams
+ *
+ */
+public class SpriteStore {
+	private static final int DEFAULT_CAPACITY = 1024;
+	private static final int INDEX_BITS = 24;
+	private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+	private static final int GENERATION_MASK = 0x7f;
+	
+	private float[] x;
+	private float[] y;
+	private float[] dx;
+	private float[] dy;
+	private long[] time;
+	private Animation[] animations;
+	private int size;
+	
+	private int[] slots;
+	private int[] generations;
+	private int[] handles;
+	private int[] freeHandles;
+	private int freeCount;
+	private int handleCount;
+	
+	/**
+	 * Creates a new, empty SpriteStore.
+	 */
+	public SpriteStore() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Creates a new, empty SpriteStore.
+	 * @param capacity The number of sprites to allocate room for. The store grows past it if needed.
+	 */
+	public SpriteStore(int capacity) {
+		if(capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		this.x = new float[capacity];
+		this.y = new float[capacity];
+		this.dx = new float[capacity];
+		this.dy = new float[capacity];
+		this.time = new long[capacity];
+		this.animations = new Animation[capacity];
+		this.handles = new int[capacity];
+		this.slots = new int[capacity];
+		this.generations = new int[capacity];
+		this.freeHandles = new int[capacity];
+	}
+	
+	/**
+	 * Adds a sprite at the origin with no velocity.
+	 * @param animation The Animation of the sprite, which may be shared with other sprites.
+	 * @return The handle of the sprite.
+	 */
+	public int add(Animation animation) {
+		if(animation == null) {
+			throw new IllegalArgumentException("Animation must not be null");
+		}
+		if(size == x.length) {
+			grow();
+		}
+		int index;
+		if(freeCount > 0) {
+			index = freeHandles[--freeCount];
+		} else {
+			if(handleCount > INDEX_MASK) {
+				throw new IllegalStateException("More than " + (INDEX_MASK + 1) + " sprites");
+			}
+			if(handleCount == slots.length) {
+				slots = Arrays.copyOf(slots, slots.length * 2);
+				generations = Arrays.copyOf(generations, generations.length * 2);
+			}
+			index = handleCount++;
+		}
+		int handle = generations[index] << INDEX_BITS | index;
+		int slot = size++;
+		x[slot] = 0;
+		y[slot] = 0;
+		dx[slot] = 0;
+		dy[slot] = 0;
+		time[slot] = 0;
+		animations[slot] = animation;
+		handles[slot] = handle;
+		slots[index] = slot;
+		return handle;
+	}
+	
+	/**
+	 * Adds a sprite with the position and velocity of an existing Sprite. The new sprite's animation starts from the beginning.
+	 * @param sprite The Sprite to copy.
+	 * @param animation The Animation of the new sprite, which may be shared with other sprites.
+	 * @return The handle of the sprite.
+	 */
+	public int add(Sprite sprite, Animation animation) {
+		int handle = add(animation);
+		int slot = slot(handle);
+		x[slot] = sprite.getX();
+		y[slot] = sprite.getY();
+		dx[slot] = sprite.getXVelocity();
+		dy[slot] = sprite.getYVelocity();
+		return handle;
+	}
+	
+	/**
+	 * Removes a sprite. The last sprite is moved into its place, so the order of sprites changes.
+	 * @param handle The handle of the sprite.
+	 */
+	public void remove(int handle) {
+		int slot = slot(handle);
+		int last = --size;
+		if(slot != last) {
+			x[slot] = x[last];
+			y[slot] = y[last];
+			dx[slot] = dx[last];
+			dy[slot] = dy[last];
+			time[slot] = time[last];
+			animations[slot] = animations[last];
+			handles[slot] = handles[last];
+			slots[handles[slot] & INDEX_MASK] = slot;
+		}
+		animations[last] = null;
+		release(handle & INDEX_MASK);
+	}
+	
+	/**
+	 * Removes every sprite. Their handles stay invalid like those of removed sprites.
+	 */
+	public void clear() {
+		for(int i = size - 1; i >= 0; i--) {
+			release(handles[i] & INDEX_MASK);
+		}
+		Arrays.fill(animations, 0, size, null);
+		size = 0;
+	}
+	
+	/**
+	 * Checks if a handle refers to a sprite in the store.
+	 * @param handle The handle.
+	 * @return True if the handle refers to a sprite, false if it was never returned by add() or its sprite was removed.
+	 */
+	public boolean contains(int handle) {
+		int index = handle & INDEX_MASK;
+		return handle >= 0 && index < handleCount && slots[index] >= 0 && handles[slots[index]] == handle;
+	}
+	
+	/**
+	 * Gets the number of sprites in the store.
+	 * @return The number of sprites.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Gets the handle of the sprite at an index, for looping over every sprite.
+	 * @param index The index, from 0 to size() - 1.
+	 * @return The handle of the sprite.
+	 */
+	public int getHandle(int index) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+		return handles[index];
+	}
+	
+	/**
+	 * Updates the position of every sprite based on its velocity, and its animation time. Gives exactly the same positions
+	 * as Sprite.update.
+	 * @param elapsedTime The time elapsed since the last call to this method.
+	 */
+	public void update(long elapsedTime) {
+		float t = elapsedTime;
+		float[] x = this.x;
+		float[] y = this.y;
+		float[] dx = this.dx;
+		float[] dy = this.dy;
+		long[] time = this.time;
+		int size = this.size;
+		for(int i = 0; i < size; i++) {
+			x[i] += dx[i] * t;
+		}
+		for(int i = 0; i < size; i++) {
+			y[i] += dy[i] * t;
+		}
+		for(int i = 0; i < size; i++) {
+			time[i] += elapsedTime;
+		}
+	}
+	
+	public float getX(int handle) {
+		return x[slot(handle)];
+	}
+	
+	public float getY(int handle) {
+		return y[slot(handle)];
+	}
+	
+	public void setX(int handle, float value) {
+		x[slot(handle)] = value;
+	}
+	
+	public void setY(int handle, float value) {
+		y[slot(handle)] = value;
+	}
+	
+	public float getXVelocity(int handle) {
+		return dx[slot(handle)];
+	}
+	
+	public float getYVelocity(int handle) {
+		return dy[slot(handle)];
+	}
+	
+	public void setXVelocity(int handle, float value) {
+		dx[slot(handle)] = value;
+	}
+	
+	public void setYVelocity(int handle, float value) {
+		dy[slot(handle)] = value;
+	}
+	
+	/**
+	 * Gets the Animation of a sprite.
+	 * @param handle The handle of the sprite.
+	 * @return The sprite's Animation.
+	 */
+	public Animation getAnimation(int handle) {
+		return animations[slot(handle)];
+	}
+	
+	/**
+	 * Changes the Animation of a sprite and starts it from the beginning.
+	 * @param handle The handle of the sprite.
+	 * @param animation The new Animation.
+	 */
+	public void setAnimation(int handle, Animation animation) {
+		if(animation == null) {
+			throw new IllegalArgumentException("Animation must not be null");
+		}
+		int slot = slot(handle);
+		animations[slot] = animation;
+		time[slot] = 0;
+	}
+	
+	/**
+	 * Gets the time since a sprite's animation started.
+	 * @param handle The handle of the sprite.
+	 * @return The animation time.
+	 */
+	public long getAnimationTime(int handle) {
+		return time[slot(handle)];
+	}
+	
+	/**
+	 * Gets a sprite's current image.
+	 * @param handle The handle of the sprite.
+	 * @return The current image.
+	 */
+	public Image getImage(int handle) {
+		int slot = slot(handle);
+		return animations[slot].getImage(time[slot]);
+	}
+	
+	/**
+	 * Gets a sprite's current atlas region.
+	 * @param handle The handle of the sprite.
+	 * @return The current region, or null if the current frame is a plain Image.
+	 */
+	public AtlasRegion getRegion(int handle) {
+		int slot = slot(handle);
+		return animations[slot].getRegion(time[slot]);
+	}
+	
+	public int getWidth(int handle) {
+		AtlasRegion region = getRegion(handle);
+		if(region != null) {
+			return region.getWidth();
+		}
+		return getImage(handle).getWidth(null);
+	}
+	
+	public int getHeight(int handle) {
+		AtlasRegion region = getRegion(handle);
+		if(region != null) {
+			return region.getHeight();
+		}
+		return getImage(handle).getHeight(null);
+	}
+	
+	/**
+	 * Gets a Sprite that reads and writes a stored sprite. Updating it updates only that sprite.
+	 * Once the sprite is removed, the Sprite's methods throw IllegalArgumentException, even after its handle entry is reused.
+	 * @param handle The handle of the sprite.
+	 * @return A Sprite backed by the store.
+	 */
+	public Sprite getSprite(int handle) {
+		slot(handle);
+		return new StoredSprite(handle);
+	}
+	
+	/**
+	 * Draws every sprite at its rounded position.
+	 * @param g The graphics object to draw with.
+	 */
+	public void draw(Graphics g) {
+		for(int i = 0; i < size; i++) {
+			int drawX = Math.round(x[i]);
+			int drawY = Math.round(y[i]);
+			AtlasRegion region = animations[i].getRegion(time[i]);
+			if(region != null) {
+				region.draw(g, drawX, drawY);
+			} else {
+				g.drawImage(animations[i].getImage(time[i]), drawX, drawY, null);
+			}
+		}
+	}
+	
+	/**
+	 * Draws the sprites that overlap a rectangle of the world, e.g. a Camera's viewport, moved so the rectangle's top left
+	 * corner is drawn at the origin. Frames are only looked up for sprites that may be visible.
+	 * @param batch The batch to draw with.
+	 * @param layer The batch layer to draw on.
+	 * @param left The left edge of the rectangle.
+	 * @param top The top edge of the rectangle.
+	 * @param width The width of the rectangle.
+	 * @param height The height of the rectangle.
+	 */
+	public void draw(SpriteBatch batch, int layer, float left, float top, int width, int height) {
+		float right = left + width;
+		float bottom = top + height;
+		int scrollX = Math.round(left);
+		int scrollY = Math.round(top);
+		for(int i = 0; i < size; i++) {
+			float sx = x[i];
+			float sy = y[i];
+			if(sx >= right || sy >= bottom) {
+				continue;
+			}
+			AtlasRegion region = animations[i].getRegion(time[i]);
+			if(region != null) {
+				if(sx + region.getWidth() > left && sy + region.getHeight() > top) {
+					batch.draw(region, Math.round(sx) - scrollX, Math.round(sy) - scrollY, layer, null);
+				}
+			} else {
+				Image image = animations[i].getImage(time[i]);
+				if(sx + image.getWidth(null) > left && sy + image.getHeight(null) > top) {
+					batch.draw(image, Math.round(sx) - scrollX, Math.round(sy) - scrollY, layer);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Finds the slot of a handle, failing if it was removed.
+	 */
+	private int slot(int handle) {
+		if(!contains(handle)) {
+			throw new IllegalArgumentException("No sprite with handle " + handle);
+		}
+		return slots[handle & INDEX_MASK];
+	}
+	
+	/**
+	 * Frees the handle table entry of a removed sprite for reuse, with the next generation so its old handle stays invalid.
+	 */
+	private void release(int index) {
+		slots[index] = -1;
+		generations[index] = (generations[index] + 1) & GENERATION_MASK;
+		if(freeCount == freeHandles.length) {
+			freeHandles = Arrays.copyOf(freeHandles, freeHandles.length * 2);
+		}
+		freeHandles[freeCount++] = index;
+	}
+	
+	private void grow() {
+		int capacity = x.length * 2;
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		dx = Arrays.copyOf(dx, capacity);
+		dy = Arrays.copyOf(dy, capacity);
+		time = Arrays.copyOf(time, capacity);
+		animations = Arrays.copyOf(animations, capacity);
+		handles = Arrays.copyOf(handles, capacity);
+	}
+	
+	/**
+	 * A Sprite whose state lives in the store.
+	 */
+	private class StoredSprite extends Sprite {
+		private int handle;
+		
+		private StoredSprite(int handle) {
+			super(getAnimation(handle));
+			this.handle = handle;
+		}
+		
+		@Override
+		public void update(long elapsedTime, boolean animate) {
+			// the animation time is only read when drawing, so there is nothing to defer
+			int slot = slot(handle);
+			x[slot] += dx[slot] * elapsedTime;
+			y[slot] += dy[slot] * elapsedTime;
+			time[slot] += elapsedTime;
+		}
+		
+		@Override
+		public float getX() {
+			return SpriteStore.this.getX(handle);
+		}
+		
+		@Override
+		public float getY() {
+			return SpriteStore.this.getY(handle);
+		}
+		
+		@Override
+		public void setX(float value) {
+			SpriteStore.this.setX(handle, value);
+		}
+		
+		@Override
+		public void setY(float value) {
+			SpriteStore.this.setY(handle, value);
+		}
+		
+		@Override
+		public float getXVelocity() {
+			return SpriteStore.this.getXVelocity(handle);
+		}
+		
+		@Override
+		public float getYVelocity() {
+			return SpriteStore.this.getYVelocity(handle);
+		}
+		
+		@Override
+		public void setXVelocity(float value) {
+			SpriteStore.this.setXVelocity(handle, value);
+		}
+		
+		@Override
+		public void setYVelocity(float value) {
+			SpriteStore.this.setYVelocity(handle, value);
+		}
+		
+		@Override
+		public int getWidth() {
+			return SpriteStore.this.getWidth(handle);
+		}
+		
+		@Override
+		public int getHeight() {
+			return SpriteStore.this.getHeight(handle);
+		}
+		
+		@Override
+		public Image getImage() {
+			return SpriteStore.this.getImage(handle);
+		}
+		
+		@Override
+		public AtlasRegion getRegion() {
+			return SpriteStore.this.getRegion(handle);
+		}
+	}
+}
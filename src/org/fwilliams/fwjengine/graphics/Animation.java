@@ -28,8 +28,14 @@ public class Animation {
 	 */
 	public Animation clone() {
 		Animation clone = new Animation();
+		long previousEnd = 0;
 		for(AnimationFrame f : this.frames) {
-			clone.addFrame(f.image, f.duration);
+			if(f.region != null) {
+				clone.addFrame(f.region, f.duration - previousEnd);
+			} else {
+				clone.addFrame(f.image, f.duration - previousEnd);
+			}
+			previousEnd = f.duration;
 		}
 		return clone;
 	}
@@ -45,17 +51,79 @@ public class Animation {
 		
 	}
 	
+	/**
+	 * Adds a new frame to the animation that shows a region of a TextureAtlas.
+	 * @param region The atlas region to be added.
+	 * @param duration The duration this region should be displayed for in the animation.
+	 */
+	public synchronized void addFrame(AtlasRegion region, long duration) {
+		this.totalDuration += duration;
+		this.frames.add(new AnimationFrame(region, this.totalDuration));
+	}
+	
 	/**
 	 * Gets the current Image of the Animation.
 	 * @return The Animation's current Image.
 	 */
 	public synchronized Image getCurrentImage() {
 		if(this.frames.size() != 0) {
-			return (Image) this.frames.get(this.currentFrameIndex).image;
+			AnimationFrame frame = this.frames.get(this.currentFrameIndex);
+			if(frame.region != null) {
+				return frame.region.getImage();
+			}
+			return (Image) frame.image;
+		}
+		return null;
+	}
+	
+	/**
+	 * Gets the current atlas region of the Animation.
+	 * @return The Animation's current region, or null if the current frame is a plain Image.
+	 */
+	public synchronized AtlasRegion getCurrentRegion() {
+		if(this.frames.size() != 0) {
+			return this.frames.get(this.currentFrameIndex).region;
 		}
 		return null;
 	}
 
+	/**
+	 * Gets the Image of the Animation at a point in time, without changing the Animation's own time. 
+	 * Lets many sprites share one Animation and keep only their own times.
+	 * @param animationTime The time since the start of the Animation, which may be longer than the Animation.
+	 * @return The Image at that time.
+	 */
+	public synchronized Image getImage(long animationTime) {
+		if(this.frames.size() != 0) {
+			AnimationFrame frame = this.frames.get(getFrameIndex(animationTime));
+			if(frame.region != null) {
+				return frame.region.getImage();
+			}
+			return frame.image;
+		}
+		return null;
+	}
+	
+	/**
+	 * Gets the atlas region of the Animation at a point in time, without changing the Animation's own time.
+	 * @param animationTime The time since the start of the Animation, which may be longer than the Animation.
+	 * @return The region at that time, or null if the frame at that time is a plain Image.
+	 */
+	public synchronized AtlasRegion getRegion(long animationTime) {
+		if(this.frames.size() != 0) {
+			return this.frames.get(getFrameIndex(animationTime)).region;
+		}
+		return null;
+	}
+	
+	/**
+	 * Gets the total duration of the Animation.
+	 * @return The sum of the durations of every frame.
+	 */
+	public synchronized long getDuration() {
+		return totalDuration;
+	}
+	
 	/**
 	 * Updates the current frame based on the elapsed time.
 	 * @param elapsedTime The elapsed time since the last call to this method.
@@ -83,6 +151,29 @@ public class Animation {
 		return this.frames.get(index);
 	}
 	
+	/**
+	 * Finds the frame shown at a point in time, the same one update() would reach after that much time.
+	 * @param animationTime The time since the start of the Animation.
+	 * @return The zero-based frame index.
+	 */
+	private int getFrameIndex(long animationTime) {
+		if(frames.size() <= 1 || totalDuration <= 0) {
+			return 0;
+		}
+		long time = animationTime % totalDuration;
+		int low = 0;
+		int high = frames.size() - 1;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(time > frames.get(middle).duration) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+	
 	/**
 	 * Resets the the animation.
 	 */
@@ -92,17 +183,23 @@ public class Animation {
 	}
 	
 	/**
-	 * A single animation frame. Has an image and a duration for which the frame should be displayed for.
+	 * A single animation frame. Has an image or an atlas region and a duration for which the frame should be displayed for.
 	 * @author Francis Williams
 	 */
 	private class AnimationFrame {
 		long duration;
 		Image image;
+		AtlasRegion region;
 		
 		public AnimationFrame(Image img, long duration) {
 			this.image = img;
 			this.duration = duration;
 		}
+		
+		public AnimationFrame(AtlasRegion region, long duration) {
+			this.region = region;
+			this.duration = duration;
+		}
 	}
 	
 }
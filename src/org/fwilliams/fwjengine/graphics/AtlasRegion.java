@@ -0,0 +1,97 @@
+package org.fwilliams.fwjengine.graphics;
+
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+
+/**
+ * A rectangle of a TextureAtlas page holding a single image. Drawing a region draws part of the page, 
+ * so every region on a page shares the same image in memory.
+ * @author Francis Williams
+ *
+ */
+public class AtlasRegion {
+	private BufferedImage page;
+	private int x;
+	private int y;
+	private int width;
+	private int height;
+	private BufferedImage image;
+	
+	/**
+	 * Creates a new region of a page.
+	 * @param page The page image the region is on.
+	 * @param x The horizontal position of the region on the page.
+	 * @param y The vertical position of the region on the page.
+	 * @param width The width of the region.
+	 * @param height The height of the region.
+	 */
+	public AtlasRegion(BufferedImage page, int x, int y, int width, int height) {
+		this.page = page;
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+	}
+	
+	/**
+	 * Draws the region with its top left corner at the specified position.
+	 * @param g The graphics object to draw with.
+	 * @param dx The horizontal position to draw at.
+	 * @param dy The vertical position to draw at.
+	 */
+	public void draw(Graphics g, int dx, int dy) {
+		g.drawImage(page, dx, dy, dx + width, dy + height, x, y, x + width, y + height, null);
+	}
+	
+	/**
+	 * Gets the region as an image of its own. The image shares its pixels with the page.
+	 * @return An image of the region.
+	 */
+	public synchronized Image getImage() {
+		if(image == null) {
+			image = page.getSubimage(x, y, width, height);
+		}
+		return image;
+	}
+	
+	/**
+	 * Gets the page image the region is on.
+	 * @return The page image.
+	 */
+	public BufferedImage getPage() {
+		return page;
+	}
+	
+	/**
+	 * Gets the horizontal position of the region on its page.
+	 * @return The horizontal position of the region.
+	 */
+	public int getX() {
+		return x;
+	}
+	
+	/**
+	 * Gets the vertical position of the region on its page.
+	 * @return The vertical position of the region.
+	 */
+	public int getY() {
+		return y;
+	}
+	
+	/**
+	 * Gets the width of the region.
+	 * @return The width of the region.
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Gets the height of the region.
+	 * @return The height of the region.
+	 */
+	public int getHeight() {
+		return height;
+	}
+}
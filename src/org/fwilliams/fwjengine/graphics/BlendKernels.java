@@ -0,0 +1,95 @@
+package org.fwilliams.fwjengine.graphics;
+
+/**
+ * Blends rows of premultiplied ARGB pixels into other rows. These are the innermost loops of software compositing.
+ * <br>
+ * getInstance() returns kernels built on the jdk.incubator.vector API, which blend many pixels per instruction, 
+ * when they were compiled from src-vector and the module is available (run with --add-modules jdk.incubator.vector), 
+ * and plain scalar kernels otherwise.
+ * Both produce exactly the same pixels.
+ * @author Francis Williams
+ *
+ */
+public abstract class BlendKernels {
+	/**
+	 * Set this system property to false to use the scalar kernels even when the Vector API is available.
+	 */
+	public static final String VECTOR_PROPERTY = "fwjengine.vector";
+	
+	private static final BlendKernels SCALAR = new ScalarBlendKernels();
+	private static final BlendKernels VECTOR = loadVectorKernels();
+	
+	/**
+	 * Gets the fastest kernels available.
+	 * @return The vector kernels if available and not disabled with the fwjengine.vector property, otherwise the scalar kernels.
+	 */
+	public static BlendKernels getInstance() {
+		if(VECTOR != null && !"false".equals(System.getProperty(VECTOR_PROPERTY))) {
+			return VECTOR;
+		}
+		return SCALAR;
+	}
+	
+	/**
+	 * Gets the scalar kernels, which work everywhere.
+	 * @return The scalar kernels.
+	 */
+	public static BlendKernels getScalar() {
+		return SCALAR;
+	}
+	
+	/**
+	 * Gets the kernels built on the Vector API.
+	 * @return The vector kernels, or null if they weren't compiled or the jdk.incubator.vector module is not available.
+	 */
+	public static BlendKernels getVector() {
+		return VECTOR;
+	}
+	
+	private static BlendKernels loadVectorKernels() {
+		try {
+			return (BlendKernels) Class.forName(BlendKernels.class.getPackage().getName() + ".VectorBlendKernels")
+				.getDeclaredConstructor().newInstance();
+		} catch(Exception | LinkageError e) {
+			/*Fail Silently - src-vector wasn't compiled or jdk.incubator.vector isn't available, the scalar kernels are used*/
+			return null;
+		}
+	}
+	
+	/**
+	 * Gets a short name of the kernels for logging and benchmarks.
+	 * @return The name of the kernels.
+	 */
+	public abstract String getName();
+	
+	/**
+	 * Blends source pixels over destination pixels: dst = src + dst * (1 - srcAlpha).
+	 * @param src The source pixels.
+	 * @param srcIndex The index of the first source pixel.
+	 * @param dst The destination pixels.
+	 * @param dstIndex The index of the first destination pixel.
+	 * @param length The number of pixels to blend.
+	 */
+	public abstract void srcOver(int[] src, int srcIndex, int[] dst, int dstIndex, int length);
+	
+	/**
+	 * Adds source pixels to destination pixels, clamping every channel to 255: dst = min(src + dst, 1).
+	 * @param src The source pixels.
+	 * @param srcIndex The index of the first source pixel.
+	 * @param dst The destination pixels.
+	 * @param dstIndex The index of the first destination pixel.
+	 * @param length The number of pixels to blend.
+	 */
+	public abstract void add(int[] src, int srcIndex, int[] dst, int dstIndex, int length);
+	
+	/**
+	 * Multiplies source pixels with destination pixels. Where either pixel is transparent the other shows through: 
+	 * dst = src * dst + src * (1 - dstAlpha) + dst * (1 - srcAlpha), for the color and alpha channels alike.
+	 * @param src The source pixels.
+	 * @param srcIndex The index of the first source pixel.
+	 * @param dst The destination pixels.
+	 * @param dstIndex The index of the first destination pixel.
+	 * @param length The number of pixels to blend.
+	 */
+	public abstract void multiply(int[] src, int srcIndex, int[] dst, int dstIndex, int length);
+}
@@ -0,0 +1,264 @@
+package org.fwilliams.fwjengine.graphics;
+
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.fwilliams.fwjengine.entity.Sprite;
+
+/**
+ * Keeps track of the parts of the screen that changed since the last frame so only those parts have to be redrawn and shown.
+ * Every frame, call track() for each Sprite that is drawn. The old and new bounds of every Sprite that moved or changed image 
+ * are marked as dirty. restoreBackground() then redraws the cached background under the dirty regions only and clips drawing to them, 
+ * after which the Sprites can be drawn as usual. When the tracker is set on the ScreenManager, only the dirty regions are copied to the screen.
+ * <br>
+ * Overlapping regions are merged. When the dirty regions cover more than half the screen the whole screen is repainted instead.
+ * @author Francis Williams
+ *
+ */
+public class DirtyRegionTracker {
+	private int width;
+	private int height;
+	private Image background;
+	private ArrayList<Rectangle> regions;
+	private ArrayList<Rectangle> previousRegions;
+	private IdentityHashMap<Sprite, TrackedBounds> tracked;
+	private long dirtyArea;
+	private boolean fullRepaint;
+	private boolean previousFullRepaint;
+	
+	/**
+	 * Creates a new tracker for a screen of the specified size. The first frame is always fully repainted.
+	 * @param width The width of the screen.
+	 * @param height The height of the screen.
+	 */
+	public DirtyRegionTracker(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.regions = new ArrayList<Rectangle>();
+		this.previousRegions = new ArrayList<Rectangle>();
+		this.tracked = new IdentityHashMap<Sprite, TrackedBounds>();
+		this.fullRepaint = true;
+		this.previousFullRepaint = true;
+	}
+	
+	/**
+	 * Sets the background restored under dirty regions. Marks the whole screen as dirty.
+	 * @param background The background image, drawn at 0, 0. If null the dirty regions are filled with the Graphics' color.
+	 */
+	public void setBackground(Image background) {
+		this.background = background;
+		invalidateAll();
+	}
+	
+	/**
+	 * Gets the background restored under dirty regions.
+	 * @return The background image.
+	 */
+	public Image getBackground() {
+		return background;
+	}
+	
+	/**
+	 * Marks the old and new bounds of the Sprite as dirty if it moved or its image changed since it was last tracked. 
+	 * The bounds are those of the Sprite's image drawn at its rounded position.
+	 * @param sprite The Sprite to track.
+	 */
+	public void track(Sprite sprite) {
+		track(sprite, 0);
+	}
+	
+	/**
+	 * Marks the old and new bounds of the Sprite as dirty if it moved or its image changed since it was last tracked.
+	 * @param sprite The Sprite to track.
+	 * @param margin Extra pixels around the Sprite's image that are drawn to, e.g. for a rotated Sprite.
+	 */
+	public void track(Sprite sprite, int margin) {
+		Image image = sprite.getImage();
+		int x = Math.round(sprite.getX()) - margin;
+		int y = Math.round(sprite.getY()) - margin;
+		int w = sprite.getWidth() + 2 * margin;
+		int h = sprite.getHeight() + 2 * margin;
+		
+		TrackedBounds bounds = tracked.get(sprite);
+		if(bounds == null) {
+			bounds = new TrackedBounds();
+			tracked.put(sprite, bounds);
+		} else if(bounds.image == image && bounds.x == x && bounds.y == y && bounds.width == w && bounds.height == h) {
+			return;
+		} else {
+			add(bounds.x, bounds.y, bounds.width, bounds.height);
+		}
+		add(x, y, w, h);
+		bounds.set(image, x, y, w, h);
+	}
+	
+	/**
+	 * Stops tracking the Sprite and marks its last bounds as dirty so it gets erased.
+	 * @param sprite The Sprite to stop tracking.
+	 */
+	public void remove(Sprite sprite) {
+		TrackedBounds bounds = tracked.remove(sprite);
+		if(bounds != null) {
+			add(bounds.x, bounds.y, bounds.width, bounds.height);
+		}
+	}
+	
+	/**
+	 * Marks a rectangle as dirty. The rectangle is clipped to the screen and merged with any dirty region it overlaps.
+	 * @param x The horizontal position of the rectangle.
+	 * @param y The vertical position of the rectangle.
+	 * @param w The width of the rectangle.
+	 * @param h The height of the rectangle.
+	 */
+	public void add(int x, int y, int w, int h) {
+		if(fullRepaint) {
+			return;
+		}
+		Rectangle region = new Rectangle(x, y, w, h).intersection(new Rectangle(0, 0, width, height));
+		if(region.isEmpty()) {
+			return;
+		}
+		
+		// merge with overlapping regions until nothing overlaps
+		boolean merged = true;
+		while(merged) {
+			merged = false;
+			for(int i=0; i<regions.size(); i++) {
+				Rectangle other = regions.get(i);
+				if(other.intersects(region)) {
+					dirtyArea -= area(other);
+					region = region.union(other);
+					regions.remove(i);
+					merged = true;
+					break;
+				}
+			}
+		}
+		regions.add(region);
+		dirtyArea += area(region);
+		
+		if(dirtyArea * 2 > (long) width * height) {
+			invalidateAll();
+		}
+	}
+	
+	/**
+	 * Marks the whole screen as dirty for this frame.
+	 */
+	public void invalidateAll() {
+		fullRepaint = true;
+		regions.clear();
+		dirtyArea = 0;
+	}
+	
+	/**
+	 * Returns true if the whole screen has to be repainted this frame.
+	 * @return Whether or not the whole screen is dirty.
+	 */
+	public boolean isFullRepaint() {
+		return fullRepaint;
+	}
+	
+	/**
+	 * Gets the dirty regions of the current frame. If the whole screen is dirty this is a single rectangle covering the screen.
+	 * @return The dirty regions of the current frame.
+	 */
+	public List<Rectangle> getRegions() {
+		if(fullRepaint) {
+			ArrayList<Rectangle> screen = new ArrayList<Rectangle>(1);
+			screen.add(new Rectangle(0, 0, width, height));
+			return screen;
+		}
+		return regions;
+	}
+	
+	/**
+	 * Gets the dirty regions of the previous frame. With two alternating buffers these must be shown again to bring the 
+	 * other buffer up to date.
+	 * @return The dirty regions of the previous frame.
+	 */
+	public List<Rectangle> getPreviousRegions() {
+		if(previousFullRepaint) {
+			ArrayList<Rectangle> screen = new ArrayList<Rectangle>(1);
+			screen.add(new Rectangle(0, 0, width, height));
+			return screen;
+		}
+		return previousRegions;
+	}
+	
+	/**
+	 * Redraws the background in every dirty region, erasing whatever was drawn there last frame, and clips the graphics object 
+	 * to the dirty regions. Sprites drawn afterwards only touch pixels that were restored, so translucent Sprites that did not move 
+	 * are not drawn over themselves.
+	 * @param g The graphics object to draw with.
+	 */
+	public void restoreBackground(Graphics g) {
+		for(Rectangle r : getRegions()) {
+			if(background != null) {
+				g.drawImage(background, r.x, r.y, r.x + r.width, r.y + r.height, r.x, r.y, r.x + r.width, r.y + r.height, null);
+			} else {
+				g.fillRect(r.x, r.y, r.width, r.height);
+			}
+		}
+		clip(g);
+	}
+	
+	/**
+	 * Clips the graphics object to the dirty regions of the current frame.
+	 * @param g The graphics object to clip.
+	 */
+	public void clip(Graphics g) {
+		if(fullRepaint) {
+			g.setClip(0, 0, width, height);
+			return;
+		}
+		// The regions never overlap, so a path of rectangles describes their union.
+		Path2D.Float shape = new Path2D.Float();
+		for(Rectangle r : regions) {
+			shape.append(r, false);
+		}
+		g.setClip(shape);
+	}
+	
+	/**
+	 * Ends the frame. The current regions become the previous regions and the next frame starts clean. 
+	 * The ScreenManager calls this after showing a frame.
+	 */
+	public void endFrame() {
+		ArrayList<Rectangle> swap = previousRegions;
+		previousRegions = regions;
+		regions = swap;
+		regions.clear();
+		previousFullRepaint = fullRepaint;
+		fullRepaint = false;
+		dirtyArea = 0;
+	}
+	
+	private static long area(Rectangle r) {
+		return (long) r.width * r.height;
+	}
+	
+	/**
+	 * The image and bounds a Sprite was drawn with when it was last tracked.
+	 */
+	private static class TrackedBounds {
+		Image image;
+		int x;
+		int y;
+		int width;
+		int height;
+		
+		void set(Image image, int x, int y, int width, int height) {
+			this.image = image;
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package org.fwilliams.fwjengine.graphics;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Draws a frame with SoftwareRenderers on many cores at once. The frame is split into horizontal bands and the Painter 
+ * is called once per band on a ForkJoinPool worker, with a renderer clipped to the band, so every sprite is only filled 
+ * where it overlaps the band. composite() returns once every band is drawn, before the frame is shown.
+ * <br>
+ * Bands never share pixels, so no locking is needed and fill-heavy scenes should scale with the number of cores, though 
+ * every band still walks the whole scene and clips it. The scaling hasn't been measured; banded output is pixel-identical 
+ * to drawing the frame on one thread. The Painter is called from several threads at once and must only read game state, 
+ * never change it.
+ * @author Francis Williams
+ *
+ */
+public class ParallelCompositor {
+	/**
+	 * The number of bands per thread of the pool, when not set explicitly. More bands than threads balance the load 
+	 * when some parts of the frame are busier than others.
+	 */
+	public static final int BANDS_PER_THREAD = 4;
+	
+	/**
+	 * Draws part of a frame.
+	 */
+	public interface Painter {
+		/**
+		 * Draws everything in the frame with a renderer clipped to one band. Called once per band, from several threads at once.
+		 * @param renderer The renderer to draw with, only drawing inside its clip.
+		 */
+		public void paint(SoftwareRenderer renderer);
+	}
+	
+	private ForkJoinPool pool;
+	private int bandCount;
+	private BufferedImage target;
+	private SoftwareRenderer[] renderers;
+	
+	/**
+	 * Creates a new ParallelCompositor drawing on the common ForkJoinPool.
+	 */
+	public ParallelCompositor() {
+		this(ForkJoinPool.commonPool(), 0);
+	}
+	
+	/**
+	 * Creates a new ParallelCompositor.
+	 * @param pool The pool to draw bands on.
+	 * @param bandCount The number of bands to split frames into, or 0 for BANDS_PER_THREAD bands per thread of the pool.
+	 */
+	public ParallelCompositor(ForkJoinPool pool, int bandCount) {
+		if(bandCount < 0) {
+			throw new IllegalArgumentException("Band count must not be negative");
+		}
+		this.pool = pool;
+		this.bandCount = bandCount > 0 ? bandCount : pool.getParallelism() * BANDS_PER_THREAD;
+	}
+	
+	/**
+	 * Gets the number of bands frames are split into.
+	 * @return The number of bands.
+	 */
+	public int getBandCount() {
+		return bandCount;
+	}
+	
+	/**
+	 * Draws a frame into an image, one band per task, and waits for every band to be drawn.
+	 * @param target The image to draw into. Must be TYPE_INT_ARGB_PRE or TYPE_INT_RGB, like the target of a SoftwareRenderer.
+	 * @param painter Draws the frame.
+	 */
+	public synchronized void composite(BufferedImage target, Painter painter) {
+		if(target != this.target) {
+			int bands = Math.max(1, Math.min(bandCount, target.getHeight()));
+			renderers = new SoftwareRenderer[bands];
+			for(int i = 0; i < bands; i++) {
+				renderers[i] = new SoftwareRenderer(target);
+			}
+			this.target = target;
+		}
+		
+		int height = target.getHeight();
+		for(int i = 0; i < renderers.length; i++) {
+			int top = height * i / renderers.length;
+			int bottom = height * (i + 1) / renderers.length;
+			renderers[i].setClip(0, top, target.getWidth(), bottom - top);
+			renderers[i].setBlendMode(SoftwareRenderer.BLEND_SRC_OVER);
+		}
+		pool.invoke(new BandTask(painter, 0, renderers.length));
+	}
+	
+	/**
+	 * Draws a range of bands, splitting the range in half until a single band is left.
+	 */
+	private class BandTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private Painter painter;
+		private int first;
+		private int last;
+		
+		BandTask(Painter painter, int first, int last) {
+			this.painter = painter;
+			this.first = first;
+			this.last = last;
+		}
+		
+		@Override
+		protected void compute() {
+			if(last - first == 1) {
+				painter.paint(renderers[first]);
+			} else {
+				int middle = (first + last) >>> 1;
+				invokeAll(new BandTask(painter, first, middle), new BandTask(painter, middle, last));
+			}
+		}
+	}
+}
@@ -0,0 +1,384 @@
+package org.fwilliams.fwjengine.graphics;
+
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.geom.AffineTransform;
+import java.util.Arrays;
+
+/**
+ * A display list: draw calls recorded as compact commands to be replayed onto a Graphics2D later, possibly on another thread. 
+ * Recording never touches AWT, so a frame can be recorded on the update thread while the render thread draws the previous one. 
+ * A buffer that isn't cleared can be replayed every frame, e.g. for a static layer, and buffers can call each other.
+ * <br>
+ * Commands are stored as opcodes and arguments in a reusable int array, with floats stored as their bits, and the images, strings and 
+ * other objects they refer to in a parallel Object array. Once the arrays have grown to the largest frame, recording allocates nothing.
+ * <br>
+ * Transforms, colors, fonts and composites set by the commands apply from that command on and are undone at the end of replay().
+ * @author Francis Williams
+ *
+ */
+public class RenderCommandBuffer {
+	/**
+	 * The deepest buffers can call each other. Deeper calls are taken to be a cycle, e.g. A calling B calling A.
+	 */
+	public static final int MAX_CALL_DEPTH = 64;
+	
+	private static final int DRAW_IMAGE = 1;
+	private static final int DRAW_IMAGE_REGION = 2;
+	private static final int DRAW_IMAGE_TRANSFORMED = 3;
+	private static final int SET_TRANSFORM = 4;
+	private static final int TRANSLATE = 5;
+	private static final int ROTATE = 6;
+	private static final int SET_COLOR = 7;
+	private static final int FILL_RECT = 8;
+	private static final int DRAW_STRING = 9;
+	private static final int SET_FONT = 10;
+	private static final int SET_COMPOSITE = 11;
+	private static final int CALL = 12;
+	
+	private int[] data;
+	private int length;
+	private Object[] refs;
+	private int refCount;
+	private int commandCount;
+	
+	/**
+	 * Creates a new, empty RenderCommandBuffer.
+	 */
+	public RenderCommandBuffer() {
+		data = new int[256];
+		refs = new Object[64];
+	}
+	
+	/**
+	 * Removes every command. The storage is kept to be reused.
+	 */
+	public void clear() {
+		Arrays.fill(refs, 0, refCount, null);
+		length = 0;
+		refCount = 0;
+		commandCount = 0;
+	}
+	
+	/**
+	 * Gets the number of recorded commands.
+	 * @return The number of commands.
+	 */
+	public int size() {
+		return commandCount;
+	}
+	
+	/**
+	 * Records drawing an image with its top left corner at a position. The position is rounded to whole pixels when replayed.
+	 * @param image The image to draw.
+	 * @param x The horizontal position.
+	 * @param y The vertical position.
+	 */
+	public void drawImage(Image image, float x, float y) {
+		command(DRAW_IMAGE, 3);
+		ref(image);
+		putFloat(x);
+		putFloat(y);
+	}
+	
+	/**
+	 * Records drawing part of an image.
+	 * @param image The image to draw from.
+	 * @param dx The horizontal position to draw at.
+	 * @param dy The vertical position to draw at.
+	 * @param sx The left edge of the part of the image to draw.
+	 * @param sy The top edge of the part of the image to draw.
+	 * @param w The width of the part to draw.
+	 * @param h The height of the part to draw.
+	 */
+	public void drawImage(Image image, int dx, int dy, int sx, int sy, int w, int h) {
+		command(DRAW_IMAGE_REGION, 7);
+		ref(image);
+		put(dx);
+		put(dy);
+		put(sx);
+		put(sy);
+		put(w);
+		put(h);
+	}
+	
+	/**
+	 * Records drawing an AtlasRegion.
+	 * @param region The region to draw.
+	 * @param x The horizontal position to draw at.
+	 * @param y The vertical position to draw at.
+	 */
+	public void drawRegion(AtlasRegion region, int x, int y) {
+		drawImage(region.getPage(), x, y, region.getX(), region.getY(), region.getWidth(), region.getHeight());
+	}
+	
+	/**
+	 * Records drawing an image with a transform. The transform is copied, so it can be changed afterwards.
+	 * @param image The image to draw.
+	 * @param transform The transform from image space to the current user space.
+	 */
+	public void drawImage(Image image, AffineTransform transform) {
+		command(DRAW_IMAGE_TRANSFORMED, 7);
+		ref(image);
+		putMatrix(transform);
+	}
+	
+	/**
+	 * Records replacing the transform of the commands that follow. The transform is relative to the transform 
+	 * the graphics object had when replay() was called.
+	 * @param transform The new transform, copied.
+	 */
+	public void setTransform(AffineTransform transform) {
+		command(SET_TRANSFORM, 6);
+		putMatrix(transform);
+	}
+	
+	/**
+	 * Records resetting the transform to the one the graphics object had when replay() was called.
+	 */
+	public void resetTransform() {
+		command(SET_TRANSFORM, 6);
+		putFloat(1);
+		putFloat(0);
+		putFloat(0);
+		putFloat(1);
+		putFloat(0);
+		putFloat(0);
+	}
+	
+	/**
+	 * Records a translation of the current transform, like Graphics2D.translate().
+	 * @param tx The horizontal distance.
+	 * @param ty The vertical distance.
+	 */
+	public void translate(float tx, float ty) {
+		command(TRANSLATE, 2);
+		putFloat(tx);
+		putFloat(ty);
+	}
+	
+	/**
+	 * Records a rotation of the current transform around a point, like Graphics2D.rotate().
+	 * @param theta The angle in radians.
+	 * @param x The horizontal position of the center of rotation.
+	 * @param y The vertical position of the center of rotation.
+	 */
+	public void rotate(float theta, float x, float y) {
+		command(ROTATE, 3);
+		putFloat(theta);
+		putFloat(x);
+		putFloat(y);
+	}
+	
+	/**
+	 * Records setting the color of the commands that follow.
+	 * @param color The color. Reuse Color objects to keep recording free of allocations.
+	 */
+	public void setColor(Color color) {
+		command(SET_COLOR, 1);
+		ref(color);
+	}
+	
+	/**
+	 * Records filling a rectangle with the current color.
+	 * @param x The left edge of the rectangle.
+	 * @param y The top edge of the rectangle.
+	 * @param w The width of the rectangle.
+	 * @param h The height of the rectangle.
+	 */
+	public void fillRect(int x, int y, int w, int h) {
+		command(FILL_RECT, 4);
+		put(x);
+		put(y);
+		put(w);
+		put(h);
+	}
+	
+	/**
+	 * Records drawing text with the current color and font.
+	 * @param text The text to draw.
+	 * @param x The horizontal position of the text's baseline.
+	 * @param y The vertical position of the text's baseline.
+	 */
+	public void drawString(String text, float x, float y) {
+		command(DRAW_STRING, 3);
+		ref(text);
+		putFloat(x);
+		putFloat(y);
+	}
+	
+	/**
+	 * Records setting the font of the text commands that follow.
+	 * @param font The font.
+	 */
+	public void setFont(Font font) {
+		command(SET_FONT, 1);
+		ref(font);
+	}
+	
+	/**
+	 * Records setting the composite of the commands that follow.
+	 * @param composite The composite.
+	 */
+	public void setComposite(Composite composite) {
+		command(SET_COMPOSITE, 1);
+		ref(composite);
+	}
+	
+	/**
+	 * Records replaying another buffer at this point, with the state set so far. The other buffer is replayed as it is 
+	 * when this buffer is replayed, so it can be recorded once and called every frame. Calls can nest up to MAX_CALL_DEPTH deep; 
+	 * replay() throws IllegalStateException on deeper calls, which is what buffers calling each other in a cycle lead to.
+	 * @param buffer The buffer to replay.
+	 */
+	public void call(RenderCommandBuffer buffer) {
+		if(buffer == this) {
+			throw new IllegalArgumentException("A buffer can't call itself");
+		}
+		command(CALL, 1);
+		ref(buffer);
+	}
+	
+	/**
+	 * Replays every command onto a graphics object. The transform, color, font and composite of the graphics object are restored 
+	 * afterwards. Must not run while the buffer is being recorded into.
+	 * <br>
+	 * Replaying doesn't change the buffer, so it can be replayed onto several graphics objects at once, e.g. one per band of 
+	 * a ParallelCompositor.
+	 * @param g The graphics object to draw with.
+	 * @throws IllegalStateException if calls between buffers nest deeper than MAX_CALL_DEPTH.
+	 */
+	public void replay(Graphics2D g) {
+		replay(g, 0);
+	}
+	
+	/**
+	 * Replays the commands at a call depth. The depth is passed down rather than kept in a field, so replaying on several 
+	 * threads at once still works.
+	 */
+	private void replay(Graphics2D g, int depth) {
+		if(depth > MAX_CALL_DEPTH) {
+			throw new IllegalStateException("Command buffers call each other more than " + MAX_CALL_DEPTH + " deep, probably in a cycle");
+		}
+		AffineTransform transform = g.getTransform();
+		Color color = g.getColor();
+		Font font = g.getFont();
+		Composite composite = g.getComposite();
+		AffineTransform matrix = new AffineTransform();
+		
+		int i = 0;
+		int ref = 0;
+		while(i < length) {
+			switch(data[i++]) {
+			case DRAW_IMAGE:
+				g.drawImage((Image) refs[ref++], Math.round(getFloat(i)), Math.round(getFloat(i + 1)), null);
+				i += 2;
+				break;
+			case DRAW_IMAGE_REGION: {
+				int dx = data[i];
+				int dy = data[i + 1];
+				int sx = data[i + 2];
+				int sy = data[i + 3];
+				int w = data[i + 4];
+				int h = data[i + 5];
+				g.drawImage((Image) refs[ref++], dx, dy, dx + w, dy + h, sx, sy, sx + w, sy + h, null);
+				i += 6;
+				break;
+			}
+			case DRAW_IMAGE_TRANSFORMED:
+				getMatrix(i, matrix);
+				g.drawImage((Image) refs[ref++], matrix, null);
+				i += 6;
+				break;
+			case SET_TRANSFORM:
+				getMatrix(i, matrix);
+				g.setTransform(transform);
+				g.transform(matrix);
+				i += 6;
+				break;
+			case TRANSLATE:
+				g.translate(getFloat(i), getFloat(i + 1));
+				i += 2;
+				break;
+			case ROTATE:
+				g.rotate(getFloat(i), getFloat(i + 1), getFloat(i + 2));
+				i += 3;
+				break;
+			case SET_COLOR:
+				g.setColor((Color) refs[ref++]);
+				break;
+			case FILL_RECT:
+				g.fillRect(data[i], data[i + 1], data[i + 2], data[i + 3]);
+				i += 4;
+				break;
+			case DRAW_STRING:
+				g.drawString((String) refs[ref++], getFloat(i), getFloat(i + 1));
+				i += 2;
+				break;
+			case SET_FONT:
+				g.setFont((Font) refs[ref++]);
+				break;
+			case SET_COMPOSITE:
+				g.setComposite((Composite) refs[ref++]);
+				break;
+			case CALL:
+				((RenderCommandBuffer) refs[ref++]).replay(g, depth + 1);
+				break;
+			default:
+				throw new IllegalStateException("Corrupt command buffer");
+			}
+		}
+		
+		g.setTransform(transform);
+		g.setColor(color);
+		g.setFont(font);
+		g.setComposite(composite);
+	}
+	
+	/**
+	 * Starts a command, making room for its opcode and arguments.
+	 */
+	private void command(int opcode, int arguments) {
+		if(length + arguments + 1 > data.length) {
+			data = Arrays.copyOf(data, Math.max(data.length * 2, length + arguments + 1));
+		}
+		data[length++] = opcode;
+		commandCount++;
+	}
+	
+	private void put(int value) {
+		data[length++] = value;
+	}
+	
+	private void putFloat(float value) {
+		data[length++] = Float.floatToRawIntBits(value);
+	}
+	
+	private float getFloat(int index) {
+		return Float.intBitsToFloat(data[index]);
+	}
+	
+	private void putMatrix(AffineTransform transform) {
+		putFloat((float) transform.getScaleX());
+		putFloat((float) transform.getShearY());
+		putFloat((float) transform.getShearX());
+		putFloat((float) transform.getScaleY());
+		putFloat((float) transform.getTranslateX());
+		putFloat((float) transform.getTranslateY());
+	}
+	
+	private void getMatrix(int index, AffineTransform transform) {
+		transform.setTransform(getFloat(index), getFloat(index + 1), getFloat(index + 2), 
+			getFloat(index + 3), getFloat(index + 4), getFloat(index + 5));
+	}
+	
+	private void ref(Object value) {
+		if(refCount == refs.length) {
+			refs = Arrays.copyOf(refs, refCount * 2);
+		}
+		refs[refCount++] = value;
+	}
+}
@@ -0,0 +1,340 @@
+package org.fwilliams.fwjengine.graphics;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.fwilliams.fwjengine.core.ScreenManager;
+
+/**
+ * A cache of rotated copies of images. Angles are rounded to one of a fixed number of steps around the circle, and the first time 
+ * an image is drawn at a step it is rendered rotated into a compatible image of its own, so every later draw at that step is a plain 
+ * translated blit instead of a transformed one. 
+ * <br>
+ * The cache keeps track of how many bytes the rotated images take up and evicts the least recently used ones when it goes over budget.
+ * Images are cached by identity, so keep drawing the same Image object (e.g. from the same AtlasRegion) for each picture.
+ * @author Francis Williams
+ *
+ */
+public class RotationCache {
+	public static final int DEFAULT_STEPS = 64;
+	public static final long DEFAULT_BUDGET = 16 * 1024 * 1024;
+	
+	private ScreenManager screen;
+	private int steps;
+	private long budget;
+	private long size;
+	private LinkedHashMap<Key, Rotation> rotations;
+	private Key lookup;
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+	
+	/**
+	 * Creates a new RotationCache with DEFAULT_STEPS steps and a budget of DEFAULT_BUDGET bytes.
+	 * @param screen The screen rotated images are made compatible with. If null they are TYPE_INT_ARGB_PRE.
+	 */
+	public RotationCache(ScreenManager screen) {
+		this(screen, DEFAULT_STEPS, DEFAULT_BUDGET);
+	}
+	
+	/**
+	 * Creates a new RotationCache.
+	 * @param screen The screen rotated images are made compatible with. If null they are TYPE_INT_ARGB_PRE.
+	 * @param steps The number of angles around the circle images are rotated to. Higher values rotate more smoothly but use more memory.
+	 * @param budget The maximum number of bytes of rotated images to keep.
+	 */
+	public RotationCache(ScreenManager screen, int steps, long budget) {
+		if(steps <= 0) {
+			throw new IllegalArgumentException("Steps must be positive");
+		}
+		this.screen = screen;
+		this.steps = steps;
+		this.rotations = new LinkedHashMap<Key, Rotation>(16, 0.75f, true);
+		this.lookup = new Key(null, 0);
+		setBudget(budget);
+	}
+	
+	/**
+	 * Gets the step an angle is rounded to.
+	 * @param angle The angle in radians.
+	 * @return The step, from 0 to getSteps() - 1.
+	 */
+	public int getStep(double angle) {
+		int step = (int) Math.round(angle * steps / (2 * Math.PI)) % steps;
+		return step < 0 ? step + steps : step;
+	}
+	
+	/**
+	 * Gets an image rotated around its center to the nearest step, rendering it if it isn't cached.
+	 * @param image The image to rotate.
+	 * @param angle The angle to rotate by in radians, clockwise like AffineTransform.rotate().
+	 * @return The rotated image and where to draw it.
+	 */
+	public synchronized Rotation get(Image image, double angle) {
+		int step = getStep(angle);
+		lookup.image = image;
+		lookup.step = step;
+		Rotation rotation = rotations.get(lookup);
+		lookup.image = null;
+		if(rotation != null) {
+			hitCount++;
+			return rotation;
+		}
+		missCount++;
+		
+		rotation = render(image, step);
+		rotations.put(new Key(image, step), rotation);
+		size += rotation.getByteSize();
+		evict(rotation);
+		return rotation;
+	}
+	
+	/**
+	 * Renders every step of an image ahead of time, e.g. while loading, as long as they fit in the budget.
+	 * @param image The image to rotate.
+	 */
+	public void preload(Image image) {
+		for(int step = 0; step < steps; step++) {
+			get(image, step * 2 * Math.PI / steps);
+		}
+	}
+	
+	/**
+	 * Draws an image rotated around its center, as if it was drawn with its top left corner at (x, y) 
+	 * and then rotated by the angle rounded to the nearest step.
+	 * @param g The graphics object to draw with.
+	 * @param image The image to draw.
+	 * @param angle The angle to rotate by in radians.
+	 * @param x The horizontal position of the unrotated image.
+	 * @param y The vertical position of the unrotated image.
+	 */
+	public void draw(Graphics g, Image image, double angle, int x, int y) {
+		Rotation rotation = get(image, angle);
+		g.drawImage(rotation.getImage(), x + rotation.getOffsetX(), y + rotation.getOffsetY(), null);
+	}
+	
+	/**
+	 * Draws an image rotated around its center with a SoftwareRenderer, like draw(Graphics, Image, double, int, int).
+	 * @param renderer The renderer to draw with.
+	 * @param image The image to draw.
+	 * @param angle The angle to rotate by in radians.
+	 * @param x The horizontal position of the unrotated image.
+	 * @param y The vertical position of the unrotated image.
+	 */
+	public void draw(SoftwareRenderer renderer, Image image, double angle, int x, int y) {
+		Rotation rotation = get(image, angle);
+		renderer.drawImage(rotation.getImage(), x + rotation.getOffsetX(), y + rotation.getOffsetY());
+	}
+	
+	/**
+	 * Renders an image rotated to a step into a new image just large enough to hold it.
+	 */
+	private Rotation render(Image image, int step) {
+		int width = image.getWidth(null);
+		int height = image.getHeight(null);
+		if(step == 0 || width <= 0 || height <= 0) {
+			return new Rotation(image, 0, 0, 0);
+		}
+		
+		double theta = step * 2 * Math.PI / steps;
+		double sin = Math.abs(Math.sin(theta));
+		double cos = Math.abs(Math.cos(theta));
+		int rotatedWidth = (int) Math.ceil(width * cos + height * sin - 1e-9);
+		int rotatedHeight = (int) Math.ceil(width * sin + height * cos - 1e-9);
+		// keep the centers of both images on the same pixel grid so the offsets are whole pixels
+		rotatedWidth += (rotatedWidth - width) & 1;
+		rotatedHeight += (rotatedHeight - height) & 1;
+		
+		BufferedImage rotated = null;
+		if(screen != null) {
+			rotated = screen.createCompatibleImage(rotatedWidth, rotatedHeight, Transparency.TRANSLUCENT);
+		}
+		if(rotated == null) {
+			rotated = new BufferedImage(rotatedWidth, rotatedHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+		Graphics2D g = rotated.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.translate(rotatedWidth / 2.0, rotatedHeight / 2.0);
+		g.rotate(theta);
+		g.translate(-width / 2.0, -height / 2.0);
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		
+		return new Rotation(rotated, (width - rotatedWidth) / 2, (height - rotatedHeight) / 2, (long) rotatedWidth * rotatedHeight * 4);
+	}
+	
+	/**
+	 * Gets the number of angles around the circle images are rotated to.
+	 * @return The number of steps.
+	 */
+	public int getSteps() {
+		return steps;
+	}
+	
+	/**
+	 * Sets the maximum number of bytes of rotated images to keep, evicting images if the cache is now over budget.
+	 * @param budget The budget in bytes.
+	 */
+	public synchronized void setBudget(long budget) {
+		if(budget < 0) {
+			throw new IllegalArgumentException("Budget must not be negative");
+		}
+		this.budget = budget;
+		evict(null);
+	}
+	
+	/**
+	 * Gets the maximum number of bytes of rotated images to keep.
+	 * @return The budget in bytes.
+	 */
+	public synchronized long getBudget() {
+		return budget;
+	}
+	
+	/**
+	 * Gets the number of bytes taken up by the rotated images.
+	 * @return The size of the cache in bytes.
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+	
+	/**
+	 * Gets the number of cached rotations.
+	 * @return The number of cached rotations.
+	 */
+	public synchronized int getEntryCount() {
+		return rotations.size();
+	}
+	
+	/**
+	 * Removes every rotated image from the cache. The counters are kept.
+	 */
+	public synchronized void clear() {
+		rotations.clear();
+		size = 0;
+	}
+	
+	/**
+	 * Gets the number of draws that found their rotation cached.
+	 * @return The number of cache hits.
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+	
+	/**
+	 * Gets the number of draws that had to render their rotation.
+	 * @return The number of cache misses.
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+	
+	/**
+	 * Gets the number of rotations evicted to stay within budget.
+	 * @return The number of evictions.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+	
+	/**
+	 * Evicts least recently used rotations until the cache is within budget.
+	 * @param keep A rotation that must not be evicted, or null.
+	 */
+	private void evict(Rotation keep) {
+		Iterator<Map.Entry<Key, Rotation>> iterator = rotations.entrySet().iterator();
+		while(size > budget && iterator.hasNext()) {
+			Rotation rotation = iterator.next().getValue();
+			if(rotation != keep) {
+				iterator.remove();
+				size -= rotation.getByteSize();
+				evictionCount++;
+			}
+		}
+	}
+	
+	/**
+	 * An image rotated to a step, with the offset from the unrotated image's position to draw it at.
+	 */
+	public static class Rotation {
+		private Image image;
+		private int offsetX;
+		private int offsetY;
+		private long byteSize;
+		
+		Rotation(Image image, int offsetX, int offsetY, long byteSize) {
+			this.image = image;
+			this.offsetX = offsetX;
+			this.offsetY = offsetY;
+			this.byteSize = byteSize;
+		}
+		
+		/**
+		 * Gets the rotated image.
+		 * @return The rotated image. For step 0, the original image.
+		 */
+		public Image getImage() {
+			return image;
+		}
+		
+		/**
+		 * Gets how far left of the unrotated image's position the rotated image is drawn, as a negative number.
+		 * @return The horizontal offset.
+		 */
+		public int getOffsetX() {
+			return offsetX;
+		}
+		
+		/**
+		 * Gets how far above the unrotated image's position the rotated image is drawn, as a negative number.
+		 * @return The vertical offset.
+		 */
+		public int getOffsetY() {
+			return offsetY;
+		}
+		
+		/**
+		 * Gets the number of bytes the rotated image takes up.
+		 * @return The size in bytes. 0 for step 0, which doesn't copy the image.
+		 */
+		public long getByteSize() {
+			return byteSize;
+		}
+	}
+	
+	/**
+	 * Identifies a rotation by the identity of its image and its step.
+	 */
+	private static class Key {
+		Image image;
+		int step;
+		
+		Key(Image image, int step) {
+			this.image = image;
+			this.step = step;
+		}
+		
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(image) * 31 + step;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return image == other.image && step == other.step;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package org.fwilliams.fwjengine.graphics;
+
+/**
+ * BlendKernels working one pixel at a time. The red and blue, and the alpha and green channels are processed in pairs in 
+ * the two halves of an int.
+ * @author Francis Williams
+ *
+ */
+class ScalarBlendKernels extends BlendKernels {
+	
+	@Override
+	public String getName() {
+		return "scalar";
+	}
+	
+	@Override
+	public void srcOver(int[] src, int srcIndex, int[] dst, int dstIndex, int length) {
+		for(int i = 0; i < length; i++) {
+			int s = src[srcIndex + i];
+			int a = s >>> 24;
+			if(a == 0xff) {
+				dst[dstIndex + i] = s;
+			} else if(a != 0) {
+				dst[dstIndex + i] = srcOver(s, dst[dstIndex + i]);
+			}
+		}
+	}
+	
+	@Override
+	public void add(int[] src, int srcIndex, int[] dst, int dstIndex, int length) {
+		for(int i = 0; i < length; i++) {
+			dst[dstIndex + i] = add(src[srcIndex + i], dst[dstIndex + i]);
+		}
+	}
+	
+	@Override
+	public void multiply(int[] src, int srcIndex, int[] dst, int dstIndex, int length) {
+		for(int i = 0; i < length; i++) {
+			dst[dstIndex + i] = multiply(src[srcIndex + i], dst[dstIndex + i]);
+		}
+	}
+	
+	/**
+	 * Blends a premultiplied source pixel over a premultiplied destination pixel.
+	 */
+	static int srcOver(int s, int d) {
+		return s + scale(d, 0xff - (s >>> 24));
+	}
+	
+	/**
+	 * Adds two pixels, clamping every channel to 255.
+	 */
+	static int add(int s, int d) {
+		int rb = (s & 0x00ff00ff) + (d & 0x00ff00ff);
+		int ag = ((s >>> 8) & 0x00ff00ff) + ((d >>> 8) & 0x00ff00ff);
+		rb |= ((rb >>> 8) & 0x00010001) * 0xff;
+		ag |= ((ag >>> 8) & 0x00010001) * 0xff;
+		return (rb & 0x00ff00ff) | ((ag & 0x00ff00ff) << 8);
+	}
+	
+	/**
+	 * Multiplies two premultiplied pixels.
+	 */
+	static int multiply(int s, int d) {
+		int sa = s >>> 24;
+		int da = d >>> 24;
+		int result = 0;
+		for(int shift = 0; shift < 32; shift += 8) {
+			int cs = (s >>> shift) & 0xff;
+			int cd = (d >>> shift) & 0xff;
+			result |= div255(cs * cd + cs * (0xff - da) + cd * (0xff - sa)) << shift;
+		}
+		return result;
+	}
+	
+	/**
+	 * Premultiplies the color channels of an ARGB pixel by its alpha.
+	 */
+	static int premultiply(int argb) {
+		int a = argb >>> 24;
+		if(a == 0xff) {
+			return argb;
+		}
+		return (scale(argb, a) & 0x00ffffff) | (argb & 0xff000000);
+	}
+	
+	/**
+	 * Multiplies all four channels of a pixel by factor / 255, rounding to nearest.
+	 */
+	static int scale(int pixel, int factor) {
+		int rb = (pixel & 0x00ff00ff) * factor + 0x00800080;
+		int ag = ((pixel >>> 8) & 0x00ff00ff) * factor + 0x00800080;
+		rb = ((rb + ((rb >>> 8) & 0x00ff00ff)) >>> 8) & 0x00ff00ff;
+		ag = (ag + ((ag >>> 8) & 0x00ff00ff)) & 0xff00ff00;
+		return rb | ag;
+	}
+	
+	/**
+	 * Divides a value from 0 to 255 * 255 by 255, rounding to nearest.
+	 */
+	static int div255(int value) {
+		value += 0x80;
+		return (value + (value >>> 8)) >>> 8;
+	}
+}
@@ -0,0 +1,133 @@
+package org.fwilliams.fwjengine.graphics;
+
+import java.awt.Point;
+import java.util.ArrayList;
+
+/**
+ * Packs rectangles into a fixed size area with the skyline bottom-left algorithm. The packer keeps the top edge (the skyline) 
+ * of everything placed so far as a list of horizontal segments, and places each new rectangle where its top ends up lowest.
+ * @author Francis Williams
+ *
+ */
+class SkylinePacker {
+	private int width;
+	private int height;
+	private ArrayList<Segment> skyline;
+	
+	/**
+	 * Creates a new, empty packer.
+	 * @param width The width of the area to pack into.
+	 * @param height The height of the area to pack into.
+	 */
+	public SkylinePacker(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.skyline = new ArrayList<Segment>();
+		this.skyline.add(new Segment(0, 0, width));
+	}
+	
+	/**
+	 * Finds a place for a rectangle and reserves it.
+	 * @param w The width of the rectangle.
+	 * @param h The height of the rectangle.
+	 * @return The position of the rectangle's top left corner, or null if it doesn't fit.
+	 */
+	public Point insert(int w, int h) {
+		int bestIndex = -1;
+		int bestX = 0;
+		int bestY = 0;
+		int bestTop = Integer.MAX_VALUE;
+		int bestWidth = Integer.MAX_VALUE;
+		
+		for(int i=0; i<skyline.size(); i++) {
+			int y = fitAt(i, w, h);
+			if(y >= 0) {
+				Segment segment = skyline.get(i);
+				if(y + h < bestTop || (y + h == bestTop && segment.width < bestWidth)) {
+					bestIndex = i;
+					bestX = segment.x;
+					bestY = y;
+					bestTop = y + h;
+					bestWidth = segment.width;
+				}
+			}
+		}
+		if(bestIndex < 0) {
+			return null;
+		}
+		
+		addSegment(bestIndex, new Segment(bestX, bestY + h, w));
+		return new Point(bestX, bestY);
+	}
+	
+	/**
+	 * Gets the height a rectangle would rest at if its left edge was at the start of a segment.
+	 * @return The vertical position of the rectangle, or -1 if it doesn't fit there.
+	 */
+	private int fitAt(int index, int w, int h) {
+		int x = skyline.get(index).x;
+		if(x + w > width) {
+			return -1;
+		}
+		int y = 0;
+		int remaining = w;
+		for(int i=index; remaining > 0; i++) {
+			Segment segment = skyline.get(i);
+			y = Math.max(y, segment.y);
+			if(y + h > height) {
+				return -1;
+			}
+			remaining -= segment.width;
+		}
+		return y;
+	}
+	
+	/**
+	 * Inserts a new segment into the skyline, shortening or removing the segments it now covers and merging segments of equal height.
+	 */
+	private void addSegment(int index, Segment added) {
+		skyline.add(index, added);
+		
+		int right = added.x + added.width;
+		for(int i=index+1; i<skyline.size(); ) {
+			Segment segment = skyline.get(i);
+			if(segment.x >= right) {
+				break;
+			}
+			int shrink = right - segment.x;
+			if(shrink >= segment.width) {
+				skyline.remove(i);
+			} else {
+				segment.x += shrink;
+				segment.width -= shrink;
+				break;
+			}
+		}
+		
+		for(int i=0; i<skyline.size()-1; ) {
+			Segment segment = skyline.get(i);
+			Segment next = skyline.get(i+1);
+			if(segment.y == next.y) {
+				segment.width += next.width;
+				skyline.remove(i+1);
+			} else {
+				i++;
+			}
+		}
+	}
+	
+	/**
+	 * A horizontal piece of the skyline.
+	 */
+	private static class Segment {
+		int x;
+		int y;
+		int width;
+		
+		Segment(int x, int y, int width) {
+			this.x = x;
+			this.y = y;
+			this.width = width;
+		}
+	}
+}
@@ -0,0 +1,471 @@
+package org.fwilliams.fwjengine.graphics;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+import org.fwilliams.fwjengine.entity.Sprite;
+
+/**
+ * Draws images straight into the int pixels of a BufferedImage with plain loops instead of going through Graphics2D. 
+ * There is no per-call setup and nothing is allocated while drawing. On the headless pipeline it draws the same pixels as 
+ * Graphics2D.drawImage() with SrcOver. It is faster for premultiplied bitmask and translucent sources, and for TYPE_INT_RGB 
+ * sources on a TYPE_INT_RGB target; demo.RendererBenchmark compares the two on the current machine.
+ * <br>
+ * The target must be a TYPE_INT_ARGB_PRE or TYPE_INT_RGB image, or another image with the same layout. Sources are blitted directly 
+ * if they are TYPE_INT_ARGB_PRE, TYPE_INT_ARGB or TYPE_INT_RGB images (or subimages of them). Opaque sources are copied a row at 
+ * a time, bitmask sources pixel by pixel and translucent sources are blended by the renderer's BlendKernels, which use SIMD 
+ * instructions when the Vector API is available. setBlendMode() switches to additive or multiply blending.
+ * <br>
+ * With SrcOver, sources that need converting, i.e. TYPE_INT_RGB sources on a TYPE_INT_ARGB_PRE target, translucent TYPE_INT_ARGB 
+ * sources and any other kind of image, are drawn through one Graphics2D kept by the renderer, since Java2D's native loops 
+ * convert pixels faster than a Java loop. Convert sprites to the target's format when they are loaded to avoid that.
+ * <br>
+ * Java2D stops accelerating an image once its pixels have been accessed directly, so images drawn with a SoftwareRenderer 
+ * should be drawn with it every frame rather than alternating with Graphics2D.
+ * @author Francis Williams
+ *
+ */
+public class SoftwareRenderer {
+	/**
+	 * The default blend mode. Sources are drawn over the target.
+	 */
+	public static final int BLEND_SRC_OVER = 0;
+	
+	/**
+	 * Sources are added to the target, e.g. for lights and particles.
+	 */
+	public static final int BLEND_ADD = 1;
+	
+	/**
+	 * Sources are multiplied with the target, e.g. for shadows.
+	 */
+	public static final int BLEND_MULTIPLY = 2;
+	
+	private static final int SOURCE_UNSUPPORTED = 0;
+	private static final int SOURCE_RGB = 1;
+	private static final int SOURCE_ARGB = 2;
+	private static final int SOURCE_ARGB_PRE = 3;
+	
+	private BufferedImage target;
+	private int[] pixels;
+	private int offset;
+	private int stride;
+	private int width;
+	private int height;
+	private boolean opaque;
+	private Graphics2D graphics;
+	private boolean graphicsClipped;
+	private int clipX1;
+	private int clipY1;
+	private int clipX2;
+	private int clipY2;
+	private int blendMode = BLEND_SRC_OVER;
+	private BlendKernels kernels = BlendKernels.getInstance();
+	private int[] rowBuffer = new int[0];
+	
+	/**
+	 * Creates a new SoftwareRenderer drawing into an image.
+	 * @param target The image to draw into. Must be TYPE_INT_ARGB_PRE or TYPE_INT_RGB, or have the same layout.
+	 */
+	public SoftwareRenderer(BufferedImage target) {
+		WritableRaster raster = target.getRaster();
+		DataBuffer dataBuffer = raster.getDataBuffer();
+		if(!(dataBuffer instanceof DataBufferInt) || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel) 
+		   || !(target.getColorModel() instanceof DirectColorModel)) {
+			throw new IllegalArgumentException("Target must be an int RGB image");
+		}
+		DirectColorModel colorModel = (DirectColorModel) target.getColorModel();
+		if(colorModel.getRedMask() != 0xff0000 || colorModel.getGreenMask() != 0xff00 || colorModel.getBlueMask() != 0xff 
+		   || (colorModel.hasAlpha() && !colorModel.isAlphaPremultiplied())) {
+			throw new IllegalArgumentException("Target must be TYPE_INT_ARGB_PRE or TYPE_INT_RGB");
+		}
+		
+		this.target = target;
+		this.pixels = ((DataBufferInt) dataBuffer).getData();
+		this.stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+		this.offset = dataBuffer.getOffset() - raster.getSampleModelTranslateY() * stride - raster.getSampleModelTranslateX();
+		this.width = target.getWidth();
+		this.height = target.getHeight();
+		this.opaque = !colorModel.hasAlpha();
+		resetClip();
+	}
+	
+	/**
+	 * Gets the image this renderer draws into.
+	 * @return The target image.
+	 */
+	public BufferedImage getTarget() {
+		return target;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Restricts drawing to a rectangle of the target.
+	 * @param x The left edge of the clip.
+	 * @param y The top edge of the clip.
+	 * @param w The width of the clip.
+	 * @param h The height of the clip.
+	 */
+	public void setClip(int x, int y, int w, int h) {
+		clipX1 = Math.max(0, x);
+		clipY1 = Math.max(0, y);
+		clipX2 = Math.min(width, x + w);
+		clipY2 = Math.min(height, y + h);
+		if(clipX2 < clipX1) {
+			clipX2 = clipX1;
+		}
+		if(clipY2 < clipY1) {
+			clipY2 = clipY1;
+		}
+		graphicsClipped = false;
+	}
+	
+	/**
+	 * Lets drawing cover the whole target again.
+	 */
+	public void resetClip() {
+		clipX1 = 0;
+		clipY1 = 0;
+		clipX2 = width;
+		clipY2 = height;
+		graphicsClipped = false;
+	}
+	
+	public int getClipX() {
+		return clipX1;
+	}
+	
+	public int getClipY() {
+		return clipY1;
+	}
+	
+	public int getClipWidth() {
+		return clipX2 - clipX1;
+	}
+	
+	public int getClipHeight() {
+		return clipY2 - clipY1;
+	}
+	
+	/**
+	 * Sets how sources are combined with the target. In BLEND_ADD and BLEND_MULTIPLY mode every source is blended as translucent, 
+	 * whatever its transparency.
+	 * @param blendMode BLEND_SRC_OVER, BLEND_ADD or BLEND_MULTIPLY.
+	 */
+	public void setBlendMode(int blendMode) {
+		if(blendMode < BLEND_SRC_OVER || blendMode > BLEND_MULTIPLY) {
+			throw new IllegalArgumentException("Unknown blend mode " + blendMode);
+		}
+		this.blendMode = blendMode;
+	}
+	
+	public int getBlendMode() {
+		return blendMode;
+	}
+	
+	/**
+	 * Sets the kernels translucent pixels are blended with.
+	 * @param kernels The kernels to use, by default BlendKernels.getInstance().
+	 */
+	public void setBlendKernels(BlendKernels kernels) {
+		this.kernels = kernels;
+	}
+	
+	public BlendKernels getBlendKernels() {
+		return kernels;
+	}
+	
+	/**
+	 * Creates a Graphics2D drawing into the target, clipped like this renderer, for anything the renderer can't draw itself. 
+	 * The caller has to dispose of it.
+	 * @return A new Graphics2D for the target.
+	 */
+	public Graphics2D createGraphics() {
+		Graphics2D g = target.createGraphics();
+		g.clipRect(clipX1, clipY1, clipX2 - clipX1, clipY2 - clipY1);
+		return g;
+	}
+	
+	/**
+	 * Replaces every pixel inside the clip with a color.
+	 * @param argb The color as a non-premultiplied ARGB int, like Color.getRGB().
+	 */
+	public void clear(int argb) {
+		int color = ScalarBlendKernels.premultiply(argb);
+		for(int y = clipY1; y < clipY2; y++) {
+			int row = offset + y * stride;
+			Arrays.fill(pixels, row + clipX1, row + clipX2, color);
+		}
+	}
+	
+	/**
+	 * Fills a rectangle with a color, blended with the current blend mode.
+	 * @param x The left edge of the rectangle.
+	 * @param y The top edge of the rectangle.
+	 * @param w The width of the rectangle.
+	 * @param h The height of the rectangle.
+	 * @param argb The color as a non-premultiplied ARGB int, like Color.getRGB().
+	 */
+	public void fillRect(int x, int y, int w, int h, int argb) {
+		int x1 = Math.max(x, clipX1);
+		int y1 = Math.max(y, clipY1);
+		int x2 = Math.min(x + w, clipX2);
+		int y2 = Math.min(y + h, clipY2);
+		if(x1 >= x2 || y1 >= y2 || (argb >>> 24) == 0) {
+			return;
+		}
+		int color = ScalarBlendKernels.premultiply(argb);
+		int w2 = x2 - x1;
+		if(blendMode != BLEND_SRC_OVER || (color >>> 24) != 0xff) {
+			Arrays.fill(getRowBuffer(w2), 0, w2, color);
+		}
+		for(int row = y1; row < y2; row++) {
+			int start = offset + row * stride + x1;
+			if(blendMode == BLEND_SRC_OVER && (color >>> 24) == 0xff) {
+				Arrays.fill(pixels, start, start + w2, color);
+			} else {
+				blendRow(rowBuffer, 0, start, w2);
+			}
+		}
+	}
+	
+	/**
+	 * Draws an image with its top left corner at the specified position, treating it according to its own transparency.
+	 * @param image The image to draw.
+	 * @param dx The horizontal position to draw at.
+	 * @param dy The vertical position to draw at.
+	 */
+	public void drawImage(Image image, int dx, int dy) {
+		if(image instanceof BufferedImage) {
+			BufferedImage source = (BufferedImage) image;
+			drawImage(source, 0, 0, source.getWidth(), source.getHeight(), dx, dy, source.getTransparency());
+		} else if(image != null) {
+			getGraphics().drawImage(image, dx, dy, null);
+		}
+	}
+	
+	/**
+	 * Draws an AtlasRegion with its top left corner at the specified position.
+	 * @param region The region to draw.
+	 * @param dx The horizontal position to draw at.
+	 * @param dy The vertical position to draw at.
+	 */
+	public void drawRegion(AtlasRegion region, int dx, int dy) {
+		BufferedImage page = region.getPage();
+		drawImage(page, region.getX(), region.getY(), region.getWidth(), region.getHeight(), dx, dy, page.getTransparency());
+	}
+	
+	/**
+	 * Draws the current frame of a Sprite at its position.
+	 * @param sprite The sprite to draw.
+	 */
+	public void drawSprite(Sprite sprite) {
+		int dx = Math.round(sprite.getX());
+		int dy = Math.round(sprite.getY());
+		AtlasRegion region = sprite.getRegion();
+		if(region != null) {
+			drawRegion(region, dx, dy);
+		} else {
+			drawImage(sprite.getImage(), dx, dy);
+		}
+	}
+	
+	/**
+	 * Draws part of an image.
+	 * @param image The image to draw from.
+	 * @param sx The left edge of the part of the image to draw.
+	 * @param sy The top edge of the part of the image to draw.
+	 * @param w The width of the part to draw.
+	 * @param h The height of the part to draw.
+	 * @param dx The horizontal position to draw at.
+	 * @param dy The vertical position to draw at.
+	 * @param transparency How to treat the source: Transparency.OPAQUE copies every pixel, Transparency.BITMASK copies only pixels 
+	 * 		  that aren't fully transparent and Transparency.TRANSLUCENT blends every pixel. Use OPAQUE and BITMASK only for images 
+	 * 		  whose pixels really are fully opaque or fully transparent.
+	 */
+	public void drawImage(BufferedImage image, int sx, int sy, int w, int h, int dx, int dy, int transparency) {
+		// clip the source rectangle to the image
+		if(sx < 0) {
+			dx -= sx;
+			w += sx;
+			sx = 0;
+		}
+		if(sy < 0) {
+			dy -= sy;
+			h += sy;
+			sy = 0;
+		}
+		w = Math.min(w, image.getWidth() - sx);
+		h = Math.min(h, image.getHeight() - sy);
+		
+		// clip the destination rectangle to the clip
+		if(dx < clipX1) {
+			sx += clipX1 - dx;
+			w -= clipX1 - dx;
+			dx = clipX1;
+		}
+		if(dy < clipY1) {
+			sy += clipY1 - dy;
+			h -= clipY1 - dy;
+			dy = clipY1;
+		}
+		w = Math.min(w, clipX2 - dx);
+		h = Math.min(h, clipY2 - dy);
+		if(w <= 0 || h <= 0) {
+			return;
+		}
+		
+		int kind = getSourceKind(image);
+		if(blendMode == BLEND_SRC_OVER && (kind == SOURCE_UNSUPPORTED || (kind == SOURCE_RGB && !opaque) 
+		   || (kind == SOURCE_ARGB && transparency == Transparency.TRANSLUCENT))) {
+			// Java2D's native loops convert these faster than a loop here can
+			getGraphics().drawImage(image, dx, dy, dx + w, dy + h, sx, sy, sx + w, sy + h, null);
+			return;
+		}
+		
+		int dstIndex = offset + dy * stride + dx;
+		if(kind == SOURCE_UNSUPPORTED) {
+			blitConverted(image, sx, sy, dstIndex, w, h);
+			return;
+		}
+		
+		WritableRaster raster = image.getRaster();
+		DataBuffer dataBuffer = raster.getDataBuffer();
+		int[] src = ((DataBufferInt) dataBuffer).getData();
+		int srcStride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+		int srcIndex = dataBuffer.getOffset() + (sy - raster.getSampleModelTranslateY()) * srcStride + sx - raster.getSampleModelTranslateX();
+		
+		if(blendMode != BLEND_SRC_OVER || (kind != SOURCE_RGB && transparency == Transparency.TRANSLUCENT)) {
+			blitBlended(src, srcIndex, srcStride, dstIndex, w, h, kind);
+		} else if(kind == SOURCE_RGB) {
+			// the top byte of an opaque target is ignored, so rgb pixels can be copied as they are
+			blitOpaque(src, srcIndex, srcStride, dstIndex, w, h);
+		} else if(transparency == Transparency.OPAQUE) {
+			blitOpaque(src, srcIndex, srcStride, dstIndex, w, h);
+		} else {
+			blitBitmask(src, srcIndex, srcStride, dstIndex, w, h);
+		}
+	}
+	
+	private void blitOpaque(int[] src, int srcIndex, int srcStride, int dstIndex, int w, int h) {
+		for(int row = 0; row < h; row++) {
+			System.arraycopy(src, srcIndex, pixels, dstIndex, w);
+			srcIndex += srcStride;
+			dstIndex += stride;
+		}
+	}
+	
+	private void blitBitmask(int[] src, int srcIndex, int srcStride, int dstIndex, int w, int h) {
+		for(int row = 0; row < h; row++) {
+			for(int i = 0; i < w; i++) {
+				int s = src[srcIndex + i];
+				if((s >>> 24) != 0) {
+					pixels[dstIndex + i] = s;
+				}
+			}
+			srcIndex += srcStride;
+			dstIndex += stride;
+		}
+	}
+	
+	/**
+	 * Blends every row with the blend mode, converting the rows of sources that aren't premultiplied first.
+	 */
+	private void blitBlended(int[] src, int srcIndex, int srcStride, int dstIndex, int w, int h, int kind) {
+		for(int row = 0; row < h; row++) {
+			if(kind == SOURCE_ARGB_PRE) {
+				blendRow(src, srcIndex, dstIndex, w);
+			} else {
+				int[] buffer = getRowBuffer(w);
+				for(int i = 0; i < w; i++) {
+					int s = src[srcIndex + i];
+					buffer[i] = kind == SOURCE_RGB ? s | 0xff000000 : ScalarBlendKernels.premultiply(s);
+				}
+				blendRow(buffer, 0, dstIndex, w);
+			}
+			srcIndex += srcStride;
+			dstIndex += stride;
+		}
+	}
+	
+	/**
+	 * Blends an image whose pixels can't be read directly by converting it a row at a time with getRGB(). Slow.
+	 */
+	private void blitConverted(BufferedImage image, int sx, int sy, int dstIndex, int w, int h) {
+		int[] buffer = getRowBuffer(w);
+		for(int row = 0; row < h; row++) {
+			image.getRGB(sx, sy + row, w, 1, buffer, 0, w);
+			for(int i = 0; i < w; i++) {
+				buffer[i] = ScalarBlendKernels.premultiply(buffer[i]);
+			}
+			blendRow(buffer, 0, dstIndex, w);
+			dstIndex += stride;
+		}
+	}
+	
+	private void blendRow(int[] src, int srcIndex, int dstIndex, int length) {
+		switch(blendMode) {
+		case BLEND_ADD:
+			kernels.add(src, srcIndex, pixels, dstIndex, length);
+			break;
+		case BLEND_MULTIPLY:
+			kernels.multiply(src, srcIndex, pixels, dstIndex, length);
+			break;
+		default:
+			kernels.srcOver(src, srcIndex, pixels, dstIndex, length);
+		}
+	}
+	
+	/**
+	 * Gets the Graphics2D used for sources the renderer doesn't blit itself, created once and clipped like the renderer.
+	 */
+	private Graphics2D getGraphics() {
+		if(graphics == null) {
+			graphics = target.createGraphics();
+			graphicsClipped = false;
+		}
+		if(!graphicsClipped) {
+			graphics.setClip(clipX1, clipY1, clipX2 - clipX1, clipY2 - clipY1);
+			graphicsClipped = true;
+		}
+		return graphics;
+	}
+	
+	private int[] getRowBuffer(int length) {
+		if(rowBuffer.length < length) {
+			rowBuffer = new int[Math.max(length, width)];
+		}
+		return rowBuffer;
+	}
+	
+	/**
+	 * Gets how the pixels of an image can be read, or SOURCE_UNSUPPORTED if they have to be drawn through Graphics2D.
+	 */
+	private static int getSourceKind(BufferedImage image) {
+		switch(image.getType()) {
+		case BufferedImage.TYPE_INT_RGB:
+			return SOURCE_RGB;
+		case BufferedImage.TYPE_INT_ARGB:
+			return SOURCE_ARGB;
+		case BufferedImage.TYPE_INT_ARGB_PRE:
+			return SOURCE_ARGB_PRE;
+		default:
+			return SOURCE_UNSUPPORTED;
+		}
+	}
+}
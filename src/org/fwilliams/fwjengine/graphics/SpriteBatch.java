@@ -0,0 +1,303 @@
+package org.fwilliams.fwjengine.graphics;
+
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import org.fwilliams.fwjengine.entity.Sprite;
+
+/**
+ * Collects draws between begin() and end() and issues them sorted by layer, then source image (or atlas page), then composite, 
+ * so sprites sharing an image are drawn in one run and the Graphics2D composite is only changed between runs.
+ * <br>
+ * Draws are recorded into preallocated primitive arrays and sorted as packed long keys, so after the arrays have grown to the 
+ * largest frame nothing is allocated per sprite. Lower layers are drawn first. Within a layer the order of different images is 
+ * not kept, so sprites that have to overlap in a certain order must be on different layers.
+ * @author Francis Williams
+ *
+ */
+public class SpriteBatch {
+	public static final int MIN_LAYER = -16384;
+	public static final int MAX_LAYER = 16383;
+	
+	private static final int MAX_IMAGES = 0xffff;
+	private static final int MAX_COMPOSITES = 0xff;
+	private static final int MAX_SPRITES = 0xffffff;
+	
+	private Graphics2D g;
+	private int count;
+	private long[] keys;
+	private Image[] images;
+	private int[] positions;
+	private int[] sources;
+	private IdentityHashMap<Image, Integer> imageIds;
+	private Composite[] composites;
+	private int compositeCount;
+	private int runCount;
+	
+	/**
+	 * Creates a new SpriteBatch with room for 1024 draws per batch before it has to grow.
+	 */
+	public SpriteBatch() {
+		this(1024);
+	}
+	
+	/**
+	 * Creates a new SpriteBatch.
+	 * @param capacity The number of draws per batch there is room for before the batch has to grow.
+	 */
+	public SpriteBatch(int capacity) {
+		if(capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		keys = new long[capacity];
+		images = new Image[capacity];
+		positions = new int[capacity * 2];
+		sources = new int[capacity * 4];
+		imageIds = new IdentityHashMap<Image, Integer>();
+		// id 0 is the graphics object's own composite
+		composites = new Composite[MAX_COMPOSITES + 1];
+		compositeCount = 1;
+	}
+	
+	/**
+	 * Starts a batch.
+	 * @param g The graphics object end() draws with.
+	 */
+	public void begin(Graphics2D g) {
+		if(this.g != null) {
+			throw new IllegalStateException("begin() called twice without end()");
+		}
+		this.g = g;
+		this.count = 0;
+	}
+	
+	/**
+	 * Draws an image on layer 0.
+	 * @param image The image to draw.
+	 * @param x The horizontal position to draw at.
+	 * @param y The vertical position to draw at.
+	 */
+	public void draw(Image image, int x, int y) {
+		add(image, x, y, -1, 0, 0, 0, 0, null);
+	}
+	
+	/**
+	 * Draws an image.
+	 * @param image The image to draw.
+	 * @param x The horizontal position to draw at.
+	 * @param y The vertical position to draw at.
+	 * @param layer The layer to draw on, from MIN_LAYER to MAX_LAYER.
+	 */
+	public void draw(Image image, int x, int y, int layer) {
+		add(image, x, y, -1, 0, 0, 0, layer, null);
+	}
+	
+	/**
+	 * Draws an image with a composite.
+	 * @param image The image to draw.
+	 * @param x The horizontal position to draw at.
+	 * @param y The vertical position to draw at.
+	 * @param layer The layer to draw on, from MIN_LAYER to MAX_LAYER.
+	 * @param composite The composite to draw with, or null for the composite the graphics object already has. Composites are matched by identity, 
+	 * 		  so reuse the same Composite objects; at most 255 different ones per batch.
+	 */
+	public void draw(Image image, int x, int y, int layer, Composite composite) {
+		add(image, x, y, -1, 0, 0, 0, layer, composite);
+	}
+	
+	/**
+	 * Draws part of an image.
+	 * @param image The image to draw from.
+	 * @param x The horizontal position to draw at.
+	 * @param y The vertical position to draw at.
+	 * @param sx The left edge of the part of the image to draw.
+	 * @param sy The top edge of the part of the image to draw.
+	 * @param w The width of the part to draw.
+	 * @param h The height of the part to draw.
+	 * @param layer The layer to draw on, from MIN_LAYER to MAX_LAYER.
+	 */
+	public void draw(Image image, int x, int y, int sx, int sy, int w, int h, int layer) {
+		if(sx < 0) {
+			throw new IllegalArgumentException("Source rectangle outside the image");
+		}
+		add(image, x, y, sx, sy, w, h, layer, null);
+	}
+	
+	/**
+	 * Draws an AtlasRegion. Regions on the same page are drawn in the same run.
+	 * @param region The region to draw.
+	 * @param x The horizontal position to draw at.
+	 * @param y The vertical position to draw at.
+	 * @param layer The layer to draw on, from MIN_LAYER to MAX_LAYER.
+	 */
+	public void draw(AtlasRegion region, int x, int y, int layer) {
+		draw(region, x, y, layer, null);
+	}
+	
+	/**
+	 * Draws an AtlasRegion with a composite. Regions on the same page are drawn in the same run.
+	 * @param region The region to draw.
+	 * @param x The horizontal position to draw at.
+	 * @param y The vertical position to draw at.
+	 * @param layer The layer to draw on, from MIN_LAYER to MAX_LAYER.
+	 * @param composite The composite to draw with, or null for the composite the graphics object already has.
+	 */
+	public void draw(AtlasRegion region, int x, int y, int layer, Composite composite) {
+		add(region.getPage(), x, y, region.getX(), region.getY(), region.getWidth(), region.getHeight(), layer, composite);
+	}
+	
+	/**
+	 * Draws the current frame of a Sprite at its position.
+	 * @param sprite The sprite to draw.
+	 * @param layer The layer to draw on, from MIN_LAYER to MAX_LAYER.
+	 */
+	public void draw(Sprite sprite, int layer) {
+		int x = Math.round(sprite.getX());
+		int y = Math.round(sprite.getY());
+		AtlasRegion region = sprite.getRegion();
+		if(region != null) {
+			draw(region, x, y, layer, null);
+		} else {
+			draw(sprite.getImage(), x, y, layer, null);
+		}
+	}
+	
+	/**
+	 * Records a draw. sx is -1 to draw the whole image.
+	 */
+	private void add(Image image, int x, int y, int sx, int sy, int w, int h, int layer, Composite composite) {
+		if(g == null) {
+			throw new IllegalStateException("draw() called without begin()");
+		}
+		if(layer < MIN_LAYER || layer > MAX_LAYER) {
+			throw new IllegalArgumentException("Layer out of range: " + layer);
+		}
+		if(image == null) {
+			return;
+		}
+		// everything that can fail comes before the draw is recorded, so a failed draw leaves the batch usable
+		int compositeId = getCompositeId(composite);
+		if(count == keys.length) {
+			grow();
+		}
+		
+		int index = count++;
+		images[index] = image;
+		positions[index * 2] = x;
+		positions[index * 2 + 1] = y;
+		sources[index * 4] = sx;
+		sources[index * 4 + 1] = sy;
+		sources[index * 4 + 2] = w;
+		sources[index * 4 + 3] = h;
+		keys[index] = (long) (layer - MIN_LAYER) << 48 | (long) getImageId(image) << 32 | (long) compositeId << 24 | index;
+	}
+	
+	private int getImageId(Image image) {
+		Integer id = imageIds.get(image);
+		if(id == null) {
+			if(imageIds.size() >= MAX_IMAGES) {
+				// the key can't hold more images, so the rest of this batch's images share the last id and aren't grouped
+				return MAX_IMAGES;
+			}
+			id = imageIds.size();
+			imageIds.put(image, id);
+		}
+		return id;
+	}
+	
+	private int getCompositeId(Composite composite) {
+		if(composite == null) {
+			return 0;
+		}
+		for(int i = 1; i < compositeCount; i++) {
+			if(composites[i] == composite) {
+				return i;
+			}
+		}
+		if(compositeCount == composites.length) {
+			throw new IllegalStateException("More than " + MAX_COMPOSITES + " composites in one batch");
+		}
+		composites[compositeCount] = composite;
+		return compositeCount++;
+	}
+	
+	private void grow() {
+		if(keys.length >= MAX_SPRITES + 1) {
+			throw new IllegalStateException("More than " + (MAX_SPRITES + 1) + " draws in one batch");
+		}
+		int capacity = Math.min(keys.length * 2, MAX_SPRITES + 1);
+		keys = Arrays.copyOf(keys, capacity);
+		images = Arrays.copyOf(images, capacity);
+		positions = Arrays.copyOf(positions, capacity * 2);
+		sources = Arrays.copyOf(sources, capacity * 4);
+	}
+	
+	/**
+	 * Sorts the draws of the batch and issues them. The composite of the graphics object is restored afterwards.
+	 */
+	public void end() {
+		if(g == null) {
+			throw new IllegalStateException("end() called without begin()");
+		}
+		Arrays.sort(keys, 0, count);
+		
+		Composite original = g.getComposite();
+		int composite = -1;
+		long run = -1;
+		runCount = 0;
+		for(int i = 0; i < count; i++) {
+			long key = keys[i];
+			int index = (int) (key & MAX_SPRITES);
+			
+			if((key >>> 24) != run) {
+				run = key >>> 24;
+				runCount++;
+				int compositeId = (int) run & MAX_COMPOSITES;
+				if(compositeId != composite) {
+					g.setComposite(compositeId == 0 ? original : composites[compositeId]);
+					composite = compositeId;
+				}
+			}
+			
+			Image image = images[index];
+			int x = positions[index * 2];
+			int y = positions[index * 2 + 1];
+			int sx = sources[index * 4];
+			if(sx < 0) {
+				g.drawImage(image, x, y, null);
+			} else {
+				int sy = sources[index * 4 + 1];
+				int w = sources[index * 4 + 2];
+				int h = sources[index * 4 + 3];
+				g.drawImage(image, x, y, x + w, y + h, sx, sy, sx + w, sy + h, null);
+			}
+			images[index] = null;
+		}
+		// ids are only used to sort this batch, and keeping them would hold on to every image and composite ever drawn
+		imageIds.clear();
+		Arrays.fill(composites, 1, compositeCount, null);
+		compositeCount = 1;
+		g.setComposite(original);
+		g = null;
+	}
+	
+	/**
+	 * Gets the number of draws in the last batch.
+	 * @return The number of draws.
+	 */
+	public int getDrawCount() {
+		return count;
+	}
+	
+	/**
+	 * Gets the number of runs of draws sharing an image and composite in the last batch. 
+	 * The fewer runs per draw, the fewer state changes.
+	 * @return The number of runs.
+	 */
+	public int getRunCount() {
+		return runCount;
+	}
+}
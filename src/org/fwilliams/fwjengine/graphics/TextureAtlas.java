@@ -0,0 +1,202 @@
+package org.fwilliams.fwjengine.graphics;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.fwilliams.fwjengine.core.ScreenManager;
+
+/**
+ * Combines many small images into a few large pages. Add images by name, call pack() once they're all added and then look up 
+ * the AtlasRegion of each image. Drawing many regions of the same page is cheaper than drawing as many separate images, 
+ * and the pages are created compatible with the screen.
+ * <br>
+ * Images are packed tallest first with the skyline bottom-left algorithm. Images larger than a page get a page of their own.
+ * @author Francis Williams
+ *
+ */
+public class TextureAtlas {
+	/**
+	 * The default width and height of a page.
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 1024;
+	
+	/**
+	 * The empty space left around every image so neighbouring images don't bleed into each other when scaled.
+	 */
+	public static final int PADDING = 1;
+	
+	private ScreenManager screen;
+	private int pageWidth;
+	private int pageHeight;
+	private ArrayList<PendingImage> pending;
+	private HashMap<String, AtlasRegion> regions;
+	private ArrayList<BufferedImage> pages;
+	
+	/**
+	 * Creates a new, empty atlas with pages of the default size.
+	 * @param screen The screen pages are made compatible with. If null pages are TYPE_INT_ARGB_PRE.
+	 */
+	public TextureAtlas(ScreenManager screen) {
+		this(screen, DEFAULT_PAGE_SIZE, DEFAULT_PAGE_SIZE);
+	}
+	
+	/**
+	 * Creates a new, empty atlas.
+	 * @param screen The screen pages are made compatible with. If null pages are TYPE_INT_ARGB_PRE.
+	 * @param pageWidth The width of a page.
+	 * @param pageHeight The height of a page.
+	 */
+	public TextureAtlas(ScreenManager screen, int pageWidth, int pageHeight) {
+		this.screen = screen;
+		this.pageWidth = pageWidth;
+		this.pageHeight = pageHeight;
+		this.pending = new ArrayList<PendingImage>();
+		this.regions = new HashMap<String, AtlasRegion>();
+		this.pages = new ArrayList<BufferedImage>();
+	}
+	
+	/**
+	 * Adds an image to be packed by the next call to pack().
+	 * @param name The name to look up the image's region by.
+	 * @param image A fully loaded image.
+	 */
+	public void add(String name, Image image) {
+		int width = image.getWidth(null);
+		int height = image.getHeight(null);
+		if(width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Image " + name + " is not loaded");
+		}
+		pending.add(new PendingImage(name, image, width, height));
+	}
+	
+	/**
+	 * Packs every image added since the last call into new pages and creates their regions.
+	 */
+	public void pack() {
+		Collections.sort(pending, new Comparator<PendingImage>() {
+			@Override
+			public int compare(PendingImage a, PendingImage b) {
+				if(a.height != b.height) {
+					return b.height - a.height;
+				}
+				return b.width - a.width;
+			}
+		});
+		
+		ArrayList<SkylinePacker> packers = new ArrayList<SkylinePacker>();
+		ArrayList<ArrayList<PendingImage>> contents = new ArrayList<ArrayList<PendingImage>>();
+		ArrayList<Point> sizes = new ArrayList<Point>();
+		
+		for(PendingImage image : pending) {
+			int w = image.width + 2 * PADDING;
+			int h = image.height + 2 * PADDING;
+			
+			Point position = null;
+			int page = -1;
+			for(int i=0; i<packers.size() && position == null; i++) {
+				position = packers.get(i).insert(w, h);
+				page = i;
+			}
+			if(position == null) {
+				// start a new page, big enough for the image if it's larger than a page
+				int width = Math.max(pageWidth, w);
+				int height = Math.max(pageHeight, h);
+				SkylinePacker packer = new SkylinePacker(width, height);
+				packers.add(packer);
+				contents.add(new ArrayList<PendingImage>());
+				sizes.add(new Point(width, height));
+				position = packer.insert(w, h);
+				page = packers.size() - 1;
+			}
+			image.x = position.x + PADDING;
+			image.y = position.y + PADDING;
+			contents.get(page).add(image);
+		}
+		
+		for(int i=0; i<contents.size(); i++) {
+			BufferedImage page = createPage(sizes.get(i).x, sizes.get(i).y);
+			Graphics2D g = page.createGraphics();
+			g.setComposite(AlphaComposite.Src);
+			for(PendingImage image : contents.get(i)) {
+				g.drawImage(image.image, image.x, image.y, null);
+				regions.put(image.name, new AtlasRegion(page, image.x, image.y, image.width, image.height));
+			}
+			g.dispose();
+			pages.add(page);
+		}
+		pending.clear();
+	}
+	
+	/**
+	 * Gets the region of a packed image.
+	 * @param name The name the image was added with.
+	 * @return The image's region, or null if there is no packed image with that name.
+	 */
+	public AtlasRegion getRegion(String name) {
+		return regions.get(name);
+	}
+	
+	/**
+	 * Gets the regions of every packed image by name.
+	 * @return A map from image names to regions.
+	 */
+	public Map<String, AtlasRegion> getRegions() {
+		return Collections.unmodifiableMap(regions);
+	}
+	
+	/**
+	 * Gets the number of packed pages.
+	 * @return The number of pages.
+	 */
+	public int getPageCount() {
+		return pages.size();
+	}
+	
+	/**
+	 * Gets a packed page.
+	 * @param index The zero-based page index.
+	 * @return The page image.
+	 */
+	public BufferedImage getPage(int index) {
+		return pages.get(index);
+	}
+	
+	private BufferedImage createPage(int width, int height) {
+		BufferedImage page = null;
+		if(screen != null) {
+			page = screen.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+		}
+		if(page == null) {
+			page = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+		return page;
+	}
+	
+	/**
+	 * An image waiting to be packed and, once placed, its position on the page.
+	 */
+	private static class PendingImage {
+		String name;
+		Image image;
+		int width;
+		int height;
+		int x;
+		int y;
+		
+		PendingImage(String name, Image image, int width, int height) {
+			this.name = name;
+			this.image = image;
+			this.width = width;
+			this.height = height;
+		}
+	}
+}
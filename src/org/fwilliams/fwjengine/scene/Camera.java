@@ -0,0 +1,219 @@
+package org.fwilliams.fwjengine.scene;
+
+import java.awt.Graphics2D;
+
+import org.fwilliams.fwjengine.entity.Sprite;
+
+/**
+ * A viewport onto a world larger than the screen. The camera's position is the world position of the top left corner of the screen, 
+ * so a world position is drawn at (worldX - getX(), worldY - getY()) on the screen. Anything that doesn't overlap the viewport, 
+ * widened by the margin, can be skipped by drawing and animation.
+ * <br>
+ * Layers with a scroll factor other than 1 move slower (parallax backgrounds) or not at all (HUDs) when the camera moves.
+ * @author Francis Williams
+ *
+ */
+public class Camera {
+	private float x;
+	private float y;
+	private int width;
+	private int height;
+	private int margin;
+	private int worldWidth;
+	private int worldHeight;
+	
+	/**
+	 * Creates a new Camera at the origin of the world.
+	 * @param width The width of the viewport, usually the width of the screen.
+	 * @param height The height of the viewport, usually the height of the screen.
+	 */
+	public Camera(int width, int height) {
+		setSize(width, height);
+	}
+	
+	/**
+	 * Sets the size of the viewport.
+	 * @param width The width of the viewport.
+	 * @param height The height of the viewport.
+	 */
+	public void setSize(int width, int height) {
+		if(width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Viewport size must be positive");
+		}
+		this.width = width;
+		this.height = height;
+		setPosition(x, y);
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Limits the camera to a world of the given size, so it never shows anything outside the world.
+	 * @param worldWidth The width of the world, or 0 for no limit.
+	 * @param worldHeight The height of the world, or 0 for no limit.
+	 */
+	public void setWorldBounds(int worldWidth, int worldHeight) {
+		this.worldWidth = Math.max(0, worldWidth);
+		this.worldHeight = Math.max(0, worldHeight);
+		setPosition(x, y);
+	}
+	
+	/**
+	 * Sets how far outside the viewport things still count as visible, e.g. for sprites drawn larger than their bounds.
+	 * @param margin The margin in pixels.
+	 */
+	public void setMargin(int margin) {
+		if(margin < 0) {
+			throw new IllegalArgumentException("Margin must not be negative");
+		}
+		this.margin = margin;
+	}
+	
+	public int getMargin() {
+		return margin;
+	}
+	
+	/**
+	 * Moves the top left corner of the viewport to a world position, kept within the world bounds if they are set.
+	 * @param x The horizontal world position.
+	 * @param y The vertical world position.
+	 */
+	public void setPosition(float x, float y) {
+		if(worldWidth > 0) {
+			x = Math.max(0, Math.min(x, worldWidth - width));
+		}
+		if(worldHeight > 0) {
+			y = Math.max(0, Math.min(y, worldHeight - height));
+		}
+		this.x = x;
+		this.y = y;
+	}
+	
+	/**
+	 * Moves the viewport by a distance.
+	 * @param dx The horizontal distance.
+	 * @param dy The vertical distance.
+	 */
+	public void translate(float dx, float dy) {
+		setPosition(x + dx, y + dy);
+	}
+	
+	/**
+	 * Moves the viewport so a world position is in its center.
+	 * @param x The horizontal world position.
+	 * @param y The vertical world position.
+	 */
+	public void centerOn(float x, float y) {
+		setPosition(x - width / 2f, y - height / 2f);
+	}
+	
+	/**
+	 * Moves the viewport so a sprite is in its center.
+	 * @param sprite The sprite to follow.
+	 */
+	public void centerOn(Sprite sprite) {
+		centerOn(sprite.getX() + sprite.getWidth() / 2f, sprite.getY() + sprite.getHeight() / 2f);
+	}
+	
+	/**
+	 * Gets the horizontal world position of the left edge of the viewport.
+	 * @return The horizontal position.
+	 */
+	public float getX() {
+		return x;
+	}
+	
+	/**
+	 * Gets the vertical world position of the top edge of the viewport.
+	 * @return The vertical position.
+	 */
+	public float getY() {
+		return y;
+	}
+	
+	/**
+	 * Converts a horizontal world position to a screen position.
+	 * @param worldX The horizontal world position.
+	 * @return The horizontal screen position.
+	 */
+	public float toScreenX(float worldX) {
+		return worldX - x;
+	}
+	
+	/**
+	 * Converts a vertical world position to a screen position.
+	 * @param worldY The vertical world position.
+	 * @return The vertical screen position.
+	 */
+	public float toScreenY(float worldY) {
+		return worldY - y;
+	}
+	
+	/**
+	 * Converts a horizontal screen position, e.g. of the mouse, to a world position.
+	 * @param screenX The horizontal screen position.
+	 * @return The horizontal world position.
+	 */
+	public float toWorldX(float screenX) {
+		return screenX + x;
+	}
+	
+	/**
+	 * Converts a vertical screen position, e.g. of the mouse, to a world position.
+	 * @param screenY The vertical screen position.
+	 * @return The vertical world position.
+	 */
+	public float toWorldY(float screenY) {
+		return screenY + y;
+	}
+	
+	/**
+	 * Checks if a rectangle of the world overlaps the viewport, widened by the margin.
+	 * @param x The left edge of the rectangle.
+	 * @param y The top edge of the rectangle.
+	 * @param w The width of the rectangle.
+	 * @param h The height of the rectangle.
+	 * @return True if the rectangle may be visible.
+	 */
+	public boolean isVisible(float x, float y, int w, int h) {
+		return isVisible(x, y, w, h, 1.0f);
+	}
+	
+	/**
+	 * Checks if a rectangle of a layer with a scroll factor overlaps the viewport, widened by the margin.
+	 * @param x The left edge of the rectangle.
+	 * @param y The top edge of the rectangle.
+	 * @param w The width of the rectangle.
+	 * @param h The height of the rectangle.
+	 * @param scrollFactor How fast the layer moves with the camera.
+	 * @return True if the rectangle may be visible.
+	 */
+	public boolean isVisible(float x, float y, int w, int h, float scrollFactor) {
+		float left = this.x * scrollFactor - margin;
+		float top = this.y * scrollFactor - margin;
+		return x + w > left && y + h > top && x < left + width + 2 * margin && y < top + height + 2 * margin;
+	}
+	
+	/**
+	 * Checks if a sprite overlaps the viewport, widened by the margin.
+	 * @param sprite The sprite.
+	 * @return True if the sprite may be visible.
+	 */
+	public boolean isVisible(Sprite sprite) {
+		return isVisible(sprite.getX(), sprite.getY(), sprite.getWidth(), sprite.getHeight());
+	}
+	
+	/**
+	 * Translates a graphics object so drawing at world positions draws at the matching screen positions.
+	 * @param g The graphics object.
+	 */
+	public void apply(Graphics2D g) {
+		g.translate(-Math.round(x), -Math.round(y));
+	}
+}
@@ -0,0 +1,306 @@
+package org.fwilliams.fwjengine.scene;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.fwilliams.fwjengine.core.ScreenManager;
+import org.fwilliams.fwjengine.entity.Sprite;
+import org.fwilliams.fwjengine.graphics.AtlasRegion;
+import org.fwilliams.fwjengine.graphics.SpriteBatch;
+
+/**
+ * A layer of Sprites in a Scene. A dynamic layer draws and updates its sprites every frame. A static layer renders its sprites 
+ * once into a cached compatible image and draws only that image until it is invalidated, which happens automatically when 
+ * sprites are added or removed. Call invalidate() after moving a sprite of a static layer. Sprites of static layers aren't updated.
+ * <br>
+ * The cache covers the scene and every sprite of the layer, so a static layer can be larger than the screen and scrolled 
+ * through a Camera. A static layer whose cache would be larger than MAX_CACHE_PIXELS isn't cached at all: it is drawn like 
+ * a dynamic layer, culled to the camera's viewport, but still not updated. Use a TileMap for large static backgrounds.
+ * <br>
+ * When the scene is drawn through a Camera, sprites of dynamic layers outside the viewport are neither drawn nor animated, 
+ * only moved. A layer's scroll factor sets how fast it moves with the camera: 1 for the world, less for distant backgrounds 
+ * and 0 for layers fixed to the screen.
+ * <br>
+ * Override draw(SpriteBatch, Sprite, int, int, int) to change how sprites are drawn, e.g. rotated.
+ * @author Francis Williams
+ *
+ */
+public class Layer {
+	/**
+	 * The largest number of pixels a static layer's cache may have, 4096 by 2048.
+	 */
+	public static final int MAX_CACHE_PIXELS = 4096 * 2048;
+	
+	private ArrayList<Sprite> sprites;
+	private boolean isStatic;
+	private boolean opaque;
+	private boolean visible;
+	private float scrollFactor;
+	private BufferedImage cache;
+	private int cacheX;
+	private int cacheY;
+	private boolean valid;
+	
+	/**
+	 * Creates a new, empty dynamic layer.
+	 */
+	public Layer() {
+		this(false);
+	}
+	
+	/**
+	 * Creates a new, empty layer.
+	 * @param isStatic True for a layer that is cached in an image, false for a layer that is drawn every frame.
+	 */
+	public Layer(boolean isStatic) {
+		this.sprites = new ArrayList<Sprite>();
+		this.isStatic = isStatic;
+		this.visible = true;
+		this.scrollFactor = 1.0f;
+	}
+	
+	/**
+	 * Adds a sprite to the top of the layer.
+	 * @param sprite The sprite to add.
+	 */
+	public void add(Sprite sprite) {
+		sprites.add(sprite);
+		invalidate();
+	}
+	
+	/**
+	 * Removes a sprite from the layer.
+	 * @param sprite The sprite to remove.
+	 */
+	public void remove(Sprite sprite) {
+		if(sprites.remove(sprite)) {
+			invalidate();
+		}
+	}
+	
+	/**
+	 * Removes every sprite from the layer.
+	 */
+	public void clear() {
+		sprites.clear();
+		invalidate();
+	}
+	
+	/**
+	 * Gets the sprites of the layer, from bottom to top.
+	 * @return An unmodifiable list of the sprites.
+	 */
+	public List<Sprite> getSprites() {
+		return Collections.unmodifiableList(sprites);
+	}
+	
+	/**
+	 * Sets whether the layer is cached in an image. Layers that cache themselves in other ways, like TileMap, can't be static.
+	 * @param isStatic True to cache the layer, false to draw it every frame.
+	 * @throws IllegalArgumentException if isStatic is true and the layer can't be static.
+	 */
+	public void setStatic(boolean isStatic) {
+		this.isStatic = isStatic;
+		if(!isStatic) {
+			cache = null;
+		}
+		invalidate();
+	}
+	
+	public boolean isStatic() {
+		return isStatic;
+	}
+	
+	/**
+	 * Sets whether a static layer covers everything below it, so its cache can be an opaque image, which draws faster.
+	 * @param opaque True if the layer's sprites cover the whole scene with opaque pixels.
+	 */
+	public void setOpaque(boolean opaque) {
+		if(this.opaque != opaque) {
+			this.opaque = opaque;
+			cache = null;
+			invalidate();
+		}
+	}
+	
+	public boolean isOpaque() {
+		return opaque;
+	}
+	
+	public void setVisible(boolean visible) {
+		this.visible = visible;
+	}
+	
+	public boolean isVisible() {
+		return visible;
+	}
+	
+	/**
+	 * Sets how fast the layer moves when the camera moves.
+	 * @param scrollFactor 1 to move with the world, between 0 and 1 for parallax backgrounds, 0 to stay fixed on the screen.
+	 */
+	public void setScrollFactor(float scrollFactor) {
+		if(scrollFactor < 0) {
+			throw new IllegalArgumentException("Scroll factor must not be negative");
+		}
+		this.scrollFactor = scrollFactor;
+	}
+	
+	public float getScrollFactor() {
+		return scrollFactor;
+	}
+	
+	/**
+	 * Makes a static layer render its sprites again the next time it is drawn.
+	 */
+	public void invalidate() {
+		valid = false;
+	}
+	
+	/**
+	 * Updates the animation and position of every sprite of a dynamic layer. Does nothing for static layers.
+	 * @param elapsedTime The time elapsed since the last update.
+	 */
+	public void update(long elapsedTime) {
+		update(elapsedTime, null);
+	}
+	
+	/**
+	 * Updates the position of every sprite of a dynamic layer, and the animation of those the camera can see. 
+	 * Does nothing for static layers.
+	 * @param elapsedTime The time elapsed since the last update.
+	 * @param camera The camera the layer is seen through, or null to animate every sprite.
+	 */
+	public void update(long elapsedTime, Camera camera) {
+		if(!isStatic) {
+			for(int i = 0; i < sprites.size(); i++) {
+				Sprite sprite = sprites.get(i);
+				sprite.update(elapsedTime, camera == null || isVisible(sprite, camera));
+			}
+		}
+	}
+	
+	/**
+	 * Checks if a sprite of the layer may be seen through a camera. Override along with draw(SpriteBatch, Sprite, int, int, int) 
+	 * if sprites are drawn outside their bounds.
+	 * @param sprite The sprite.
+	 * @param camera The camera.
+	 * @return True if the sprite may be visible.
+	 */
+	protected boolean isVisible(Sprite sprite, Camera camera) {
+		float x = sprite.getX();
+		float y = sprite.getY();
+		// sprites starting right of or below the viewport are rejected before looking up the size of their current frame
+		if(!camera.isVisible(x, y, Integer.MAX_VALUE, Integer.MAX_VALUE, scrollFactor)) {
+			return false;
+		}
+		return camera.isVisible(x, y, sprite.getWidth(), sprite.getHeight(), scrollFactor);
+	}
+	
+	/**
+	 * Draws a sprite of the layer. By default the sprite's current frame is drawn at the given position.
+	 * @param batch The batch to draw with.
+	 * @param sprite The sprite to draw.
+	 * @param x The horizontal position to draw the sprite at, the sprite's position moved by the camera.
+	 * @param y The vertical position to draw the sprite at, the sprite's position moved by the camera.
+	 * @param layer The batch layer to draw on.
+	 */
+	protected void draw(SpriteBatch batch, Sprite sprite, int x, int y, int layer) {
+		AtlasRegion region = sprite.getRegion();
+		if(region != null) {
+			batch.draw(region, x, y, layer, null);
+		} else {
+			batch.draw(sprite.getImage(), x, y, layer);
+		}
+	}
+	
+	/**
+	 * Renders a static layer into its cache if it isn't valid, before the scene's batch begins. The cache covers the scene and 
+	 * the bounds of every sprite; if that is more than MAX_CACHE_PIXELS the layer is left without a cache.
+	 * @param batch A batch that isn't in use.
+	 */
+	void prepare(SpriteBatch batch, ScreenManager screen, int width, int height) {
+		if(!isStatic || valid) {
+			return;
+		}
+		int left = 0;
+		int top = 0;
+		int right = width;
+		int bottom = height;
+		for(int i = 0; i < sprites.size(); i++) {
+			Sprite sprite = sprites.get(i);
+			int x = Math.round(sprite.getX());
+			int y = Math.round(sprite.getY());
+			left = Math.min(left, x);
+			top = Math.min(top, y);
+			right = Math.max(right, x + sprite.getWidth());
+			bottom = Math.max(bottom, y + sprite.getHeight());
+		}
+		long pixels = (long) (right - left) * (bottom - top);
+		valid = true;
+		if(pixels > MAX_CACHE_PIXELS) {
+			cache = null;
+			return;
+		}
+		
+		int cacheWidth = right - left;
+		int cacheHeight = bottom - top;
+		cacheX = left;
+		cacheY = top;
+		if(cache == null || cache.getWidth() != cacheWidth || cache.getHeight() != cacheHeight) {
+			int transparency = opaque ? Transparency.OPAQUE : Transparency.TRANSLUCENT;
+			cache = screen != null ? screen.createCompatibleImage(cacheWidth, cacheHeight, transparency) : null;
+			if(cache == null) {
+				cache = new BufferedImage(cacheWidth, cacheHeight, opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+			}
+		} else if(!opaque) {
+			Graphics2D clear = cache.createGraphics();
+			clear.setComposite(AlphaComposite.Clear);
+			clear.fillRect(0, 0, cacheWidth, cacheHeight);
+			clear.dispose();
+		}
+		
+		Graphics2D g = cache.createGraphics();
+		batch.begin(g);
+		for(int i = 0; i < sprites.size(); i++) {
+			Sprite sprite = sprites.get(i);
+			draw(batch, sprite, Math.round(sprite.getX()) - cacheX, Math.round(sprite.getY()) - cacheY, 0);
+		}
+		batch.end();
+		g.dispose();
+	}
+	
+	/**
+	 * Draws the layer into the scene's batch, culling sprites and the cache to the camera's viewport if there is one.
+	 */
+	void draw(SpriteBatch batch, int layer, Camera camera) {
+		int scrollX = camera != null ? Math.round(camera.getX() * scrollFactor) : 0;
+		int scrollY = camera != null ? Math.round(camera.getY() * scrollFactor) : 0;
+		if(isStatic && cache != null) {
+			if(camera == null) {
+				batch.draw(cache, cacheX, cacheY, layer);
+				return;
+			}
+			// the part of the cache inside the viewport, in cache coordinates
+			int sx = Math.max(0, scrollX - cacheX);
+			int sy = Math.max(0, scrollY - cacheY);
+			int w = Math.min(cache.getWidth(), scrollX - cacheX + camera.getWidth()) - sx;
+			int h = Math.min(cache.getHeight(), scrollY - cacheY + camera.getHeight()) - sy;
+			if(w > 0 && h > 0) {
+				batch.draw(cache, cacheX + sx - scrollX, cacheY + sy - scrollY, sx, sy, w, h, layer);
+			}
+		} else {
+			for(int i = 0; i < sprites.size(); i++) {
+				Sprite sprite = sprites.get(i);
+				if(camera == null || isVisible(sprite, camera)) {
+					draw(batch, sprite, Math.round(sprite.getX()) - scrollX, Math.round(sprite.getY()) - scrollY, layer);
+				}
+			}
+		}
+	}
+}
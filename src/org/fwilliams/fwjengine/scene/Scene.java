@@ -0,0 +1,157 @@
+package org.fwilliams.fwjengine.scene;
+
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.fwilliams.fwjengine.core.ScreenManager;
+import org.fwilliams.fwjengine.graphics.SpriteBatch;
+
+/**
+ * An ordered stack of Layers drawn with a single call. Layers are drawn from the first added (bottom) to the last added (top) 
+ * through one SpriteBatch, so sprites of a layer that share an image are drawn together. Static layers are re-rendered into their 
+ * caches before the frame is drawn if they were invalidated.
+ * <br>
+ * Pass a Camera to update and draw to look at a world larger than the screen. Only what the camera can see is then drawn and 
+ * animated, but every sprite of a dynamic layer is still checked against the viewport each frame, so the cost of a frame 
+ * still grows with the number of sprites in the world. Put the static bulk of a large world in a TileMap, which only 
+ * looks at the tiles on screen.
+ * @author Francis Williams
+ *
+ */
+public class Scene {
+	private ScreenManager screen;
+	private int width;
+	private int height;
+	private ArrayList<Layer> layers;
+	private SpriteBatch batch;
+	
+	/**
+	 * Creates a new, empty Scene the size of the screen.
+	 * @param screen The screen the scene is drawn on, used to create compatible caches for static layers.
+	 */
+	public Scene(ScreenManager screen) {
+		this(screen, screen.getWidth(), screen.getHeight());
+	}
+	
+	/**
+	 * Creates a new, empty Scene.
+	 * @param screen The screen the scene is drawn on, used to create compatible caches for static layers. May be null.
+	 * @param width The width of the scene, and the smallest width of static layer caches.
+	 * @param height The height of the scene, and the smallest height of static layer caches.
+	 */
+	public Scene(ScreenManager screen, int width, int height) {
+		if(width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Scene size must be positive");
+		}
+		this.screen = screen;
+		this.width = width;
+		this.height = height;
+		this.layers = new ArrayList<Layer>();
+		this.batch = new SpriteBatch();
+	}
+	
+	/**
+	 * Adds a layer on top of every other layer.
+	 * @param layer The layer to add.
+	 * @return The layer.
+	 */
+	public Layer addLayer(Layer layer) {
+		if(layers.size() > SpriteBatch.MAX_LAYER) {
+			throw new IllegalStateException("Too many layers");
+		}
+		layers.add(layer);
+		return layer;
+	}
+	
+	/**
+	 * Removes a layer.
+	 * @param layer The layer to remove.
+	 */
+	public void removeLayer(Layer layer) {
+		layers.remove(layer);
+	}
+	
+	/**
+	 * Gets the layers of the scene, from bottom to top.
+	 * @return An unmodifiable list of the layers.
+	 */
+	public List<Layer> getLayers() {
+		return Collections.unmodifiableList(layers);
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Invalidates every static layer.
+	 */
+	public void invalidate() {
+		for(int i = 0; i < layers.size(); i++) {
+			layers.get(i).invalidate();
+		}
+	}
+	
+	/**
+	 * Updates the sprites of every dynamic layer.
+	 * @param elapsedTime The time elapsed since the last update.
+	 */
+	public void update(long elapsedTime) {
+		update(elapsedTime, null);
+	}
+	
+	/**
+	 * Updates the sprites of every dynamic layer, animating only the sprites the camera can see.
+	 * @param elapsedTime The time elapsed since the last update.
+	 * @param camera The camera the scene is seen through, or null to animate every sprite.
+	 */
+	public void update(long elapsedTime, Camera camera) {
+		for(int i = 0; i < layers.size(); i++) {
+			layers.get(i).update(elapsedTime, camera);
+		}
+	}
+	
+	/**
+	 * Draws every visible layer, bottom to top.
+	 * @param g The graphics object to draw with.
+	 */
+	public void draw(Graphics2D g) {
+		draw(g, null);
+	}
+	
+	/**
+	 * Draws what a camera can see of every visible layer, bottom to top.
+	 * @param g The graphics object to draw with.
+	 * @param camera The camera the scene is seen through, or null to draw everything at its own position.
+	 */
+	public void draw(Graphics2D g, Camera camera) {
+		for(int i = 0; i < layers.size(); i++) {
+			Layer layer = layers.get(i);
+			if(layer.isVisible()) {
+				layer.prepare(batch, screen, width, height);
+			}
+		}
+		batch.begin(g);
+		for(int i = 0; i < layers.size(); i++) {
+			Layer layer = layers.get(i);
+			if(layer.isVisible()) {
+				layer.draw(batch, i, camera);
+			}
+		}
+		batch.end();
+	}
+	
+	/**
+	 * Gets the number of images drawn by the last call to draw, to see how much culling saved.
+	 * @return The number of draws.
+	 */
+	public int getDrawCount() {
+		return batch.getDrawCount();
+	}
+}
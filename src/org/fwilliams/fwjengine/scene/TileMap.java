@@ -0,0 +1,419 @@
+package org.fwilliams.fwjengine.scene;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.fwilliams.fwjengine.core.ScreenManager;
+import org.fwilliams.fwjengine.graphics.AtlasRegion;
+import org.fwilliams.fwjengine.graphics.SpriteBatch;
+
+/**
+ * A Layer made of a grid of tiles, drawn under the layer's sprites. Tile indices are stored as shorts in square chunks of
+ * CHUNK_SIZE tiles, which are only allocated once a tile in them is set. Tile 0 is empty. Each chunk the camera can see is
+ * rendered once into a cached image, so a frame costs a few blits however many tiles are visible. Changing a tile re-renders
+ * only its chunk, and chunk images are reused for other chunks when the least recently used ones are evicted.
+ * <br>
+ * Tile maps can't be static layers, since the chunk images are already a cache.
+ * @author Francis Williams
+ *
+ */
+public class TileMap extends Layer {
+	public static final int CHUNK_SIZE = 16;
+	public static final int DEFAULT_MAX_CACHED_CHUNKS = 64;
+	public static final int EMPTY = 0;
+	
+	private ScreenManager screen;
+	private int width;
+	private int height;
+	private int tileWidth;
+	private int tileHeight;
+	private int chunksX;
+	private int chunksY;
+	private short[][] chunks;
+	private int[] versions;
+	private Object[] tiles;
+	
+	private LinkedHashMap<Integer, Chunk> cache;
+	private ArrayList<BufferedImage> free;
+	private int maxCachedChunks;
+	private int frame;
+	private int viewWidth;
+	private int viewHeight;
+	private long renderCount;
+	
+	/**
+	 * Creates a new, empty TileMap.
+	 * @param screen The screen the map is drawn on, used to create compatible chunk images. May be null.
+	 * @param width The width of the map in tiles.
+	 * @param height The height of the map in tiles.
+	 * @param tileWidth The width of a tile in pixels.
+	 * @param tileHeight The height of a tile in pixels.
+	 */
+	public TileMap(ScreenManager screen, int width, int height, int tileWidth, int tileHeight) {
+		super(false);
+		if(width <= 0 || height <= 0 || tileWidth <= 0 || tileHeight <= 0) {
+			throw new IllegalArgumentException("Map and tile sizes must be positive");
+		}
+		this.screen = screen;
+		this.width = width;
+		this.height = height;
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		this.chunksX = (width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		this.chunksY = (height + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		this.chunks = new short[chunksX * chunksY][];
+		this.versions = new int[chunksX * chunksY];
+		this.tiles = new Object[16];
+		this.cache = new LinkedHashMap<Integer, Chunk>(16, 0.75f, true);
+		this.free = new ArrayList<BufferedImage>();
+		this.maxCachedChunks = DEFAULT_MAX_CACHED_CHUNKS;
+	}
+	
+	/**
+	 * Gets the width of the map in tiles.
+	 * @return The width in tiles.
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Gets the height of the map in tiles.
+	 * @return The height in tiles.
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	public int getTileWidth() {
+		return tileWidth;
+	}
+	
+	public int getTileHeight() {
+		return tileHeight;
+	}
+	
+	/**
+	 * Gets the width of the map in pixels, e.g. for Camera.setWorldBounds.
+	 * @return The width in pixels.
+	 */
+	public int getPixelWidth() {
+		return width * tileWidth;
+	}
+	
+	/**
+	 * Gets the height of the map in pixels, e.g. for Camera.setWorldBounds.
+	 * @return The height in pixels.
+	 */
+	public int getPixelHeight() {
+		return height * tileHeight;
+	}
+	
+	/**
+	 * Sets the image drawn for a tile index.
+	 * @param tile The tile index, from 1 to 65535.
+	 * @param image The image, drawn at the top left of the tile, or null to draw nothing.
+	 */
+	public void setTileImage(int tile, Image image) {
+		setTileGraphic(tile, image);
+	}
+	
+	/**
+	 * Sets the atlas region drawn for a tile index.
+	 * @param tile The tile index, from 1 to 65535.
+	 * @param region The region, drawn at the top left of the tile, or null to draw nothing.
+	 */
+	public void setTileRegion(int tile, AtlasRegion region) {
+		setTileGraphic(tile, region);
+	}
+	
+	private void setTileGraphic(int tile, Object graphic) {
+		if(tile <= EMPTY || tile > 0xffff) {
+			throw new IllegalArgumentException("Tile index out of range: " + tile);
+		}
+		if(tile >= tiles.length) {
+			Object[] newTiles = new Object[Math.max(tiles.length * 2, tile + 1)];
+			System.arraycopy(tiles, 0, newTiles, 0, tiles.length);
+			tiles = newTiles;
+		}
+		tiles[tile] = graphic;
+		invalidateChunks();
+	}
+	
+	/**
+	 * Gets the tile index at a tile position.
+	 * @param x The horizontal tile position.
+	 * @param y The vertical tile position.
+	 * @return The tile index, EMPTY if no tile was set there.
+	 */
+	public int getTile(int x, int y) {
+		checkBounds(x, y, 1, 1);
+		short[] chunk = chunks[chunkIndex(x, y)];
+		if(chunk == null) {
+			return EMPTY;
+		}
+		return chunk[(y % CHUNK_SIZE) * CHUNK_SIZE + (x % CHUNK_SIZE)] & 0xffff;
+	}
+	
+	/**
+	 * Sets the tile index at a tile position.
+	 * @param x The horizontal tile position.
+	 * @param y The vertical tile position.
+	 * @param tile The tile index, from 0 (EMPTY) to 65535.
+	 */
+	public void setTile(int x, int y, int tile) {
+		fill(x, y, 1, 1, tile);
+	}
+	
+	/**
+	 * Sets the tile index of a rectangle of tiles.
+	 * @param x The left edge of the rectangle in tiles.
+	 * @param y The top edge of the rectangle in tiles.
+	 * @param w The width of the rectangle in tiles.
+	 * @param h The height of the rectangle in tiles.
+	 * @param tile The tile index, from 0 (EMPTY) to 65535.
+	 */
+	public void fill(int x, int y, int w, int h, int tile) {
+		checkBounds(x, y, w, h);
+		if(tile < EMPTY || tile > 0xffff) {
+			throw new IllegalArgumentException("Tile index out of range: " + tile);
+		}
+		for(int ty = y; ty < y + h; ty++) {
+			for(int tx = x; tx < x + w; tx++) {
+				int index = chunkIndex(tx, ty);
+				short[] chunk = chunks[index];
+				if(chunk == null) {
+					if(tile == EMPTY) {
+						continue;
+					}
+					chunk = chunks[index] = new short[CHUNK_SIZE * CHUNK_SIZE];
+				}
+				chunk[(ty % CHUNK_SIZE) * CHUNK_SIZE + (tx % CHUNK_SIZE)] = (short) tile;
+				versions[index]++;
+			}
+		}
+	}
+	
+	/**
+	 * Sets how many chunk images to keep. Chunks that are on screen are never evicted, so more may be kept while the camera
+	 * sees more chunks than this.
+	 * @param maxCachedChunks The number of chunk images to keep.
+	 */
+	public void setMaxCachedChunks(int maxCachedChunks) {
+		if(maxCachedChunks < 0) {
+			throw new IllegalArgumentException("Cache size must not be negative");
+		}
+		this.maxCachedChunks = maxCachedChunks;
+		evict();
+	}
+	
+	public int getMaxCachedChunks() {
+		return maxCachedChunks;
+	}
+	
+	/**
+	 * Gets the number of chunk images currently cached.
+	 * @return The number of cached chunks.
+	 */
+	public int getCachedChunkCount() {
+		return cache.size();
+	}
+	
+	/**
+	 * Gets the number of times a chunk was rendered into its image, because it wasn't cached or one of its tiles changed.
+	 * @return The number of chunk renders.
+	 */
+	public long getChunkRenderCount() {
+		return renderCount;
+	}
+	
+	/**
+	 * Tile maps cache their own chunks, so they can't be static.
+	 * @throws IllegalArgumentException if isStatic is true.
+	 */
+	@Override
+	public void setStatic(boolean isStatic) {
+		if(isStatic) {
+			throw new IllegalArgumentException("Tile maps can't be static layers");
+		}
+	}
+	
+	/**
+	 * Sets whether every tile covers its whole cell with opaque pixels, so chunk images can be opaque.
+	 */
+	@Override
+	public void setOpaque(boolean opaque) {
+		if(opaque != isOpaque()) {
+			super.setOpaque(opaque);
+			cache.clear();
+			free.clear();
+		}
+	}
+	
+	@Override
+	void prepare(SpriteBatch batch, ScreenManager screen, int width, int height) {
+		viewWidth = width;
+		viewHeight = height;
+	}
+	
+	/**
+	 * Draws the visible chunks, then the layer's sprites on top.
+	 */
+	@Override
+	void draw(SpriteBatch batch, int layer, Camera camera) {
+		frame++;
+		int scrollX = 0;
+		int scrollY = 0;
+		int w = viewWidth;
+		int h = viewHeight;
+		if(camera != null) {
+			scrollX = Math.round(camera.getX() * getScrollFactor());
+			scrollY = Math.round(camera.getY() * getScrollFactor());
+			w = camera.getWidth();
+			h = camera.getHeight();
+		}
+		
+		int chunkWidth = CHUNK_SIZE * tileWidth;
+		int chunkHeight = CHUNK_SIZE * tileHeight;
+		int firstX = Math.max(0, Math.floorDiv(scrollX, chunkWidth));
+		int firstY = Math.max(0, Math.floorDiv(scrollY, chunkHeight));
+		int lastX = Math.min(chunksX - 1, Math.floorDiv(scrollX + w - 1, chunkWidth));
+		int lastY = Math.min(chunksY - 1, Math.floorDiv(scrollY + h - 1, chunkHeight));
+		for(int cy = firstY; cy <= lastY; cy++) {
+			for(int cx = firstX; cx <= lastX; cx++) {
+				int index = cy * chunksX + cx;
+				if(chunks[index] == null) {
+					continue;
+				}
+				Chunk chunk = getChunk(index, cx, cy);
+				batch.draw(chunk.image, cx * chunkWidth - scrollX, cy * chunkHeight - scrollY, layer);
+			}
+		}
+		evict();
+		
+		super.draw(batch, layer, camera);
+	}
+	
+	/**
+	 * Gets the cached image of a chunk, rendering it if it isn't cached or a tile changed, and marks it as drawn this frame.
+	 */
+	private Chunk getChunk(int index, int cx, int cy) {
+		Chunk chunk = cache.get(index);
+		if(chunk == null) {
+			int w = Math.min(CHUNK_SIZE, width - cx * CHUNK_SIZE) * tileWidth;
+			int h = Math.min(CHUNK_SIZE, height - cy * CHUNK_SIZE) * tileHeight;
+			chunk = new Chunk(createImage(w, h));
+			cache.put(index, chunk);
+		}
+		if(!chunk.valid || chunk.version != versions[index]) {
+			render(chunks[index], chunk.image, cx, cy);
+			chunk.valid = true;
+			chunk.version = versions[index];
+		}
+		chunk.frame = frame;
+		return chunk;
+	}
+	
+	/**
+	 * Takes a free chunk image of the right size, or creates one.
+	 */
+	private BufferedImage createImage(int w, int h) {
+		for(int i = free.size() - 1; i >= 0; i--) {
+			BufferedImage image = free.get(i);
+			if(image.getWidth() == w && image.getHeight() == h) {
+				free.remove(i);
+				return image;
+			}
+		}
+		int transparency = isOpaque() ? Transparency.OPAQUE : Transparency.TRANSLUCENT;
+		BufferedImage image = screen != null ? screen.createCompatibleImage(w, h, transparency) : null;
+		if(image == null) {
+			image = new BufferedImage(w, h, isOpaque() ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+		return image;
+	}
+	
+	/**
+	 * Draws the tiles of a chunk into its image.
+	 */
+	private void render(short[] chunk, BufferedImage image, int cx, int cy) {
+		Graphics2D g = image.createGraphics();
+		if(!isOpaque()) {
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, 0, image.getWidth(), image.getHeight());
+			g.setComposite(AlphaComposite.SrcOver);
+		}
+		int rows = Math.min(CHUNK_SIZE, height - cy * CHUNK_SIZE);
+		int columns = Math.min(CHUNK_SIZE, width - cx * CHUNK_SIZE);
+		for(int y = 0; y < rows; y++) {
+			for(int x = 0; x < columns; x++) {
+				int tile = chunk[y * CHUNK_SIZE + x] & 0xffff;
+				Object graphic = tile < tiles.length ? tiles[tile] : null;
+				if(graphic instanceof AtlasRegion) {
+					((AtlasRegion) graphic).draw(g, x * tileWidth, y * tileHeight);
+				} else if(graphic != null) {
+					g.drawImage((Image) graphic, x * tileWidth, y * tileHeight, null);
+				}
+			}
+		}
+		g.dispose();
+		renderCount++;
+	}
+	
+	/**
+	 * Evicts least recently used chunks until the cache fits, keeping their images for reuse. Chunks drawn this frame are
+	 * never evicted, since the batch still has to draw their images.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<Integer, Chunk>> iterator = cache.entrySet().iterator();
+		while(cache.size() > maxCachedChunks && iterator.hasNext()) {
+			Chunk chunk = iterator.next().getValue();
+			if(chunk.frame != frame) {
+				iterator.remove();
+				if(free.size() < CHUNK_SIZE) {
+					free.add(chunk.image);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Makes every cached chunk render again, e.g. after a tile's image changed.
+	 */
+	private void invalidateChunks() {
+		for(Chunk chunk : cache.values()) {
+			chunk.valid = false;
+		}
+	}
+	
+	private int chunkIndex(int x, int y) {
+		return (y / CHUNK_SIZE) * chunksX + (x / CHUNK_SIZE);
+	}
+	
+	private void checkBounds(int x, int y, int w, int h) {
+		if(x < 0 || y < 0 || w < 0 || h < 0 || x + w > width || y + h > height) {
+			throw new IllegalArgumentException("Tiles outside the map");
+		}
+	}
+	
+	/**
+	 * The cached image of a chunk.
+	 */
+	private static class Chunk {
+		private BufferedImage image;
+		private boolean valid;
+		private int version;
+		private int frame;
+		
+		private Chunk(BufferedImage image) {
+			this.image = image;
+		}
+	}
+}
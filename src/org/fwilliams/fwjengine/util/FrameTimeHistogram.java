@@ -0,0 +1,145 @@
+package org.fwilliams.fwjengine.util;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of durations in the style of an HDR histogram. Values below 256 are counted exactly; above that, 
+ * each power of 2 is split into 128 linear buckets that get wider as values get larger, so every recorded value 
+ * is kept to within 1% of its real value using a fixed amount of memory. Recording a value is a few shifts and an array increment.
+ * @author Francis Williams
+ *
+ */
+public class FrameTimeHistogram {
+	private static final int SUB_BUCKET_BITS = 8;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+	
+	/**
+	 * The largest value that can be recorded (about 4.9 hours in nanoseconds). Larger values are counted as this value.
+	 */
+	public static final long MAX_VALUE = (1L << 44) - 1;
+	
+	private long[] counts;
+	private long totalCount;
+	private long minValue;
+	private long maxValue;
+	private double sum;
+	
+	/**
+	 * Creates a new, empty histogram.
+	 */
+	public FrameTimeHistogram() {
+		counts = new long[bucketIndex(MAX_VALUE) + 1];
+		reset();
+	}
+	
+	/**
+	 * Records a single value.
+	 * @param value The value to record. Negative values are counted as 0.
+	 */
+	public synchronized void recordValue(long value) {
+		if(value < 0) {
+			value = 0;
+		} else if(value > MAX_VALUE) {
+			value = MAX_VALUE;
+		}
+		counts[bucketIndex(value)]++;
+		totalCount++;
+		sum += value;
+		if(value < minValue) {
+			minValue = value;
+		}
+		if(value > maxValue) {
+			maxValue = value;
+		}
+	}
+	
+	/**
+	 * Gets the number of values recorded since the histogram was created or reset.
+	 * @return The number of values recorded.
+	 */
+	public synchronized long getTotalCount() {
+		return totalCount;
+	}
+	
+	/**
+	 * Gets the smallest value recorded.
+	 * @return The smallest value recorded, or 0 if the histogram is empty.
+	 */
+	public synchronized long getMin() {
+		return totalCount == 0 ? 0 : minValue;
+	}
+	
+	/**
+	 * Gets the largest value recorded.
+	 * @return The largest value recorded, or 0 if the histogram is empty.
+	 */
+	public synchronized long getMax() {
+		return maxValue;
+	}
+	
+	/**
+	 * Gets the mean of all values recorded.
+	 * @return The mean of the recorded values, or 0 if the histogram is empty.
+	 */
+	public synchronized double getMean() {
+		return totalCount == 0 ? 0 : sum / totalCount;
+	}
+	
+	/**
+	 * Gets the value at the given percentile, e.g. 99.9 for p999. The result is the largest value that falls in the same bucket 
+	 * as the real value, so it never under reports.
+	 * @param percentile The percentile from 0 to 100.
+	 * @return The value at the percentile, or 0 if the histogram is empty.
+	 */
+	public synchronized long getValueAtPercentile(double percentile) {
+		if(totalCount == 0) {
+			return 0;
+		}
+		double p = Math.min(Math.max(percentile, 0.0), 100.0);
+		long countAtPercentile = Math.max(1, (long) Math.ceil(p / 100.0 * totalCount));
+		long runningCount = 0;
+		for(int i=0; i<counts.length; i++) {
+			runningCount += counts[i];
+			if(runningCount >= countAtPercentile) {
+				return Math.min(highestEquivalentValue(i), maxValue);
+			}
+		}
+		return maxValue;
+	}
+	
+	/**
+	 * Clears all recorded values.
+	 */
+	public synchronized void reset() {
+		Arrays.fill(counts, 0);
+		totalCount = 0;
+		minValue = Long.MAX_VALUE;
+		maxValue = 0;
+		sum = 0;
+	}
+	
+	/**
+	 * Gets the bucket a value is counted in. Values below SUB_BUCKET_COUNT get a bucket each. Above that, every power of 2 
+	 * is split into SUB_BUCKET_HALF_COUNT buckets.
+	 */
+	private static int bucketIndex(long value) {
+		if(value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+		return shift * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift);
+	}
+	
+	/**
+	 * Gets the largest value that is counted in the given bucket.
+	 */
+	private static long highestEquivalentValue(int index) {
+		if(index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+		long subBucket = index - shift * SUB_BUCKET_HALF_COUNT;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
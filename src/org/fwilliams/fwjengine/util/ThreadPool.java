@@ -1,5 +1,6 @@
 package org.fwilliams.fwjengine.util;
 import java.util.LinkedList;
+import java.util.concurrent.Future;
 
 
 public class ThreadPool extends ThreadGroup {
@@ -63,11 +64,17 @@ public class ThreadPool extends ThreadGroup {
 	
 	/**
 	 * Kills the ThreadPool and returns immdiately. All threads running in the ThreadPool are stopped and any waiting tasks are not executed.
+	 * Waiting tasks that are Futures, such as a FutureTask, are cancelled so nobody waits on them forever.
 	 * Once a ThreadPool has been closed, no more tasks can run on it. 
 	 */
 	public synchronized void close() {
 		if(isAlive) {
 			isAlive = false;
+			for(Object task : taskQueue) {
+				if(task instanceof Future) {
+					((Future<?>) task).cancel(false);
+				}
+			}
 			taskQueue.clear();
 			interrupt();
 		}
@@ -0,0 +1,82 @@
+package org.fwilliams.fwjengine.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands objects from one writer thread to one reader thread without locks. The writer fills the back buffer and publishes it, 
+ * the reader acquires the most recently published buffer. Each side always owns one buffer and the third is swapped 
+ * between them with a single atomic exchange, so neither side ever waits for the other.
+ * @author Francis Williams
+ *
+ * @param <T> The type of the buffers.
+ */
+public class TripleBuffer<T> {
+	private static final int INDEX_MASK = 3;
+	private static final int FRESH = 4;
+	
+	private Object[] buffers;
+	private AtomicInteger middle;
+	private int back;
+	private int front;
+	
+	/**
+	 * Creates a new TripleBuffer from three distinct buffers.
+	 * @param front The buffer initially owned by the reader.
+	 * @param middle The buffer initially waiting between the threads.
+	 * @param back The buffer initially owned by the writer.
+	 */
+	public TripleBuffer(T front, T middle, T back) {
+		if(front == middle || middle == back || front == back) {
+			throw new IllegalArgumentException("The three buffers must be distinct");
+		}
+		this.buffers = new Object[] {front, middle, back};
+		this.front = 0;
+		this.middle = new AtomicInteger(1);
+		this.back = 2;
+	}
+	
+	/**
+	 * Gets the buffer the writer should fill. Only call this from the writer thread.
+	 * @return The back buffer.
+	 */
+	@SuppressWarnings("unchecked")
+	public T getBack() {
+		return (T) buffers[back];
+	}
+	
+	/**
+	 * Publishes the back buffer to the reader and gives the writer a new back buffer. Only call this from the writer thread.
+	 */
+	public void publish() {
+		back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+	}
+	
+	/**
+	 * Returns true if a buffer has been published that the reader has not acquired yet.
+	 * @return Whether or not a new buffer is waiting for the reader.
+	 */
+	public boolean isFresh() {
+		return (middle.get() & FRESH) != 0;
+	}
+	
+	/**
+	 * Takes the most recently published buffer if there is a new one. Only call this from the reader thread.
+	 * @return The front buffer, which is the newest published buffer.
+	 */
+	@SuppressWarnings("unchecked")
+	public T acquire() {
+		if(isFresh()) {
+			front = middle.getAndSet(front) & INDEX_MASK;
+		}
+		return (T) buffers[front];
+	}
+	
+	/**
+	 * Gets the buffer the reader currently owns without checking for a new one. Only call this from the reader thread.
+	 * @return The front buffer.
+	 */
+	@SuppressWarnings("unchecked")
+	public T getFront() {
+		return (T) buffers[front];
+	}
+}